@@ -0,0 +1,65 @@
+package com.veritomyx;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing the lines of a scan with {@link Checksum}, given as strings or as
+ * bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+
+	@Param({ "1000", "100000" })
+	int centroids;
+
+	private String[] lines;
+	private byte[][] bytes;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(1);
+		lines = new String[centroids];
+		bytes = new byte[centroids][];
+		for (int i = 0; i < centroids; i++) {
+			lines[i] = (100 + random.nextDouble() * 1900) + "\t"
+					+ random.nextInt(1000000) / 100.0;
+			bytes[i] = lines[i].getBytes();
+		}
+	}
+
+	@Benchmark
+	public String appendStrings() {
+		Checksum checksum = new Checksum();
+		for (String line : lines) {
+			checksum.append(line);
+		}
+		return checksum.getChecksum();
+	}
+
+	@Benchmark
+	public String appendBytes() {
+		Checksum checksum = new Checksum();
+		for (byte[] line : bytes) {
+			checksum.append(line, 0, line.length);
+		}
+		return checksum.getChecksum();
+	}
+}
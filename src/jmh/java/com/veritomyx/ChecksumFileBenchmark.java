@@ -0,0 +1,125 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.veritomyx.ChecksumFileReader.MissingChecksum;
+
+/**
+ * Writing and reading scans with checksum, line by line (
+ * {@link ChecksumFileWriter} and {@link ChecksumFileReader}) and as arrays of
+ * doubles ({@link ScanFileWriter} and {@link ScanFileReader}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumFileBenchmark {
+
+	@Param({ "1000", "100000" })
+	int centroids;
+
+	private double[] mz;
+	private double[] intensity;
+	private Path directory;
+	private Path output;
+	private Path input;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Random random = new Random(1);
+		mz = new double[centroids];
+		intensity = new double[centroids];
+		for (int i = 0; i < centroids; i++) {
+			mz[i] = 100 + random.nextDouble() * 1900;
+			intensity[i] = random.nextInt(1000000) / 100.0;
+		}
+
+		directory = Files.createTempDirectory("benchmark");
+		output = directory.resolve("output.txt");
+		input = directory.resolve("input.txt");
+		ScanFileWriter writer = new ScanFileWriter(input);
+		writer.writeScan(mz, intensity);
+		writer.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(output);
+		Files.deleteIfExists(input);
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public void writeLines() throws IOException {
+		ChecksumFileWriter writer = new ChecksumFileWriter(output);
+		for (int i = 0; i < centroids; i++) {
+			writer.writeln(mz[i] + "\t" + intensity[i]);
+		}
+		writer.close();
+	}
+
+	@Benchmark
+	public void writeLinesPipelined() throws IOException {
+		ChecksumFileWriter writer = ChecksumFileWriter.createPipelined(output);
+		for (int i = 0; i < centroids; i++) {
+			writer.writeln(mz[i] + "\t" + intensity[i]);
+		}
+		writer.close();
+	}
+
+	@Benchmark
+	public void writeScan() throws IOException {
+		ScanFileWriter writer = new ScanFileWriter(output);
+		writer.writeScan(mz, intensity);
+		writer.close();
+	}
+
+	@Benchmark
+	public double readLines() throws IOException {
+		double sum = 0;
+		ChecksumFileReader reader = new ChecksumFileReader(input);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!line.startsWith("#")) {
+				String[] columns = line.split("\t");
+				sum += Double.parseDouble(columns[0])
+						+ Double.parseDouble(columns[1]);
+			}
+		}
+		reader.close();
+		return sum;
+	}
+
+	@Benchmark
+	public ScanFileReader.Scan readScan() throws IOException {
+		ScanFileReader reader = new ScanFileReader(input);
+		ScanFileReader.Scan scan = reader.readScan();
+		reader.close();
+		return scan;
+	}
+
+	@Benchmark
+	public boolean verify() throws IOException, MissingChecksum {
+		return Checksum.isFileIntact(input.toFile());
+	}
+}
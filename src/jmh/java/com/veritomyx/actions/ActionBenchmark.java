@@ -0,0 +1,112 @@
+package com.veritomyx.actions;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.veritomyx.actions.Action.ResponseFormatException;
+
+/**
+ * Building the query and processing the example responses of each action.
+ * Each example is named by the action and the number of its response (e.g.
+ * "STATUS_2" for {@link StatusAction#EXAMPLE_RESPONSE_2}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionBenchmark {
+
+	@Param({ "PI_VERSIONS_1", "INIT_1", "INIT_2", "INIT_SANDBOX_1", "SFTP_1",
+			"PREP_1", "PREP_2", "RUN_1", "STATUS_1", "STATUS_2", "STATUS_3",
+			"DELETE_1" })
+	String example;
+
+	private Action action;
+	private String response;
+
+	@Setup
+	public void setup() {
+		int separator = example.lastIndexOf('_');
+		String actionName = example.substring(0, separator);
+		int number = Integer.parseInt(example.substring(separator + 1));
+
+		switch (actionName) {
+		case "PI_VERSIONS":
+			action = new PiVersionsAction("user", "password");
+			response = ActionsTest.VERSIONS_RESPONSE_1;
+			break;
+		case "INIT":
+			action = createInitAction();
+			response = number == 1 ? InitAction.EXAMPLE_RESPONSE_1
+					: InitAction.EXAMPLE_RESPONSE_2;
+			break;
+		case "INIT_SANDBOX":
+			action = new SandboxAction<>(createInitAction());
+			response = InitAction.EXAMPLE_RESPONSE_1;
+			break;
+		case "SFTP":
+			action = new SftpAction("user", "password", 100);
+			response = SftpAction.EXAMPLE_RESPONSE_1;
+			break;
+		case "PREP":
+			action = new PrepAction("user", "password", 100,
+					"WatersQ-TOF.tar");
+			response = number == 1 ? PrepAction.EXAMPLE_RESPONSE_1
+					: PrepAction.EXAMPLE_RESPONSE_2;
+			break;
+		case "RUN":
+			action = new RunAction("user", "password", "P-504.1463",
+					"RTO-24", "WatersQ-TOF.tar", null);
+			response = RunAction.EXAMPLE_RESPONSE_1;
+			break;
+		case "STATUS":
+			action = new StatusAction("user", "password", "P-504.5148");
+			response = number == 1 ? StatusAction.EXAMPLE_RESPONSE_1
+					: number == 2 ? StatusAction.EXAMPLE_RESPONSE_2
+							: StatusAction.EXAMPLE_RESPONSE_3;
+			break;
+		case "DELETE":
+			action = new DeleteAction("user", "password", "P-504.4256");
+			response = ActionsTest.DELETE_RESPONSE_1;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown example: " + example);
+		}
+	}
+
+	@Benchmark
+	public String buildQuery() {
+		return action.buildQuery();
+	}
+
+	/**
+	 * The action is reset first, so that nothing kept from the previous
+	 * invocation is reused.
+	 */
+	@Benchmark
+	public Action processResponse() throws ResponseFormatException {
+		action.reset();
+		action.processResponse(response);
+		return action;
+	}
+
+	private static InitAction createInitAction() {
+		return InitAction.create("user", "password", "SDK_test")
+				.withMassRange(50, 100, 60, 80).usingProjectId(100)
+				.withPiVersion("1.2").withScanCount(5, 0)
+				.withNumberOfPoints(12345);
+	}
+}
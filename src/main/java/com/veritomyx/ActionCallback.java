@@ -0,0 +1,34 @@
+package com.veritomyx;
+
+import com.veritomyx.actions.Action;
+
+/**
+ * Callback for API calls made with
+ * {@link PeakInvestigatorSaaS#executeActionAsync(Action, ActionCallback)}. The
+ * methods are called on a thread of the executor used by the
+ * PeakInvestigatorSaaS object, so they should return quickly.
+ *
+ * @param <A>
+ *            The type of action.
+ */
+public interface ActionCallback<A extends Action> {
+
+	/**
+	 * Called once the response has been received and processed.
+	 *
+	 * @param action
+	 *            The action, which is ready to be queried.
+	 */
+	public void onSuccess(A action);
+
+	/**
+	 * Called if there is a problem executing the action or processing its
+	 * response.
+	 *
+	 * @param action
+	 *            The action that failed.
+	 * @param exception
+	 *            Usually an IOException or a ResponseFormatException.
+	 */
+	public void onFailure(A action, Exception exception);
+}
@@ -2,23 +2,66 @@ package com.veritomyx;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.veritomyx.ChecksumFileReader.MissingChecksum;
 
+/**
+ * The chained SHA-1 checksum of the lines of a file, following the <a
+ * href="https://peakinvestigator.veritomyx.com/api">guidelines for
+ * PeakInvestigator</a>: the checksum of a line is the SHA-1 hash of the
+ * checksum of the previous line (as hexadecimal) followed by the line.
+ * 
+ * <p>
+ * Lines can be appended as strings, or as bytes (e.g. read directly from a
+ * file) in the platform encoding, which give the same result. Appending does
+ * not allocate memory, except for strings with non-ASCII characters.
+ * </p>
+ * 
+ * <p>
+ * As the checksum of a line only depends on the checksum of the previous
+ * line, the state of a checksum can be saved as a {@link Checkpoint} (e.g.
+ * while writing a large file), and hashing resumed from it later with
+ * {@link #Checksum(Checkpoint)}, without hashing the previous lines again.
+ * </p>
+ */
 public class Checksum {
 
 	public final static String PREFIX = "# checksum:";
 	private final static String HASH_SEED = "Hash seed!";
 	private final static Logger LOGGER = LoggerFactory.getLogger(ChecksumFileReader.class);
 
+	private final static int DIGEST_LENGTH = 20;
+	private final static long MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+	private final static byte[] PREFIX_BYTES = PREFIX.getBytes();
+
+	/**
+	 * Files can be verified without decoding lines if the platform encoding
+	 * is compatible with ASCII (e.g. UTF-8 or ISO-8859-1).
+	 */
+	private final static boolean MAPPED_VERIFICATION = Arrays.equals(
+			PREFIX_BYTES, PREFIX.getBytes(StandardCharsets.US_ASCII))
+			&& "\r\n".getBytes().length == 2;
+	private final static byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
 	private MessageDigest messageDigest;
+	private final byte[] digest = new byte[DIGEST_LENGTH];
+	private final byte[] hex = new byte[2 * DIGEST_LENGTH];
+	private byte[] encoded = new byte[256];
 	private String checksum;
+	private long lineCount = 0;
 
 	public Checksum() {
 		try {
@@ -28,66 +71,311 @@ public class Checksum {
 		}
 		// Start with special hash seed
 		messageDigest.update(HASH_SEED.getBytes());
-		checksum = toHex(messageDigest.digest());
+		updateHex();
+	}
+
+	/**
+	 * Resume hashing from a checkpoint.
+	 * 
+	 * @param checkpoint
+	 *            The state of a checksum, from {@link #getCheckpoint(long)}.
+	 */
+	public Checksum(Checkpoint checkpoint) {
+		this();
+		byte[] bytes = checkpoint.getChecksum().getBytes(
+				StandardCharsets.US_ASCII);
+		System.arraycopy(bytes, 0, hex, 0, hex.length);
+		checksum = null;
+		lineCount = checkpoint.getLineCount();
 	}
 
 	// Append line to the cumulative checksum
 	public void append(String line) {
-		// calculate the hash of the last sum + the new line
-		StringBuffer sb = new StringBuffer();
+		// calculate the hash of the last sum + the new line, for every line
+		// separated by "\r", "\n", "\r\n" or "\n\r"
+		int start = 0;
 		int i = 0;
 		while (i < line.length()) {
 			char c = line.charAt(i);
-			if (c == '\r') {
+			if (c == '\r' || c == '\n') {
+				append(line, start, i);
 				i++;
-				if (i < line.length() && line.charAt(i) == '\n') {
+				char other = c == '\r' ? '\n' : '\r';
+				if (i < line.length() && line.charAt(i) == other) {
 					i++;
 				}
-				// Output sb
-				append(sb);
-				sb.setLength(0);
-			} else if (c == '\n') {
+				start = i;
+			} else {
+				i++;
+			}
+		}
+		append(line, start, line.length());
+	}
+
+	/**
+	 * Append a line given as bytes in the platform encoding, with the same
+	 * handling of line separators as {@link #append(String)}.
+	 * 
+	 * @param bytes
+	 *            The buffer containing the line.
+	 * @param offset
+	 *            The start of the line in the buffer.
+	 * @param length
+	 *            The number of bytes of the line.
+	 */
+	public void append(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		int start = offset;
+		int i = offset;
+		while (i < end) {
+			byte b = bytes[i];
+			if (b == '\r' || b == '\n') {
+				hashLine(bytes, start, i - start);
 				i++;
-				if (i < line.length() && line.charAt(i) == '\r') {
+				byte other = b == '\r' ? (byte) '\n' : (byte) '\r';
+				if (i < end && bytes[i] == other) {
 					i++;
 				}
-				// Output sb
-				append(sb);
-				sb.setLength(0);
+				start = i;
 			} else {
-				sb.append(c);
 				i++;
 			}
 		}
-		// Output sb
-		append(sb);
+		hashLine(bytes, start, end - start);
 	}
 
-	private void append(StringBuffer sb) {
-		String tmp = checksum + sb;
-		messageDigest.update(tmp.getBytes());
-		checksum = toHex(messageDigest.digest());
+	/**
+	 * Append a line given as bytes in the platform encoding, with the same
+	 * handling of line separators as {@link #append(String)}. The remaining
+	 * bytes of the buffer are consumed.
+	 * 
+	 * @param buffer
+	 *            The buffer containing the line between its position and
+	 *            limit.
+	 */
+	public void append(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			append(buffer.array(), buffer.arrayOffset() + buffer.position(),
+					buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+
+		int limit = buffer.limit();
+		int start = buffer.position();
+		int i = start;
+		while (i < limit) {
+			byte b = buffer.get(i);
+			if (b == '\r' || b == '\n') {
+				hashLine(buffer, start, i);
+				i++;
+				byte other = b == '\r' ? (byte) '\n' : (byte) '\r';
+				if (i < limit && buffer.get(i) == other) {
+					i++;
+				}
+				start = i;
+			} else {
+				i++;
+			}
+		}
+		hashLine(buffer, start, limit);
+		buffer.position(limit);
+	}
+
+	private void append(String line, int start, int end) {
+		int length = end - start;
+		if (encoded.length < length) {
+			encoded = new byte[Math.max(length, 2 * encoded.length)];
+		}
+
+		// ASCII characters are the same in all platform encodings
+		for (int i = 0; i < length; i++) {
+			char c = line.charAt(start + i);
+			if (c >= 0x80) {
+				byte[] bytes = line.substring(start, end).getBytes();
+				hashLine(bytes, 0, bytes.length);
+				return;
+			}
+			encoded[i] = (byte) c;
+		}
+
+		hashLine(encoded, 0, length);
+	}
+
+	private void hashLine(byte[] bytes, int offset, int length) {
+		messageDigest.update(hex, 0, hex.length);
+		messageDigest.update(bytes, offset, length);
+		updateHex();
+		lineCount++;
+	}
+
+	private void hashLine(ByteBuffer buffer, int start, int end) {
+		messageDigest.update(hex, 0, hex.length);
+		int limit = buffer.limit();
+		buffer.limit(end).position(start);
+		messageDigest.update(buffer);
+		buffer.limit(limit);
+		updateHex();
+		lineCount++;
+	}
+
+	/**
+	 * Complete the digest, and replace the hexadecimal checksum with it.
+	 */
+	private void updateHex() {
+		try {
+			messageDigest.digest(digest, 0, DIGEST_LENGTH);
+		} catch (DigestException e) {
+			throw new IllegalStateException(e);
+		}
+
+		for (int i = 0; i < DIGEST_LENGTH; i++) {
+			hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+		}
+		checksum = null;
 	}
 
 	public String getChecksum() {
+		if (checksum == null) {
+			checksum = new String(hex, StandardCharsets.US_ASCII);
+		}
 		return checksum;
 	}
 
 	public String getChecksumLine() {
-		return PREFIX + checksum;
+		return PREFIX + getChecksum();
 	}
 
-	private static String toHex(byte[] buf) {
-		StringBuffer sb = new StringBuffer("");
-		for (int i = 0; i < buf.length; i++) {
-			sb.append(Integer.toString((buf[i] & 0xff) + 0x100, 16).substring(1));
-		}
-		return sb.toString();
+	/**
+	 * @return The number of lines hashed, including those hashed before the
+	 *         checkpoint this checksum was resumed from.
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Save the state of this checksum.
+	 * 
+	 * @param byteOffset
+	 *            The position in the file after the last line hashed, or -1
+	 *            if unknown.
+	 * @return The checkpoint.
+	 */
+	public Checkpoint getCheckpoint(long byteOffset) {
+		return new Checkpoint(getChecksum(), lineCount, byteOffset);
 	}
 
 	// Verify the hash within a file matches the computed hash for that file
 	public static boolean isFileIntact(File file) throws IOException,
 			MissingChecksum {
+		if (!MAPPED_VERIFICATION) {
+			return isFileIntactByLines(file);
+		}
+
+		return isFileIntact(file, MAP_WINDOW_SIZE);
+	}
+
+	/**
+	 * Verify a file by mapping it into memory, in windows of the given size,
+	 * and hashing the bytes of each line without decoding them. Lines are
+	 * separated as done by {@link java.io.BufferedReader#readLine()}.
+	 */
+	static boolean isFileIntact(File file, long windowSize)
+			throws IOException, MissingChecksum {
+
+		Checksum checksum = new Checksum();
+		String hashFromFile = null;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			long windowStart = 0;
+			long currentWindowSize = windowSize;
+			boolean skipLF = false;
+
+			while (windowStart < size) {
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, windowStart,
+						Math.min(Math.min(currentWindowSize, size - windowStart),
+								Integer.MAX_VALUE));
+				int limit = buffer.limit();
+				boolean last = windowStart + limit == size;
+
+				int lineStart = 0;
+				for (int i = 0; i < limit; i++) {
+					byte b = buffer.get(i);
+					if (skipLF) {
+						skipLF = false;
+						if (b == '\n') {
+							lineStart = i + 1;
+							continue;
+						}
+					}
+
+					if (b == '\n' || b == '\r') {
+						hashFromFile = processLine(checksum, buffer, lineStart,
+								i, hashFromFile);
+						lineStart = i + 1;
+						skipLF = b == '\r';
+					}
+				}
+
+				if (last) {
+					if (lineStart < limit) {
+						hashFromFile = processLine(checksum, buffer, lineStart,
+								limit, hashFromFile);
+					}
+					break;
+				}
+
+				if (lineStart == 0) {
+					// a line longer than the window
+					currentWindowSize *= 2;
+				} else {
+					windowStart += lineStart;
+					currentWindowSize = windowSize;
+				}
+			}
+		}
+
+		if (hashFromFile == null) {
+			throw new MissingChecksum(file + " does not have a checksum");
+		}
+
+		return checksum.getChecksum().equals(hashFromFile);
+	}
+
+	/**
+	 * Hash a line of a mapped file, unless it is the checksum line.
+	 * 
+	 * @return The checksum of the checksum line, or hashFromFile otherwise.
+	 */
+	private static String processLine(Checksum checksum, ByteBuffer buffer,
+			int start, int end, String hashFromFile) {
+
+		if (end - start >= PREFIX_BYTES.length) {
+			boolean prefix = true;
+			for (int i = 0; i < PREFIX_BYTES.length && prefix; i++) {
+				prefix = buffer.get(start + i) == PREFIX_BYTES[i];
+			}
+
+			if (prefix) {
+				byte[] hash = new byte[end - start - PREFIX_BYTES.length];
+				for (int i = 0; i < hash.length; i++) {
+					hash[i] = buffer.get(start + PREFIX_BYTES.length + i);
+				}
+				return new String(hash);
+			}
+		}
+
+		checksum.hashLine(buffer, start, end);
+		return hashFromFile;
+	}
+
+	private static boolean isFileIntactByLines(File file) throws IOException,
+			MissingChecksum {
 		ChecksumFileReader reader = new ChecksumFileReader(Paths.get(file
 				.getPath()));
 		while (reader.readLine() != null) {
@@ -97,4 +385,65 @@ public class Checksum {
 
 		return reader.isChecksumValid();
 	}
+
+	/**
+	 * The state of a checksum after a number of lines: the checksum of the
+	 * last line, the number of lines, and where they end in the file (if
+	 * known). It can be saved as a string with {@link #toString()} and
+	 * restored with {@link #parse(String)}.
+	 */
+	public static class Checkpoint {
+		private final String checksum;
+		private final long lineCount;
+		private final long byteOffset;
+
+		public Checkpoint(String checksum, long lineCount, long byteOffset) {
+			if (!checksum.matches("[0-9a-f]{" + 2 * DIGEST_LENGTH + "}")) {
+				throw new IllegalArgumentException("Invalid checksum: "
+						+ checksum);
+			}
+
+			this.checksum = checksum;
+			this.lineCount = lineCount;
+			this.byteOffset = byteOffset;
+		}
+
+		/**
+		 * Restore a checkpoint saved with {@link #toString()}.
+		 * 
+		 * @throws IllegalArgumentException
+		 *             If the string is not a checkpoint.
+		 */
+		public static Checkpoint parse(String string) {
+			String[] parts = string.trim().split(":");
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("Invalid checkpoint: "
+						+ string);
+			}
+
+			return new Checkpoint(parts[0], Long.parseLong(parts[1]),
+					Long.parseLong(parts[2]));
+		}
+
+		public String getChecksum() {
+			return checksum;
+		}
+
+		public long getLineCount() {
+			return lineCount;
+		}
+
+		/**
+		 * @return The position in the file after the last line, or -1 if
+		 *         unknown.
+		 */
+		public long getByteOffset() {
+			return byteOffset;
+		}
+
+		@Override
+		public String toString() {
+			return checksum + ":" + lineCount + ":" + byteOffset;
+		}
+	}
 }
@@ -2,6 +2,7 @@ package com.veritomyx;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -12,17 +13,32 @@ import org.slf4j.LoggerFactory;
 public class ChecksumFileReader implements AutoCloseable {
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(ChecksumFileReader.class);
-	private Path path;
+	private String name;
 	private BufferedReader bufferedReader;
 	private Checksum fileChecksum;
 	private String hashFromFile;
 
 	public ChecksumFileReader(Path path) throws IOException {
-		this.path = path;
+		this.name = path.toString();
 		bufferedReader = Files.newBufferedReader(path, Charset.defaultCharset());
 		fileChecksum = new Checksum();
 	}
 
+	/**
+	 * Read from a reader (e.g. an entry of a tar archive), which is buffered
+	 * and closed by {@link #close()}.
+	 * 
+	 * @param reader
+	 *            The contents of the file.
+	 * @param name
+	 *            The name of the file, used in messages.
+	 */
+	public ChecksumFileReader(Reader reader, String name) {
+		this.name = name;
+		bufferedReader = new BufferedReader(reader);
+		fileChecksum = new Checksum();
+	}
+
 	public String readLine() throws IOException {
 		String line = bufferedReader.readLine();
 		if (line != null) {
@@ -38,15 +54,15 @@ public class ChecksumFileReader implements AutoCloseable {
 
 	public void close() throws IOException {
 		// Read to end of file to get the checksum before closing 
-		while (bufferedReader.ready()) {
-			readLine();
+		while (bufferedReader.ready() && readLine() != null) {
+
 		}
 		if (fileChecksum.getChecksum().equals(hashFromFile)) {
-			LOGGER.info(path.toFile().getName() + " checksum OK");
+			LOGGER.info(name + " checksum OK");
 		} else if (hashFromFile == null) {
-			LOGGER.warn(path + " missing checksum");
+			LOGGER.warn(name + " missing checksum");
 		} else {
-			LOGGER.warn(path + " checksum mismatch");
+			LOGGER.warn(name + " checksum mismatch");
 		}
 		bufferedReader.close();
 	}
@@ -57,13 +73,13 @@ public class ChecksumFileReader implements AutoCloseable {
 
 	public boolean isChecksumValid() throws MissingChecksum {
 		if (!hasChecksum()) {
-			throw new MissingChecksum(path + " does not have a checksum");
+			throw new MissingChecksum(name + " does not have a checksum");
 		}
 
 		return fileChecksum.getChecksum().equals(hashFromFile);
 	}
 
-	public class MissingChecksum extends Exception {
+	public static class MissingChecksum extends Exception {
 		private static final long serialVersionUID = 1L;
 
 		MissingChecksum(String msg) {
@@ -3,9 +3,24 @@ package com.veritomyx;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import com.veritomyx.Checksum.Checkpoint;
 
 /**
  * Used for writing files with checksum that follows the <a
@@ -16,23 +31,227 @@ import java.nio.file.Path;
  * A {@link java.io.FileWriter} wrapped by a {@link java.io.BufferedWriter} is
  * used.
  * </p>
+ * 
+ * <p>
+ * By default, each line is hashed by the thread writing it. A writer created
+ * with {@link #createPipelined(Path, int)} instead hands completed lines to a
+ * separate hashing thread through a bounded queue, so that writing is not
+ * slowed down by SHA-1. The output is the same.
+ * </p>
+ * 
+ * <p>
+ * The progress of writing a file can be saved with {@link #getCheckpoint()},
+ * so that writing can continue after a crash with
+ * {@link #resume(Path, Checkpoint)}, without hashing the lines already
+ * written again. A file without checkpoint (or checksum line) can be continued
+ * with {@link #reopen(Path)}, which hashes the lines already written.
+ * </p>
  */
 public class ChecksumFileWriter {
 
+	public static final int DEFAULT_PIPELINE_CAPACITY = 65536; // lines
+	private static final int REOPEN_BUFFER_SIZE = 65536;
+
 	private BufferedWriter bufferedWriter;
+	private FileChannel channel = null;
 	private Checksum fileChecksum;
-	private String output;
+	private StringBuilder output = new StringBuilder();
+	private HashingStage hashingStage = null;
 
 	public ChecksumFileWriter(String filename) throws IOException {
 		bufferedWriter = new BufferedWriter(new FileWriter(filename));
 		fileChecksum = new Checksum();
-		output = "";
 	}
 
 	public ChecksumFileWriter(Path path) throws IOException {
-		bufferedWriter = Files.newBufferedWriter(path, Charset.forName("UTF-8"));
+		this(FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+				new Checksum());
+	}
+
+	/**
+	 * Write to a file at the position of the channel, using UTF-8.
+	 */
+	private ChecksumFileWriter(FileChannel channel, Checksum checksum) {
+		this.channel = channel;
+		bufferedWriter = new BufferedWriter(Channels.newWriter(channel,
+				"UTF-8"));
+		fileChecksum = checksum;
+	}
+
+	/**
+	 * Write to a stream (e.g. a file being uploaded with
+	 * {@link PeakInvestigatorSaaS#putFile(com.veritomyx.actions.SftpAction, UploadProducer, String, com.jcraft.jsch.SftpProgressMonitor)}
+	 * ) using UTF-8. The stream is closed by {@link #close()}.
+	 */
+	public ChecksumFileWriter(OutputStream stream) {
+		this(new OutputStreamWriter(stream, Charset.forName("UTF-8")));
+	}
+
+	/**
+	 * Write to a writer, which is buffered and closed by {@link #close()}.
+	 */
+	public ChecksumFileWriter(Writer writer) {
+		bufferedWriter = new BufferedWriter(writer);
 		fileChecksum = new Checksum();
-		output = "";
+	}
+
+	/**
+	 * Create a writer that hashes lines on a separate thread, with up to
+	 * {@value #DEFAULT_PIPELINE_CAPACITY} lines waiting to be hashed.
+	 * 
+	 * @param path
+	 *            The file to write.
+	 * @return The writer, which must be closed to stop the hashing thread.
+	 * @throws IOException
+	 *             If there is a problem opening the file
+	 */
+	public static ChecksumFileWriter createPipelined(Path path)
+			throws IOException {
+		return createPipelined(path, DEFAULT_PIPELINE_CAPACITY);
+	}
+
+	/**
+	 * Create a writer that hashes lines on a separate thread. Writing blocks
+	 * when the given number of lines are waiting to be hashed.
+	 * 
+	 * @param path
+	 *            The file to write.
+	 * @param capacity
+	 *            The maximum number of lines waiting to be hashed.
+	 * @return The writer, which must be closed to stop the hashing thread.
+	 * @throws IOException
+	 *             If there is a problem opening the file
+	 */
+	public static ChecksumFileWriter createPipelined(Path path, int capacity)
+			throws IOException {
+		ChecksumFileWriter writer = new ChecksumFileWriter(path);
+		writer.hashingStage = new HashingStage(writer.fileChecksum, capacity);
+		return writer;
+	}
+
+	/**
+	 * Continue writing a file from a checkpoint. Anything written after the
+	 * checkpoint is discarded.
+	 * 
+	 * @param path
+	 *            The file to write.
+	 * @param checkpoint
+	 *            Saved by {@link #getCheckpoint()} while writing the file.
+	 * @return The writer.
+	 * @throws IOException
+	 *             If there is a problem opening the file, or it is shorter
+	 *             than the checkpoint.
+	 */
+	public static ChecksumFileWriter resume(Path path, Checkpoint checkpoint)
+			throws IOException {
+		if (checkpoint.getByteOffset() < 0) {
+			throw new IllegalArgumentException(
+					"Checkpoint does not have a byte offset.");
+		}
+
+		return open(path, checkpoint.getByteOffset(), new Checksum(checkpoint));
+	}
+
+	/**
+	 * Continue writing a file that does not have a checksum line (e.g. after
+	 * a crash), by hashing the lines already written. An incomplete last line
+	 * is discarded; the number of lines kept is given by the checkpoint of the
+	 * writer.
+	 * 
+	 * @param path
+	 *            The file to write.
+	 * @return The writer.
+	 * @throws IOException
+	 *             If there is a problem reading or opening the file, or it
+	 *             already has a checksum line.
+	 */
+	public static ChecksumFileWriter reopen(Path path) throws IOException {
+		Checksum checksum = new Checksum();
+		long end = hashLines(path, checksum);
+		return open(path, end, checksum);
+	}
+
+	private static ChecksumFileWriter open(Path path, long position,
+			Checksum checksum) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+		try {
+			if (channel.size() < position) {
+				throw new IOException(path + " is shorter than checkpoint");
+			}
+			channel.truncate(position);
+			channel.position(position);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		return new ChecksumFileWriter(channel, checksum);
+	}
+
+	/**
+	 * Hash the complete lines of a file, separated as done by
+	 * {@link java.io.BufferedReader#readLine()}.
+	 * 
+	 * @return The position after the last complete line.
+	 */
+	private static long hashLines(Path path, Checksum checksum)
+			throws IOException {
+		byte[] buffer = new byte[REOPEN_BUFFER_SIZE];
+		byte[] line = new byte[256];
+		int length = 0;
+		long position = 0;
+		long end = 0;
+		boolean skipLF = false;
+
+		try (InputStream input = Files.newInputStream(path)) {
+			int count;
+			while ((count = input.read(buffer)) >= 0) {
+				for (int i = 0; i < count; i++, position++) {
+					byte b = buffer[i];
+					if (skipLF) {
+						skipLF = false;
+						if (b == '\n') {
+							end = position + 1;
+							continue;
+						}
+					}
+
+					if (b == '\n' || b == '\r') {
+						hashLine(path, checksum, line, length);
+						length = 0;
+						end = position + 1;
+						skipLF = b == '\r';
+					} else {
+						if (length == line.length) {
+							line = Arrays.copyOf(line, 2 * length);
+						}
+						line[length++] = b;
+					}
+				}
+			}
+		}
+
+		return end;
+	}
+
+	private static void hashLine(Path path, Checksum checksum, byte[] line,
+			int length) throws IOException {
+		String prefix = new String(line, 0, Math.min(length,
+				Checksum.PREFIX.length()), StandardCharsets.UTF_8);
+		if (prefix.equals(Checksum.PREFIX)) {
+			throw new IOException(path + " already has a checksum");
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (line[i] < 0) {
+				// lines are hashed in the platform encoding
+				checksum.append(new String(line, 0, length,
+						StandardCharsets.UTF_8));
+				return;
+			}
+		}
+		checksum.append(line, 0, length);
 	}
 
 	/**
@@ -46,18 +265,30 @@ public class ChecksumFileWriter {
 	 *             If there is a problem writing to the file
 	 */
 	public void write(String msg) throws IOException {
-		bufferedWriter.write(msg);
-		if (output.length() == 0) {
-			output = msg; 
-		} else {
-			output = output + msg;
+		try {
+			bufferedWriter.write(msg);
+		} catch (IOException e) {
+			stopHashing();
+			throw e;
 		}
+		output.append(msg);
 	}
 
 	public void newLine() throws IOException {
-		bufferedWriter.newLine();
-		fileChecksum.append(output);
-		output = "";
+		String line = output.toString();
+		output.setLength(0);
+
+		try {
+			bufferedWriter.newLine();
+			if (hashingStage != null) {
+				hashingStage.put(line);
+			} else {
+				fileChecksum.append(line);
+			}
+		} catch (IOException e) {
+			stopHashing();
+			throw e;
+		}
 	}
 
 	/**
@@ -73,9 +304,209 @@ public class ChecksumFileWriter {
 		newLine();
 	}
 		
+	/**
+	 * Save the progress of writing the file, after the last complete line.
+	 * The lines are written to the file (but not necessarily to disk).
+	 * 
+	 * @return The checkpoint, with a byte offset if writing to a file given
+	 *         by path.
+	 * @throws IOException
+	 *             If there is a problem writing to the file
+	 * @throws IllegalStateException
+	 *             If a line has been started but not completed.
+	 */
+	public Checkpoint getCheckpoint() throws IOException {
+		if (output.length() > 0) {
+			throw new IllegalStateException(
+					"Checkpoint can not be saved in the middle of a line.");
+		}
+
+		if (hashingStage != null) {
+			try {
+				hashingStage.sync();
+			} catch (IOException e) {
+				stopHashing();
+				throw e;
+			}
+		}
+
+		long byteOffset = -1;
+		if (channel != null) {
+			bufferedWriter.flush();
+			byteOffset = channel.position();
+		}
+
+		return fileChecksum.getCheckpoint(byteOffset);
+	}
+
+	/**
+	 * Write the checksum line and close the file. The file is closed (and the
+	 * hashing thread of a pipelined writer stopped) even if this fails, in
+	 * which case the file is left without checksum line.
+	 * 
+	 * @throws IOException
+	 *             If there is a problem writing to the file, or a previous
+	 *             problem has left the checksum incomplete.
+	 */
 	public void close() throws IOException {
-		bufferedWriter.write(fileChecksum.getChecksumLine());
-		bufferedWriter.newLine();
-		bufferedWriter.close();
+		try (BufferedWriter writer = bufferedWriter) {
+			try {
+				if (hashingStage != null) {
+					hashingStage.finish();
+				}
+			} finally {
+				stopHashing();
+			}
+
+			writer.write(fileChecksum.getChecksumLine());
+			writer.newLine();
+		}
+	}
+
+	/**
+	 * Stop the hashing thread, if any, e.g. because the writer will not be
+	 * used after a problem writing to the file.
+	 */
+	private void stopHashing() {
+		if (hashingStage != null) {
+			hashingStage.stop();
+		}
+	}
+
+	/**
+	 * Hashes lines on its own thread. Lines are passed in batches through a
+	 * bounded queue, to keep the cost of synchronization low.
+	 * 
+	 * <p>
+	 * Lines are passed as Strings rather than bytes: Checksum encodes them in
+	 * the platform encoding, and doing so is part of the work moved off the
+	 * writing thread. Strings are immutable, so they are passed without
+	 * copying.
+	 * </p>
+	 * 
+	 * <p>
+	 * Once stopped (after all lines have been hashed, or after a problem), the
+	 * thread has ended and no more lines are accepted.
+	 * </p>
+	 */
+	private static class HashingStage implements Runnable {
+		private static final int BATCH_SIZE = 256;
+		private static final String[] END = new String[0];
+		private static final String[] SYNC = new String[0];
+
+		private final Checksum checksum;
+		private final BlockingQueue<String[]> queue;
+		private final int batchSize;
+		private final Thread thread;
+		private final Semaphore synced = new Semaphore(0);
+		private String[] batch;
+		private int batchLength = 0;
+		private boolean stopped = false;
+
+		HashingStage(Checksum checksum, int capacity) {
+			if (capacity < 1) {
+				throw new IllegalArgumentException(
+						"Capacity must be at least 1.");
+			}
+
+			this.checksum = checksum;
+			this.batchSize = Math.min(BATCH_SIZE, capacity);
+			this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity
+					/ batchSize));
+			this.batch = new String[batchSize];
+
+			thread = new Thread(this, "ChecksumFileWriter-hashing");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void put(String line) throws IOException {
+			batch[batchLength++] = line;
+			if (batchLength == batchSize) {
+				send(batch);
+				batch = new String[batchSize];
+				batchLength = 0;
+			}
+		}
+
+		/**
+		 * Wait until the lines put so far have been hashed.
+		 */
+		void sync() throws IOException {
+			sendBatch();
+			send(SYNC);
+
+			try {
+				synced.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for checksum.");
+			}
+		}
+
+		/**
+		 * Wait until all lines have been hashed.
+		 */
+		void finish() throws IOException {
+			sendBatch();
+			send(END);
+
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for checksum.");
+			}
+		}
+
+		/**
+		 * Stop the thread without waiting for the lines to be hashed, if it
+		 * is still running.
+		 */
+		void stop() {
+			stopped = true;
+			thread.interrupt();
+		}
+
+		private void sendBatch() throws IOException {
+			if (batchLength > 0) {
+				send(Arrays.copyOf(batch, batchLength));
+				batchLength = 0;
+			}
+		}
+
+		private void send(String[] lines) throws IOException {
+			if (stopped) {
+				throw new IOException(
+						"Checksum is incomplete after a previous problem.");
+			}
+
+			try {
+				queue.put(lines);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for checksum.");
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				String[] lines;
+				while ((lines = queue.take()) != END) {
+					for (String line : lines) {
+						checksum.append(line);
+					}
+					if (lines == SYNC) {
+						synced.release();
+					}
+				}
+			} catch (InterruptedException e) {
+				// the writer has been abandoned
+			}
+		}
 	}
 }
@@ -0,0 +1,267 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.veritomyx.ChecksumFileReader.MissingChecksum;
+
+/**
+ * Verifies the checksums of many files in parallel (see
+ * {@link Checksum#isFileIntact(java.io.File)}). The checksum of a file is
+ * computed sequentially, but files are independent, so they are verified
+ * concurrently on a {@link ForkJoinPool}, by default with one thread per
+ * processor.
+ *
+ * <p>
+ * For example:
+ * </p>
+ *
+ * <pre>
+ * ChecksumVerifier verifier = new ChecksumVerifier();
+ * ChecksumVerifier.Report report = verifier.verifyDirectory(scansDirectory);
+ * for (Path path : report.getPaths(ChecksumVerifier.Result.MISMATCH)) {
+ * 	...
+ * }
+ * verifier.shutdown();
+ * </pre>
+ */
+public class ChecksumVerifier {
+
+	/**
+	 * The outcome of verifying a file.
+	 */
+	public enum Result {
+		/** The checksum of the file matches. */
+		OK,
+		/** The file does not have a checksum line. */
+		MISSING,
+		/** The checksum of the file does not match. */
+		MISMATCH,
+		/** The file could not be read. */
+		UNREADABLE
+	}
+
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+
+	/**
+	 * Create a verifier with its own pool, with one thread per processor.
+	 */
+	public ChecksumVerifier() {
+		this(new ForkJoinPool(), true);
+	}
+
+	/**
+	 * Create a verifier that uses a shared pool, which is not shut down by
+	 * {@link #shutdown()}.
+	 *
+	 * @param pool
+	 *            Used to verify the files.
+	 */
+	public ChecksumVerifier(ForkJoinPool pool) {
+		this(pool, false);
+	}
+
+	private ChecksumVerifier(ForkJoinPool pool, boolean ownsPool) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+	}
+
+	/**
+	 * Verify files, and wait until all of them have been verified.
+	 *
+	 * @param paths
+	 *            The files to verify.
+	 * @return The result for every file, in the given order.
+	 */
+	public Report verify(Collection<Path> paths) {
+		List<Path> list = new ArrayList<>(paths);
+		Result[] results = new Result[list.size()];
+		IOException[] exceptions = new IOException[list.size()];
+
+		pool.invoke(new VerifyTask(list, results, exceptions, 0, list.size()));
+
+		Map<Path, Result> resultsByPath = new LinkedHashMap<>();
+		Map<Path, IOException> exceptionsByPath = new HashMap<>();
+		for (int i = 0; i < list.size(); i++) {
+			resultsByPath.put(list.get(i), results[i]);
+			if (exceptions[i] != null) {
+				exceptionsByPath.put(list.get(i), exceptions[i]);
+			}
+		}
+
+		return new Report(resultsByPath, exceptionsByPath);
+	}
+
+	/**
+	 * Verify all regular files of a directory and its subdirectories.
+	 *
+	 * @param directory
+	 *            The directory to verify.
+	 * @return The result for every file.
+	 * @throws IOException
+	 *             If there is a problem listing the files of the directory.
+	 */
+	public Report verifyDirectory(Path directory) throws IOException {
+		final List<Path> paths = new ArrayList<>();
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attributes) {
+				if (attributes.isRegularFile()) {
+					paths.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		Collections.sort(paths);
+		return verify(paths);
+	}
+
+	/**
+	 * Shut down the pool if it is owned by this verifier.
+	 */
+	public void shutdown() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Verify a single file.
+	 *
+	 * @param exceptions
+	 *            Receives the exception of an unreadable file at the given
+	 *            index.
+	 */
+	private static Result verify(Path path, IOException[] exceptions,
+			int index) {
+		try {
+			return Checksum.isFileIntact(path.toFile()) ? Result.OK
+					: Result.MISMATCH;
+		} catch (MissingChecksum e) {
+			return Result.MISSING;
+		} catch (IOException e) {
+			exceptions[index] = e;
+			return Result.UNREADABLE;
+		}
+	}
+
+	/**
+	 * Verifies a range of files, splitting it in halves until a single file
+	 * remains, so that idle threads can steal the remaining files.
+	 */
+	private static class VerifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Path> paths;
+		private final Result[] results;
+		private final IOException[] exceptions;
+		private final int start;
+		private final int end;
+
+		VerifyTask(List<Path> paths, Result[] results,
+				IOException[] exceptions, int start, int end) {
+			this.paths = paths;
+			this.results = results;
+			this.exceptions = exceptions;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				results[start] = verify(paths.get(start), exceptions, start);
+			} else if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new VerifyTask(paths, results, exceptions, start,
+						middle), new VerifyTask(paths, results, exceptions,
+						middle, end));
+			}
+		}
+	}
+
+	/**
+	 * The result of verifying files, by path.
+	 */
+	public static class Report {
+		private final Map<Path, Result> results;
+		private final Map<Path, IOException> exceptions;
+
+		private Report(Map<Path, Result> results,
+				Map<Path, IOException> exceptions) {
+			this.results = Collections.unmodifiableMap(results);
+			this.exceptions = Collections.unmodifiableMap(exceptions);
+		}
+
+		/**
+		 * @return The result of a file, or null if it was not verified.
+		 */
+		public Result get(Path path) {
+			return results.get(path);
+		}
+
+		/**
+		 * @return The result by file, in the order the files were verified.
+		 */
+		public Map<Path, Result> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return The number of files verified.
+		 */
+		public int size() {
+			return results.size();
+		}
+
+		/**
+		 * @return The files with the given result, in order.
+		 */
+		public List<Path> getPaths(Result result) {
+			List<Path> paths = new ArrayList<>();
+			for (Map.Entry<Path, Result> entry : results.entrySet()) {
+				if (entry.getValue() == result) {
+					paths.add(entry.getKey());
+				}
+			}
+
+			return paths;
+		}
+
+		/**
+		 * @return Whether the checksums of all files match.
+		 */
+		public boolean isAllOk() {
+			for (Result result : results.values()) {
+				if (result != Result.OK) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * @return The problem reading an UNREADABLE file, or null.
+		 */
+		public IOException getException(Path path) {
+			return exceptions.get(path);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.veritomyx;
+
+/**
+ * Formats doubles as ASCII bytes without creating Strings.
+ *
+ * <p>
+ * Values between 10<sup>-3</sup> and 10<sup>7</sup> (the range in which
+ * {@link Double#toString(double)} does not use scientific notation) are
+ * written with the fewest decimal places that still parse back to the same
+ * value, e.g. "123.4567" or "16.0". A value m / 10<sup>k</sup> is accepted
+ * only if dividing m by 10<sup>k</sup> gives back the value exactly, and as
+ * both are exactly representable, the division is rounded the same way as
+ * {@link Double#parseDouble(String)} rounds the decimal, so the output always
+ * parses to the same double. Other values (including NaN, infinities and
+ * -0.0) are written as by {@link Double#toString(double)}.
+ * </p>
+ */
+class DoubleFormatter {
+
+	/** The maximum number of bytes written for a value. */
+	static final int MAX_LENGTH = 26;
+
+	private static final int MAX_DECIMALS = 17;
+	private static final double MIN_PLAIN = 1e-3;
+	private static final double MAX_PLAIN = 1e7;
+	private static final double MAX_EXACT = 9007199254740992.0; // 2^53
+
+	private static final double[] POWERS = new double[MAX_DECIMALS + 1];
+	private static final long[] LONG_POWERS = new long[MAX_DECIMALS + 1];
+
+	static {
+		POWERS[0] = 1;
+		LONG_POWERS[0] = 1;
+		for (int i = 1; i <= MAX_DECIMALS; i++) {
+			POWERS[i] = POWERS[i - 1] * 10;
+			LONG_POWERS[i] = LONG_POWERS[i - 1] * 10;
+		}
+	}
+
+	private DoubleFormatter() {
+	}
+
+	/**
+	 * Write a value to a buffer.
+	 *
+	 * @param value
+	 *            The value.
+	 * @param buffer
+	 *            Receives the bytes, and must have room for
+	 *            {@link #MAX_LENGTH} bytes after the offset.
+	 * @param offset
+	 *            The position of the first byte in the buffer.
+	 * @return The position after the last byte.
+	 */
+	static int format(double value, byte[] buffer, int offset) {
+		double magnitude = Math.abs(value);
+		if (value == 0 && Double.doubleToRawLongBits(value) == 0) {
+			buffer[offset++] = '0';
+			buffer[offset++] = '.';
+			buffer[offset++] = '0';
+			return offset;
+		}
+
+		if (magnitude >= MIN_PLAIN && magnitude < MAX_PLAIN) {
+			for (int decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+				double scaled = magnitude * POWERS[decimals];
+				if (scaled >= MAX_EXACT) {
+					break;
+				}
+
+				long mantissa = Math.round(scaled);
+				if (mantissa / POWERS[decimals] == magnitude) {
+					if (value < 0) {
+						buffer[offset++] = '-';
+					}
+					return writeDecimal(mantissa, decimals, buffer, offset);
+				}
+			}
+		}
+
+		String string = Double.toString(value);
+		for (int i = 0; i < string.length(); i++) {
+			buffer[offset++] = (byte) string.charAt(i);
+		}
+		return offset;
+	}
+
+	/**
+	 * Write mantissa / 10^decimals, with at least one decimal place.
+	 */
+	private static int writeDecimal(long mantissa, int decimals,
+			byte[] buffer, int offset) {
+		long integer = mantissa / LONG_POWERS[decimals];
+		long fraction = mantissa % LONG_POWERS[decimals];
+
+		offset = writeDigits(integer, 0, buffer, offset);
+		buffer[offset++] = '.';
+		if (decimals == 0) {
+			buffer[offset++] = '0';
+			return offset;
+		}
+
+		return writeDigits(fraction, decimals, buffer, offset);
+	}
+
+	/**
+	 * Write the digits of a non-negative number, padded with leading zeros to
+	 * the given width.
+	 */
+	private static int writeDigits(long number, int width, byte[] buffer,
+			int offset) {
+		int length = 1;
+		for (long rest = number / 10; rest > 0; rest /= 10) {
+			length++;
+		}
+		length = Math.max(length, width);
+
+		int end = offset + length;
+		for (int i = end - 1; i >= offset; i--) {
+			buffer[i] = (byte) ('0' + number % 10);
+			number /= 10;
+		}
+		return end;
+	}
+}
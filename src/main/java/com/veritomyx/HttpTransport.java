@@ -0,0 +1,40 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The HTTP(S) layer used by {@link PeakInvestigatorSaaS} to execute API calls
+ * ("actions").
+ *
+ * <p>
+ * Implementations are expected to be safe for use by multiple threads, as a
+ * single instance is shared by every call made through a PeakInvestigatorSaaS
+ * object. The default implementation is {@link UrlConnectionTransport}, while
+ * {@link KeepAliveHttpTransport} reuses connections between calls.
+ * </p>
+ *
+ * @author Adam Tenderholt
+ */
+public interface HttpTransport {
+
+	/**
+	 * Make a POST request with the given (form-encoded) query.
+	 *
+	 * @param url
+	 *            The URL of the API.
+	 * @param query
+	 *            The desired query string.
+	 * @param timeout
+	 *            The connect and read timeout in milliseconds.
+	 * @return The response for the query.
+	 * @throws IOException
+	 *             If an I/O exception occurs during the request.
+	 */
+	public String post(URL url, String query, int timeout) throws IOException;
+
+	/**
+	 * Release any resources (e.g. idle connections) held by the transport.
+	 */
+	public void close();
+}
@@ -0,0 +1,391 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.veritomyx.actions.StatusAction;
+import com.veritomyx.actions.StatusAction.Status;
+
+/**
+ * Watches the status of jobs by polling with STATUS, and notifies a
+ * {@link Listener} when the status of a job changes (e.g. Preparing to Running
+ * to Done or Deleted). Jobs are no longer watched once they are Done or
+ * Deleted.
+ *
+ * <p>
+ * Rather than polling at a fixed interval, the interval of each job adapts to
+ * its progress. While a job is Preparing, or Running without progress, the
+ * interval doubles after every poll. Once scans are being completed, the next
+ * poll is scheduled for about half of the time remaining at the observed rate.
+ * The interval is bounded by the minimum and maximum intervals, and by the
+ * Response Time Objective (RTO) of the job, so that RTO-0 jobs are polled more
+ * often than RTO-24 jobs.
+ * </p>
+ *
+ * <p>
+ * Polls are scheduled on a single scheduler thread, while the STATUS calls
+ * themselves are made with
+ * {@link PeakInvestigatorSaaS#executeActionAsync(com.veritomyx.actions.Action, ActionCallback)},
+ * so one watcher can handle thousands of jobs. Listeners are called on a
+ * thread of the PeakInvestigatorSaaS executor.
+ * </p>
+ */
+public class JobWatcher {
+
+	public static final long DEFAULT_MIN_INTERVAL = 5000; // milliseconds
+	public static final long DEFAULT_MAX_INTERVAL = 600000; // milliseconds
+
+	/** Fraction of the Response Time Objective used as maximum interval. */
+	private static final int RTO_DIVISOR = 48;
+	private static final long MILLISECONDS_PER_HOUR = 3600000;
+
+	private final static Logger LOGGER = Logger.getLogger(JobWatcher.class
+			.getName());
+
+	private final PeakInvestigatorSaaS service;
+	private final String user;
+	private final String code;
+	private final ScheduledExecutorService scheduler;
+	private final boolean ownsScheduler;
+	private final ConcurrentMap<String, WatchedJob> jobs = new ConcurrentHashMap<>();
+
+	private volatile long minInterval = DEFAULT_MIN_INTERVAL;
+	private volatile long maxInterval = DEFAULT_MAX_INTERVAL;
+
+	/**
+	 * Notified of the progress of watched jobs.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when the status of a job is first observed, and every time it
+		 * changes afterwards.
+		 *
+		 * @param jobID
+		 *            The job.
+		 * @param previous
+		 *            The previous status, or null if this is the first.
+		 * @param action
+		 *            The processed STATUS action with the new status.
+		 */
+		public void statusChanged(String jobID, Status previous,
+				StatusAction action);
+
+		/**
+		 * Called when polling a job fails, either because of a problem with
+		 * the connection, or because PeakInvestigator returned an error. The
+		 * job is still watched, unless {@link JobWatcher#unwatch(String)} is
+		 * called.
+		 *
+		 * @param jobID
+		 *            The job.
+		 * @param exception
+		 *            The problem.
+		 */
+		public void pollFailed(String jobID, Exception exception);
+	}
+
+	/**
+	 * Create a watcher with its own scheduler thread.
+	 *
+	 * @param service
+	 *            Used to execute the STATUS calls.
+	 * @param user
+	 *            The username for the Veritomyx account.
+	 * @param code
+	 *            The password for the Veritomyx account.
+	 */
+	public JobWatcher(PeakInvestigatorSaaS service, String user, String code) {
+		this(service, user, code, Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "JobWatcher");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}), true);
+	}
+
+	/**
+	 * Create a watcher that uses a shared scheduler, which is not shut down by
+	 * {@link #shutdown()}.
+	 *
+	 * @param service
+	 *            Used to execute the STATUS calls.
+	 * @param user
+	 *            The username for the Veritomyx account.
+	 * @param code
+	 *            The password for the Veritomyx account.
+	 * @param scheduler
+	 *            Used to schedule the polls.
+	 */
+	public JobWatcher(PeakInvestigatorSaaS service, String user, String code,
+			ScheduledExecutorService scheduler) {
+		this(service, user, code, scheduler, false);
+	}
+
+	private JobWatcher(PeakInvestigatorSaaS service, String user, String code,
+			ScheduledExecutorService scheduler, boolean ownsScheduler) {
+		this.service = service;
+		this.user = user;
+		this.code = code;
+		this.scheduler = scheduler;
+		this.ownsScheduler = ownsScheduler;
+	}
+
+	/**
+	 * Used to modify the bounds of the polling interval using a Fluent-style
+	 * API.
+	 *
+	 * @param min
+	 *            The minimum (and initial) interval.
+	 * @param max
+	 *            The maximum interval.
+	 * @param unit
+	 *            The unit of the intervals.
+	 * @return This object after the intervals have been modified.
+	 */
+	public JobWatcher withIntervals(long min, long max, TimeUnit unit) {
+		if (min <= 0 || max < min) {
+			throw new IllegalArgumentException("Invalid polling intervals.");
+		}
+
+		this.minInterval = unit.toMillis(min);
+		this.maxInterval = unit.toMillis(max);
+		return this;
+	}
+
+	/**
+	 * Start watching a job. The first poll is made immediately. If the job is
+	 * already watched, it is replaced.
+	 *
+	 * @param jobID
+	 *            The job (from INIT or RUN).
+	 * @param RTO
+	 *            The Response Time Objective of the job (e.g. "RTO-24"), or
+	 *            null if unknown.
+	 * @param listener
+	 *            Notified of the progress of the job.
+	 */
+	public void watch(String jobID, String RTO, Listener listener) {
+		WatchedJob job = new WatchedJob(jobID, parseRTO(RTO), listener);
+		jobs.put(jobID, job);
+		schedule(job, 0);
+	}
+
+	/**
+	 * Stop watching a job. A poll that is in flight completes, but the
+	 * listener is not notified.
+	 *
+	 * @param jobID
+	 *            The job.
+	 * @return Whether the job was being watched.
+	 */
+	public boolean unwatch(String jobID) {
+		return jobs.remove(jobID) != null;
+	}
+
+	public Set<String> getWatchedJobs() {
+		return Collections.unmodifiableSet(jobs.keySet());
+	}
+
+	/**
+	 * Stop watching all jobs, and shut down the scheduler if it is owned by
+	 * this watcher.
+	 */
+	public void shutdown() {
+		jobs.clear();
+		if (ownsScheduler) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	private void schedule(final WatchedJob job, long delay) {
+		try {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					poll(job);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException exception) {
+			jobs.remove(job.jobID, job);
+		}
+	}
+
+	private void poll(final WatchedJob job) {
+		if (!isWatched(job)) {
+			return;
+		}
+
+		try {
+			service.executeActionAsync(new StatusAction(user, code, job.jobID),
+					new ActionCallback<StatusAction>() {
+						@Override
+						public void onSuccess(StatusAction action) {
+							handleResponse(job, action);
+						}
+
+						@Override
+						public void onFailure(StatusAction action,
+								Exception exception) {
+							handleFailure(job, exception);
+						}
+					});
+		} catch (RejectedExecutionException exception) {
+			handleFailure(job, exception);
+		}
+	}
+
+	private void handleResponse(WatchedJob job, StatusAction action) {
+		if (!isWatched(job)) {
+			return;
+		}
+
+		if (action.hasError()) {
+			handleFailure(job, new IOException("STATUS of " + job.jobID
+					+ " failed: " + action.getErrorMessage() + " ("
+					+ action.getErrorCode() + ")"));
+			return;
+		}
+
+		Status status = action.getStatus();
+		Status previous = job.status;
+		long delay = job.update(action, System.currentTimeMillis());
+
+		boolean finished = status == Status.Done || status == Status.Deleted;
+		if (finished) {
+			jobs.remove(job.jobID, job);
+		}
+
+		if (status != previous) {
+			try {
+				job.listener.statusChanged(job.jobID, previous, action);
+			} catch (RuntimeException exception) {
+				LOGGER.log(Level.WARNING, "Listener failed for " + job.jobID,
+						exception);
+			}
+		}
+
+		if (!finished) {
+			schedule(job, delay);
+		}
+	}
+
+	private void handleFailure(WatchedJob job, Exception exception) {
+		if (!isWatched(job)) {
+			return;
+		}
+
+		try {
+			job.listener.pollFailed(job.jobID, exception);
+		} catch (RuntimeException listenerException) {
+			LOGGER.log(Level.WARNING, "Listener failed for " + job.jobID,
+					listenerException);
+		}
+
+		schedule(job, job.backOff());
+	}
+
+	private boolean isWatched(WatchedJob job) {
+		return jobs.get(job.jobID) == job;
+	}
+
+	/**
+	 * @return The number of hours of a Response Time Objective (e.g. 24 for
+	 *         "RTO-24"), or -1 if it is not known.
+	 */
+	static long parseRTO(String RTO) {
+		if (RTO == null || !RTO.startsWith("RTO-")) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(RTO.substring(4));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * The polling state of a single job. It is only modified by the thread
+	 * handling the response of its latest poll.
+	 */
+	private class WatchedJob {
+		final String jobID;
+		final long rtoHours;
+		final Listener listener;
+
+		volatile Status status = null;
+		private long interval = 0;
+		private long lastPollTime = 0;
+		private int lastScansComplete = -1;
+
+		WatchedJob(String jobID, long rtoHours, Listener listener) {
+			this.jobID = jobID;
+			this.rtoHours = rtoHours;
+			this.listener = listener;
+		}
+
+		long getMaxInterval() {
+			if (rtoHours < 0) {
+				return maxInterval;
+			}
+
+			long rtoInterval = rtoHours * MILLISECONDS_PER_HOUR / RTO_DIVISOR;
+			return Math.max(minInterval, Math.min(maxInterval, rtoInterval));
+		}
+
+		/**
+		 * Record the result of a poll.
+		 *
+		 * @return The delay until the next poll, in milliseconds.
+		 */
+		synchronized long update(StatusAction action, long now) {
+			status = action.getStatus();
+			if (status != Status.Running || !action.hasScanCounts()) {
+				lastPollTime = now;
+				return backOff();
+			}
+
+			int scansInput = action.getNumberOfInputScans();
+			int scansComplete = action.getNumberOfCompleteScans();
+
+			long delay;
+			if (lastScansComplete >= 0 && scansComplete > lastScansComplete
+					&& now > lastPollTime) {
+				double rate = (double) (scansComplete - lastScansComplete)
+						/ (now - lastPollTime);
+				long remaining = (long) ((scansInput - scansComplete) / rate);
+				interval = clamp(remaining / 2);
+				delay = interval;
+			} else {
+				delay = backOff();
+			}
+
+			lastPollTime = now;
+			lastScansComplete = scansComplete;
+			return delay;
+		}
+
+		synchronized long backOff() {
+			interval = interval == 0 ? minInterval : clamp(2 * interval);
+			return interval;
+		}
+
+		private long clamp(long value) {
+			return Math.max(minInterval, Math.min(getMaxInterval(), value));
+		}
+	}
+}
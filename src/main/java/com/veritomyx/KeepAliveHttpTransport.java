@@ -0,0 +1,220 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.veritomyx.actions.Action.ResponseFormatException;
+import com.veritomyx.actions.StreamingAction;
+
+/**
+ * A {@link HttpTransport} that keeps HTTPS connections alive between requests,
+ * so that repeated calls (e.g. polling with STATUS) do not pay for a new TCP
+ * connection and TLS handshake every time.
+ *
+ * <p>
+ * Connections are reused through the keep-alive cache of
+ * {@link HttpURLConnection}, which only happens if every response (including
+ * error responses) is read completely and its stream closed. This class takes
+ * care of that, and bounds the number of connections in use, both in total and
+ * per host. Requests beyond these limits wait (up to the request timeout) for
+ * a connection to become available.
+ * </p>
+ *
+ * <p>
+ * Note that the JVM keeps at most <code>http.maxConnections</code> (5 by
+ * default) idle connections per host, so that system property should be
+ * raised if a per-host limit above 5 is configured.
+ * </p>
+ *
+ * @author Adam Tenderholt
+ */
+public class KeepAliveHttpTransport extends UrlConnectionTransport {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+	private final Semaphore connections;
+	private final int maxConnectionsPerHost;
+	private final ConcurrentMap<String, Semaphore> hostConnections = new ConcurrentHashMap<>();
+
+	public KeepAliveHttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+	}
+
+	/**
+	 * @param maxConnections
+	 *            The maximum number of connections in use at any time.
+	 * @param maxConnectionsPerHost
+	 *            The maximum number of connections in use for a given host,
+	 *            unless overridden with
+	 *            {@link #withMaxConnectionsForHost(String, int)}.
+	 */
+	public KeepAliveHttpTransport(int maxConnections, int maxConnectionsPerHost) {
+		if (maxConnections < 1 || maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException(
+					"Connection limits must be positive.");
+		}
+
+		this.connections = new Semaphore(maxConnections, true);
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Used to set the connection limit of a specific host using a Fluent-style
+	 * API. It should be called before any requests are made to that host.
+	 *
+	 * @param host
+	 *            The host name, optionally followed by ':' and the port.
+	 * @param maxConnections
+	 *            The maximum number of connections in use for the host.
+	 * @return This object after the limit has been set.
+	 */
+	public KeepAliveHttpTransport withMaxConnectionsForHost(String host,
+			int maxConnections) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException(
+					"Connection limits must be positive.");
+		}
+
+		String key = host.indexOf(':') < 0 ? host + ":443" : host;
+		hostConnections.put(key, new Semaphore(maxConnections, true));
+		return this;
+	}
+
+	@Override
+	public String post(URL url, String query, int timeout) throws IOException {
+		Semaphore permits = acquirePermits(url, timeout);
+		try {
+			HttpURLConnection connection = buildConnection(url, timeout);
+			try {
+				return queryConnection(connection, query);
+			} finally {
+				release(connection);
+			}
+		} finally {
+			releasePermits(permits);
+		}
+	}
+
+	@Override
+	public void post(URL url, int timeout, StreamingAction action)
+			throws IOException, ResponseFormatException {
+		Semaphore permits = acquirePermits(url, timeout);
+		try {
+			HttpURLConnection connection = buildConnection(url, timeout);
+			try {
+				queryConnection(connection, action);
+			} finally {
+				release(connection);
+			}
+		} finally {
+			releasePermits(permits);
+		}
+	}
+
+	@Override
+	protected HttpURLConnection buildConnection(URL url, int timeout)
+			throws IOException {
+		HttpURLConnection connection = super.buildConnection(url, timeout);
+		connection.setRequestProperty("Connection", "keep-alive");
+
+		return connection;
+	}
+
+	/**
+	 * Wait for a connection to be available, both in total and for the host
+	 * of the URL.
+	 *
+	 * @return The permits of the host, to be released with
+	 *         {@link #releasePermits(Semaphore)}.
+	 */
+	private Semaphore acquirePermits(URL url, int timeout) throws IOException {
+		Semaphore permits = getHostPermits(url);
+
+		acquire(connections, url, timeout);
+		try {
+			acquire(permits, url, timeout);
+		} catch (IOException e) {
+			connections.release();
+			throw e;
+		}
+
+		return permits;
+	}
+
+	private void releasePermits(Semaphore permits) {
+		permits.release();
+		connections.release();
+	}
+
+	private Semaphore getHostPermits(URL url) {
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		String key = url.getHost() + ":" + port;
+
+		Semaphore permits = hostConnections.get(key);
+		if (permits == null) {
+			Semaphore created = new Semaphore(maxConnectionsPerHost, true);
+			permits = hostConnections.putIfAbsent(key, created);
+			if (permits == null) {
+				permits = created;
+			}
+		}
+
+		return permits;
+	}
+
+	private static void acquire(Semaphore permits, URL url, int timeout)
+			throws IOException {
+		try {
+			if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				throw new SocketTimeoutException(
+						"Timed out waiting for a connection to "
+								+ url.getHost());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for a connection to "
+							+ url.getHost());
+		}
+	}
+
+	/**
+	 * Consume and close the response so that the underlying connection is
+	 * returned to the keep-alive cache instead of being discarded.
+	 */
+	private static void release(HttpURLConnection connection) {
+		try {
+			drain(connection.getInputStream());
+		} catch (IOException exception) {
+			try {
+				drain(connection.getErrorStream());
+			} catch (IOException ignored) {
+				// connection will not be reused
+			}
+		}
+	}
+
+	private static void drain(InputStream stream) throws IOException {
+		if (stream == null) {
+			return;
+		}
+
+		try {
+			byte[] buffer = new byte[1024];
+			while (stream.read(buffer) != -1) {
+				// discard
+			}
+		} finally {
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.veritomyx;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xeustechnologies.jtar.TarEntry;
+import org.xeustechnologies.jtar.TarInputStream;
+
+/**
+ * Reads the centroids of a mass list archive (e.g. *.mass_list.tar) as it is
+ * being received, without extracting it first. The archive contains a text
+ * file for each scan, with a centroid per line (m/z and intensity, separated
+ * by whitespace) and a checksum line at the end.
+ *
+ * <p>
+ * Centroids are returned one at a time by {@link #readCentroid()}, so
+ * processing can start with the first bytes of the archive. The checksum of
+ * each file is verified (as done by {@link ChecksumFileReader}) once its end
+ * has been reached, i.e. after its centroids have been returned; an
+ * IOException is thrown at that point if it does not match.
+ * </p>
+ *
+ * <p>
+ * For example:
+ * </p>
+ *
+ * <pre>
+ * try (MassListReader reader = webService.openMassList(sftpAction,
+ * 		statusAction.getResultsFilename())) {
+ * 	MassListReader.Centroid centroid;
+ * 	while ((centroid = reader.readCentroid()) != null) {
+ * 		process(centroid.getScan(), centroid.getMz(), centroid.getIntensity());
+ * 	}
+ * }
+ * </pre>
+ */
+public class MassListReader implements AutoCloseable {
+
+	private final static Logger LOGGER = LoggerFactory
+			.getLogger(MassListReader.class);
+	private final static Charset CHARSET = Charset.forName("UTF-8");
+
+	private final TarInputStream tarInputStream;
+	private ChecksumFileReader entryReader = null;
+	private String entryName = null;
+
+	/**
+	 * @param input
+	 *            The contents of the archive, which is closed by
+	 *            {@link #close()}.
+	 */
+	public MassListReader(InputStream input) {
+		tarInputStream = new TarInputStream(input);
+	}
+
+	/**
+	 * Read the next centroid, moving on to the next file of the archive when
+	 * needed.
+	 *
+	 * @return The centroid, or null if the end of the archive has been
+	 *         reached.
+	 * @throws IOException
+	 *             If there is a problem reading the archive, a line can not be
+	 *             parsed, or the checksum of a file does not match.
+	 */
+	public Centroid readCentroid() throws IOException {
+		while (true) {
+			if (entryReader == null && !nextEntry()) {
+				return null;
+			}
+
+			String line = entryReader.readLine();
+			if (line == null) {
+				closeEntry();
+				continue;
+			}
+
+			if (line.startsWith("#") || line.trim().isEmpty()) {
+				continue;
+			}
+
+			return parse(line);
+		}
+	}
+
+	/**
+	 * @return The name of the file that is being read, or null before the
+	 *         first centroid and after the end of the archive.
+	 */
+	public String getCurrentEntryName() {
+		return entryName;
+	}
+
+	/**
+	 * Close the archive (and the connection it is read from). The remaining
+	 * files are not verified.
+	 */
+	@Override
+	public void close() throws IOException {
+		entryReader = null;
+		entryName = null;
+		tarInputStream.close();
+	}
+
+	private boolean nextEntry() throws IOException {
+		TarEntry entry;
+		do {
+			entry = tarInputStream.getNextEntry();
+			if (entry == null) {
+				return false;
+			}
+		} while (entry.isDirectory());
+
+		entryName = entry.getName();
+		entryReader = new ChecksumFileReader(new InputStreamReader(
+				new EntryInputStream(tarInputStream), CHARSET), entryName);
+		return true;
+	}
+
+	private void closeEntry() throws IOException {
+		ChecksumFileReader reader = entryReader;
+		entryReader = null;
+		reader.close();
+
+		if (!reader.hasChecksum()) {
+			LOGGER.warn(entryName + " missing checksum");
+			return;
+		}
+
+		try {
+			if (!reader.isChecksumValid()) {
+				throw new IOException(entryName + " checksum mismatch");
+			}
+		} catch (ChecksumFileReader.MissingChecksum e) {
+			// checked above
+		}
+	}
+
+	private Centroid parse(String line) throws IOException {
+		String[] columns = line.trim().split("\\s+");
+		if (columns.length < 2) {
+			throw new IOException("Unexpected line in " + entryName + ": "
+					+ line);
+		}
+
+		try {
+			return new Centroid(entryName, Double.parseDouble(columns[0]),
+					Double.parseDouble(columns[1]));
+		} catch (NumberFormatException e) {
+			throw new IOException("Unexpected line in " + entryName + ": "
+					+ line, e);
+		}
+	}
+
+	/**
+	 * Reads the current entry of the archive; closing it does not close the
+	 * archive.
+	 */
+	private static class EntryInputStream extends FilterInputStream {
+		EntryInputStream(InputStream input) {
+			super(input);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A peak of a mass list.
+	 */
+	public static class Centroid {
+		private final String scan;
+		private final double mz;
+		private final double intensity;
+
+		public Centroid(String scan, double mz, double intensity) {
+			this.scan = scan;
+			this.mz = mz;
+			this.intensity = intensity;
+		}
+
+		/**
+		 * @return The name of the file of the archive (i.e. scan) that
+		 *         contains this centroid.
+		 */
+		public String getScan() {
+			return scan;
+		}
+
+		public double getMz() {
+			return mz;
+		}
+
+		public double getIntensity() {
+			return intensity;
+		}
+
+		@Override
+		public String toString() {
+			return scan + ": " + mz + "\t" + intensity;
+		}
+	}
+}
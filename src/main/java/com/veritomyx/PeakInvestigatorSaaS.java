@@ -19,15 +19,26 @@
 
 package com.veritomyx;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.BufferedWriter;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import com.jcraft.jsch.ChannelSftp;
@@ -38,25 +49,57 @@ import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.Session;
 import com.jcraft.jsch.SftpProgressMonitor;
 import com.veritomyx.actions.*;
+import com.veritomyx.actions.Action.ResponseFormatException;
 
 /**
  * This is the main class to access the PeakInvestigator service. It has
  * functions to execute API calls ("actions"), as well as manage SFTP transfers.
  * See https://peakinvestigator.veritomyx.com/api/ for more information.
  * 
+ * <p>
+ * Instances are safe to share between threads. They should be configured
+ * with the with...() methods (which modify this object and return it) before
+ * being shared. A change made afterwards is seen by the calls started after
+ * it, while a call in progress keeps using the transport and SFTP session
+ * pool it started with. API calls and SFTP transfers keep their state in
+ * local variables (or in the SFTP session pool), so concurrent calls on the
+ * same instance do not interfere. Action objects, on the other hand, are not
+ * thread-safe: an action must not be executed by more than one call at a
+ * time, although an action whose response has been processed (e.g. an
+ * SftpAction) can be used by concurrent transfers.
+ * </p>
+ * 
+ * <p>
+ * The exceptions are the protected initializeSftpSession(),
+ * disconnectSftpSession() and getSftpChannel() methods, which manage a single
+ * SFTP connection held by the object itself.
+ * </p>
+ * 
  * @author Dan Schmidt (original version)
  * @author Adam Tenderholt
  */
 public class PeakInvestigatorSaaS
 {
 	public static final String API_VERSION = "3.3";
-	private static final String PAGE_ENCODING = "UTF-8";
 
-	JSch jsch = new JSch();
-	private String server = null;
+	final JSch jsch;
+	private final String server;
+	private volatile int timeout; //milliseconds
+	private volatile HttpTransport transport;
+	private volatile ExecutorService executor;
+	private final DefaultExecutor defaultExecutor;
+	private volatile SftpSessionPool sftpSessionPool;
+	private volatile ResponseCache responseCache;
+
+	// used by initializeSftpSession() and related methods only
 	Session session = null;
 	ChannelSftp channel = null;
-	private int timeout = 10000; //milliseconds
+
+	public static final int DEFAULT_TIMEOUT = 10000; // milliseconds
+	public static final int DEFAULT_ASYNC_THREADS = 8;
+	public static final int RESUME_CHECK_SIZE = 65536; // bytes
+	public static final int UPLOAD_BUFFER_SIZE = 32768; // bytes
+	public static final int MASS_LIST_DRAIN_LIMIT = 65536; // bytes
 
 	// return codes from web pages
 	public  static final int W_UNDEFINED =  0;
@@ -89,7 +132,7 @@ public class PeakInvestigatorSaaS
 	public  static final int W_ERROR_NUM_SCAN_FILES = -21;
 	public  static final int W_ERROR_CANNOT_BE_BLACK = -22;
 
-	private Logger log;
+	private final Logger log;
 
 	/**
 	 * Creates a new PeakInvestigatorSaaS object for the given server.
@@ -113,11 +156,16 @@ public class PeakInvestigatorSaaS
 	public PeakInvestigatorSaaS(String server) throws JSchException {
 		// without this we get exception in getInputStream
 		System.setProperty("java.net.preferIPv4Stack", "true");
-		if (server.startsWith("https://")) {
-			this.server = server.substring(8);
-		} else {
-			this.server = server;
-		}
+
+		this.jsch = new JSch();
+		this.server = server.startsWith("https://") ? server.substring(8)
+				: server;
+		this.timeout = DEFAULT_TIMEOUT;
+		this.transport = new UrlConnectionTransport();
+		this.executor = null;
+		this.defaultExecutor = new DefaultExecutor();
+		this.sftpSessionPool = null;
+		this.responseCache = null;
 
 		log = Logger.getLogger(this.getClass().getName());
 		log.info(this.getClass().getName());
@@ -138,68 +186,72 @@ public class PeakInvestigatorSaaS
 	}
 
 	/**
-	 * Utility function to build a HTTPS connection with various required
-	 * settings.
+	 * Used to replace the default HTTPS transport (a new HttpURLConnection per
+	 * call) using a Fluent-style API.
 	 * 
-	 * @param url
-	 *            The URL of the desired connection.
-	 * @return A new HttpURLConnection instance
-	 * @throws IOException
-	 *             If an I/O exception is thrown when opening HTTPS connection
+	 * @param transport
+	 *            The desired transport, e.g. {@link KeepAliveHttpTransport}.
+	 * @return This object after the transport has been modified.
 	 */
-	private HttpURLConnection buildConnection(URL url) throws IOException {
-
-		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-		connection.setUseCaches(false);
-		connection.setRequestMethod("POST");
-		connection.setRequestProperty("Content-Type",
-				"application/x-www-form-urlencoded");
-		connection.setRequestProperty("Content-Language", "en-US");
+	public PeakInvestigatorSaaS withTransport(HttpTransport transport) {
+		this.transport = transport;
+		return this;
+	}
 
-		connection.setReadTimeout(timeout);
-		connection.setConnectTimeout(timeout);
-		connection.setDoInput(true);
-		connection.setDoOutput(true);
+	/**
+	 * Used to set the executor for asynchronous API calls using a Fluent-style
+	 * API. By default, a pool of {@value #DEFAULT_ASYNC_THREADS} daemon threads
+	 * is created when first needed. On a JDK that supports virtual threads,
+	 * <code>Executors.newVirtualThreadPerTaskExecutor()</code> is a good
+	 * choice when many calls are in flight.
+	 * 
+	 * @param executor
+	 *            The desired executor. It is not shut down by
+	 *            {@link #shutdown()}.
+	 * @return This object after the executor has been modified.
+	 */
+	public PeakInvestigatorSaaS withExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
 
-		return connection;
+	/**
+	 * Used to keep SFTP sessions open between transfers using a Fluent-style
+	 * API. Without a pool, each call to putFile() or getFile() connects and
+	 * disconnects its own SSH session.
+	 * 
+	 * @param pool
+	 *            The desired pool, or null. It is not closed by
+	 *            {@link #shutdown()}.
+	 * @return This object after the pool has been modified.
+	 */
+	public PeakInvestigatorSaaS withSftpSessionPool(SftpSessionPool pool) {
+		this.sftpSessionPool = pool;
+		return this;
 	}
 
 	/**
-	 * Utility function to make a POST method against a HttpURLConnection with
-	 * the given query.
+	 * Used to reuse the responses of actions whose results rarely change (e.g.
+	 * PI_VERSIONS and SFTP) using a Fluent-style API. Only
+	 * {@link #executeAndProcess(Action)} and the asynchronous calls use the
+	 * cache; {@link #executeAction(Action)} always makes the call.
 	 * 
-	 * @param connection
-	 *            A valid HttpURLConnection (not currently connected).
-	 * @param query
-	 *            The desired query string
-	 * @return The response for the query.
-	 * @throws IOException
-	 *             If an I/O exception occurs from the HTTP connection
+	 * @param cache
+	 *            The desired cache, or null. It can be shared with other
+	 *            objects.
+	 * @return This object after the cache has been modified.
 	 */
-	protected String queryConnection(HttpURLConnection connection, String query)
-			throws IOException {
-
-		connection.setRequestProperty("Content-Length",
-				"" + Integer.toString(query.getBytes().length));
-
-		// Send request
-		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
-				connection.getOutputStream(), PAGE_ENCODING));
-		writer.write(query);
-		writer.flush();
-
-		connection.connect();
-
-		// Read the response from the HTTP server
-		StringBuilder builder = new StringBuilder();
-		BufferedReader reader = new BufferedReader(new InputStreamReader(
-				connection.getInputStream()));
-		String line;
-		while ((line = reader.readLine()) != null) {
-			builder.append(line);
-		}
+	public PeakInvestigatorSaaS withResponseCache(ResponseCache cache) {
+		this.responseCache = cache;
+		return this;
+	}
+
+	int getTimeout() {
+		return timeout;
+	}
 
-		return builder.toString();
+	SftpSessionPool getSftpSessionPool() {
+		return sftpSessionPool;
 	}
 
 	/**
@@ -217,22 +269,191 @@ public class PeakInvestigatorSaaS
 		action.reset();
 		String page = "https://" + server + "/api/";
 			
-		HttpURLConnection connection = buildConnection(new URL(page));
 		String response = "";
 		try {
-			response = queryConnection(connection, action.buildQuery());
-		} catch (SocketTimeoutException timeoutException) {
-			throw new SocketTimeoutException("Unable to connect to " + page
+			response = transport.post(new URL(page), action.buildQuery(),
+					timeout);
+		} catch (IOException exception) {
+			throw connectionException(page, exception);
+		}
+
+		return response;
+	}
+
+	private static IOException connectionException(String page,
+			IOException exception) {
+		if (exception instanceof SocketTimeoutException) {
+			return new SocketTimeoutException("Unable to connect to " + page
 					+ ": connection timed out.");
-		} catch (UnknownHostException hostException) {
-			throw new UnknownHostException("Unable to connect to " + page
+		} else if (exception instanceof UnknownHostException) {
+			return new UnknownHostException("Unable to connect to " + page
 					+ ": unknown host.");
+		}
+
+		return new IOException("Unable to connect to " + page + ": "
+				+ exception.getMessage());
+	}
+
+	/**
+	 * Execute an API call ("action") of the PeakInvestigator service, and
+	 * process its response. If the transport is a
+	 * {@link StreamingHttpTransport} (e.g. the default one) and the action a
+	 * {@link StreamingAction} (e.g. any action of this SDK), the response is
+	 * processed while it is received. If a {@link ResponseCache} is set and
+	 * has the response of an equivalent action, no call is made.
+	 * 
+	 * @param action
+	 *            An instance of an Action that represent the API methods. It
+	 *            must be properly initialized.
+	 * @return The given action, which is ready to be queried.
+	 * @throws IOException
+	 *             An I/O exception is thrown if there is a problem in the HTTP
+	 *             connection.
+	 * @throws ResponseFormatException
+	 *             Thrown if the response can not be processed.
+	 */
+	public <A extends Action> A executeAndProcess(A action) throws IOException,
+			ResponseFormatException {
+		ResponseCache cache = responseCache;
+		if (cache != null && cache.isCacheable(action)) {
+			String response = cache.get(server, action);
+			if (response != null) {
+				action.reset();
+				action.processResponse(response);
+			} else {
+				response = executeAction(action);
+				action.processResponse(response);
+				cache.put(server, action, response);
+			}
+
+			return action;
+		}
+
+		HttpTransport transport = this.transport;
+		if (!(transport instanceof StreamingHttpTransport)
+				|| !(action instanceof StreamingAction)) {
+			String response = executeAction(action);
+			action.processResponse(response);
+			return action;
+		}
+
+		action.reset();
+		String page = "https://" + server + "/api/";
+		try {
+			((StreamingHttpTransport) transport).post(new URL(page), timeout,
+					(StreamingAction) action);
 		} catch (IOException exception) {
-			throw new IOException("Unable to connect to " + page + ": "
-					+ exception.getMessage());
+			throw connectionException(page, exception);
 		}
 
-		return response;
+		return action;
+	}
+
+	/**
+	 * Execute an API call ("action") of the PeakInvestigator service without
+	 * blocking the calling thread. See
+	 * {@link #executeActionAsync(Action, ActionCallback)}.
+	 * 
+	 * @param action
+	 *            An instance of an Action that represent the API methods. It
+	 *            must be properly initialized.
+	 * @return A Future of the given action, which is ready to be queried once
+	 *         the Future completes.
+	 */
+	public <A extends Action> Future<A> executeActionAsync(A action) {
+		return executeActionAsync(action, null);
+	}
+
+	/**
+	 * Execute an API call ("action") of the PeakInvestigator service without
+	 * blocking the calling thread. The call is made, and its response
+	 * processed, on the executor of this object (see
+	 * {@link #withExecutor(ExecutorService)}).
+	 * 
+	 * @param action
+	 *            An instance of an Action that represent the API methods. It
+	 *            must be properly initialized, and must not be used by
+	 *            another call until this one completes.
+	 * @param callback
+	 *            Notified once the call completes, or null.
+	 * @return A Future of the given action, which is ready to be queried once
+	 *         the Future completes. If the call fails, Future.get() throws an
+	 *         ExecutionException caused by an IOException or a
+	 *         ResponseFormatException.
+	 */
+	public <A extends Action> Future<A> executeActionAsync(final A action,
+			final ActionCallback<A> callback) {
+		ExecutorService service = executor != null ? executor
+				: defaultExecutor.get();
+		return service.submit(new Callable<A>() {
+			@Override
+			public A call() throws Exception {
+				try {
+					executeAndProcess(action);
+				} catch (Exception exception) {
+					if (callback != null) {
+						callback.onFailure(action, exception);
+					}
+					throw exception;
+				}
+
+				if (callback != null) {
+					callback.onSuccess(action);
+				}
+				return action;
+			}
+		});
+	}
+
+	/**
+	 * Release resources held by this object, i.e. the threads of the default
+	 * executor and any connections held by the transport. Pending asynchronous
+	 * calls are allowed to complete.
+	 * 
+	 * <p>
+	 * Note that the transport is closed even if it was given with
+	 * {@link #withTransport(HttpTransport)}, so this should not be called
+	 * while the transport is still used by other objects.
+	 * </p>
+	 */
+	public void shutdown() {
+		defaultExecutor.shutdown();
+		transport.close();
+	}
+
+	/**
+	 * The pool of daemon threads used for asynchronous calls if no executor
+	 * has been given. It is created when first needed.
+	 */
+	private static class DefaultExecutor {
+		private ExecutorService executor = null;
+
+		synchronized ExecutorService get() {
+			if (executor == null) {
+				executor = Executors.newFixedThreadPool(DEFAULT_ASYNC_THREADS,
+						new ThreadFactory() {
+							private final AtomicInteger count = new AtomicInteger();
+
+							@Override
+							public Thread newThread(Runnable runnable) {
+								Thread thread = new Thread(runnable,
+										"PeakInvestigatorSaaS-"
+												+ count.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+			}
+
+			return executor;
+		}
+
+		synchronized void shutdown() {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
 	}
 
 	/**
@@ -258,12 +479,32 @@ public class PeakInvestigatorSaaS
 	 *             A JSchException is thrown if problem connecting to SFTP
 	 *             server.
 	 */
-	protected void initializeSftpSession(String server, String username,
+	protected synchronized void initializeSftpSession(String server, String username,
 			String password, int port, String fingerprint) throws JSchException {
 
 		log.info("Starting SFTP connection to " + server);
 
-		session = jsch.getSession(username, server, port);
+		session = openSession(jsch, server, username, password, port,
+				fingerprint, timeout);
+
+		channel = (ChannelSftp) session.openChannel("sftp");
+		channel.connect(timeout);
+	}
+
+	/**
+	 * Utility function to open a SSH session and verify the identity of the
+	 * host.
+	 * 
+	 * @return A connected session.
+	 * @throws JSchException
+	 *             A JSchException is thrown if problem connecting to SSH
+	 *             server, or if the host does not match the fingerprint.
+	 */
+	static Session openSession(JSch jsch, String server, String username,
+			String password, int port, String fingerprint, int timeout)
+			throws JSchException {
+
+		Session session = jsch.getSession(username, server, port);
 		session.setPassword(password);
 		session.connect(timeout);
 
@@ -280,11 +521,10 @@ public class PeakInvestigatorSaaS
 			throw new JSchException(builder.toString());
 		}
 
-		channel = (ChannelSftp) session.openChannel("sftp");
-		channel.connect(timeout);
+		return session;
 	}
 
-	protected void disconnectSftpSession() {
+	protected synchronized void disconnectSftpSession() {
 		if (channel != null && channel.isConnected()) {
 			channel.disconnect();
 		}
@@ -294,7 +534,11 @@ public class PeakInvestigatorSaaS
 		}
 	}
 
-	protected boolean isConnectedForSftp() {
+	protected synchronized boolean isConnectedForSftp() {
+		return isConnectedForSftp(session, channel);
+	}
+
+	static boolean isConnectedForSftp(Session session, ChannelSftp channel) {
 		if (session != null && channel != null) {
 			return session.isConnected() && channel.isConnected();
 		}
@@ -306,13 +550,13 @@ public class PeakInvestigatorSaaS
 		throw new IllegalStateException("Inconsistent session & channel state.");
 	}
 
-	protected ChannelSftp getSftpChannel() {
+	protected synchronized ChannelSftp getSftpChannel() {
 		return channel;
 	}
 
 	/**
-	 * Transfer a file to the SFTP drop. Calls initializeSftpSession() so it
-	 * should work transparently.
+	 * Transfer a file to the SFTP drop. Connects its own SFTP session (or uses
+	 * the SFTP session pool) so it should work transparently.
 	 * 
 	 * @param action
 	 *            An SFTP action that has valid response from PeakInvestigator
@@ -333,29 +577,214 @@ public class PeakInvestigatorSaaS
 	public void putFile(SftpAction action, String localFilename,
 			String remoteFilename, SftpProgressMonitor monitor)
 			throws JSchException, SftpException {
+		putFile(action, localFilename, remoteFilename, monitor, false);
+	}
+
+	/**
+	 * Transfer a file to the SFTP drop, optionally continuing a previous
+	 * transfer that did not complete.
+	 * 
+	 * <p>
+	 * When resuming, the transfer continues after the last byte of the remote
+	 * file, provided that the end of the remote file matches the local file
+	 * (the first and last {@value #RESUME_CHECK_SIZE} bytes are compared).
+	 * Otherwise, the remote file is replaced. In both cases, the size of the
+	 * remote file is checked once the transfer has completed.
+	 * </p>
+	 * 
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 * @param localFilename
+	 *            The local filename of the file to be uploaded.
+	 * @param remoteFilename
+	 *            The name of the file, including the full path, once uploaded.
+	 *            Note that the remote server uses Unix-style directory
+	 *            separators.
+	 * @param monitor
+	 *            An object implementing the SftpProgressMonitor interface.
+	 * @param resume
+	 *            Whether to continue a partial upload of the remote file.
+	 * @throws JSchException
+	 *             Thrown if problem connecting to SFTP server.
+	 * @throws SftpException
+	 *             Thrown if problem during SFTP transfer, or if the remote
+	 *             file does not have the expected size afterwards.
+	 */
+	public void putFile(SftpAction action, final String localFilename,
+			final String remoteFilename, final SftpProgressMonitor monitor,
+			final boolean resume) throws JSchException, SftpException {
 
 		log.info("Send " + action.getSftpUsername() + "@" + action.getHost()
 				+ ":" + remoteFilename);
 
-		initializeSftpSession(action.getHost(), action.getSftpUsername(),
-				action.getSftpPassword(), action.getPort(), action
-						.getFingerprints().getHash("RSA-MD5"));
+		executeSftp(action, new SftpOperation() {
+			@Override
+			public void execute(ChannelSftp channel) throws SftpException {
+				try {
+					int mode = ChannelSftp.OVERWRITE;
+					long localSize = new File(localFilename).length();
+					if (resume) {
+						long size = getRemoteSize(channel, remoteFilename);
+						if (size > 0
+								&& size <= localSize
+								&& isPartialCopy(channel, remoteFilename,
+										localFilename, size)) {
+							log.info("Resume upload of " + localFilename
+									+ " after " + size + " bytes.");
+							mode = ChannelSftp.RESUME;
+						}
+					}
 
-		try {
-			channel.put(localFilename, remoteFilename, monitor);
-		} catch (SftpException exception) {
-			log.severe(String.format("Problem uploading %s to %s.",
-					localFilename, remoteFilename));
-			throw exception;
-		} finally {
-			disconnectSftpSession();
+					channel.put(localFilename, remoteFilename, monitor, mode);
+					if (resume) {
+						verifySize(remoteFilename, getRemoteSize(channel,
+								remoteFilename), localFilename, localSize);
+					}
+				} catch (SftpException exception) {
+					log.severe(String.format("Problem uploading %s to %s.",
+							localFilename, remoteFilename));
+					throw exception;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Transfer the contents of a stream to a file of the SFTP drop, without
+	 * creating a local file. Connects its own SFTP session (or uses the SFTP
+	 * session pool) so it should work transparently.
+	 * 
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 * @param input
+	 *            The contents to be uploaded, which are read until the end of
+	 *            the stream. It is not closed.
+	 * @param remoteFilename
+	 *            The name of the file, including the full path, once uploaded.
+	 *            Note that the remote server uses Unix-style directory
+	 *            separators.
+	 * @param monitor
+	 *            An object implementing the SftpProgressMonitor interface. The
+	 *            size is not known in advance, so it is initialized with
+	 *            SftpProgressMonitor.UNKNOWN_SIZE.
+	 * @throws JSchException
+	 *             Thrown if problem connecting to SFTP server.
+	 * @throws SftpException
+	 *             Thrown if problem during SFTP transfer, including problems
+	 *             reading the stream.
+	 */
+	public void putFile(SftpAction action, final InputStream input,
+			final String remoteFilename, final SftpProgressMonitor monitor)
+			throws JSchException, SftpException {
+
+		log.info("Send stream to " + action.getSftpUsername() + "@"
+				+ action.getHost() + ":" + remoteFilename);
+
+		executeSftp(action, new SftpOperation() {
+			@Override
+			public void execute(ChannelSftp channel) throws SftpException {
+				try {
+					channel.put(input, remoteFilename, monitor,
+							ChannelSftp.OVERWRITE);
+				} catch (SftpException exception) {
+					log.severe("Problem uploading stream to " + remoteFilename);
+					throw exception;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Transfer contents generated by a producer to a file of the SFTP drop,
+	 * without creating a local file. The producer writes to the remote file
+	 * through a buffer of {@value #UPLOAD_BUFFER_SIZE} bytes, so memory use
+	 * does not depend on the size of the file. Connects its own SFTP session
+	 * (or uses the SFTP session pool) so it should work transparently.
+	 * 
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 * @param producer
+	 *            Writes the contents to be uploaded.
+	 * @param remoteFilename
+	 *            The name of the file, including the full path, once uploaded.
+	 *            Note that the remote server uses Unix-style directory
+	 *            separators.
+	 * @param monitor
+	 *            An object implementing the SftpProgressMonitor interface. The
+	 *            size is not known in advance, so it is initialized with
+	 *            SftpProgressMonitor.UNKNOWN_SIZE.
+	 * @throws JSchException
+	 *             Thrown if problem connecting to SFTP server.
+	 * @throws SftpException
+	 *             Thrown if problem during SFTP transfer, including an
+	 *             IOException thrown by the producer.
+	 */
+	public void putFile(SftpAction action, final UploadProducer producer,
+			final String remoteFilename, final SftpProgressMonitor monitor)
+			throws JSchException, SftpException {
+
+		log.info("Send generated file to " + action.getSftpUsername() + "@"
+				+ action.getHost() + ":" + remoteFilename);
+
+		executeSftp(action, new SftpOperation() {
+			@Override
+			public void execute(ChannelSftp channel) throws SftpException {
+				if (monitor != null) {
+					monitor.init(SftpProgressMonitor.PUT, "-", remoteFilename,
+							SftpProgressMonitor.UNKNOWN_SIZE);
+				}
+
+				OutputStream remote = channel.put(remoteFilename, monitor,
+						ChannelSftp.OVERWRITE);
+				try {
+					OutputStream output = new BufferedOutputStream(
+							new UncloseableOutputStream(remote),
+							UPLOAD_BUFFER_SIZE);
+					producer.writeTo(output);
+					output.flush();
+					remote.close();
+				} catch (IOException exception) {
+					log.severe("Problem uploading generated file to "
+							+ remoteFilename);
+					try {
+						remote.close();
+					} catch (IOException closeException) {
+						// already failed
+					}
+					throw new SftpException(ChannelSftp.SSH_FX_FAILURE,
+							exception.toString(), exception);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Keeps a producer from closing the remote file, which is closed once the
+	 * producer has returned (and all data has been flushed).
+	 */
+	private static class UncloseableOutputStream extends FilterOutputStream {
+		UncloseableOutputStream(OutputStream output) {
+			super(output);
 		}
 
+		@Override
+		public void write(byte[] buffer, int offset, int length)
+				throws IOException {
+			out.write(buffer, offset, length);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
 	}
 
 	/**
-	 * Transfer a file from the SFTP drop. Calls initializeSftpSession() so it
-	 * should work transparently.
+	 * Transfer a file from the SFTP drop. Connects its own SFTP session (or
+	 * uses the SFTP session pool) so it should work transparently.
 	 * 
 	 * @param action
 	 *            An SFTP action that has valid response from PeakInvestigator
@@ -376,22 +805,372 @@ public class PeakInvestigatorSaaS
 	public void getFile(SftpAction action, String remoteFilename,
 			String localFilename, SftpProgressMonitor monitor)
 			throws JSchException, SftpException {
+		getFile(action, remoteFilename, localFilename, monitor, false);
+	}
+
+	/**
+	 * Transfer a file from the SFTP drop, optionally continuing a previous
+	 * transfer that did not complete.
+	 * 
+	 * <p>
+	 * When resuming, the transfer continues after the last byte of the local
+	 * file, provided that the end of the local file matches the remote file
+	 * (the first and last {@value #RESUME_CHECK_SIZE} bytes are compared).
+	 * Otherwise, the local file is replaced. In both cases, the size of the
+	 * local file is checked once the transfer has completed.
+	 * </p>
+	 * 
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 * @param remoteFilename
+	 *            The name of the file, including the full path, once uploaded.
+	 *            Note that the remote server uses Unix-style directory
+	 *            separators.
+	 * @param localFilename
+	 *            The local filename of the file to be uploaded.
+	 * @param monitor
+	 *            An object implementing the SftpProgressMonitor interface.
+	 * @param resume
+	 *            Whether to continue a partial download of the local file.
+	 * @throws JSchException
+	 *             Thrown if problem connecting to SFTP server.
+	 * @throws SftpException
+	 *             Thrown if problem during SFTP transfer, or if the local file
+	 *             does not have the expected size afterwards.
+	 */
+	public void getFile(SftpAction action, final String remoteFilename,
+			final String localFilename, final SftpProgressMonitor monitor,
+			final boolean resume) throws JSchException, SftpException {
 
 		log.info("Retrieve " + action.getSftpUsername() + "@"
 				+ action.getHost() + ":" + remoteFilename);
 
-		initializeSftpSession(action.getHost(), action.getSftpUsername(),
-				action.getSftpPassword(), action.getPort(), action
-						.getFingerprints().getHash("RSA-MD5"));
+		executeSftp(action, new SftpOperation() {
+			@Override
+			public void execute(ChannelSftp channel) throws SftpException {
+				try {
+					int mode = ChannelSftp.OVERWRITE;
+					long remoteSize = -1;
+					if (resume) {
+						long size = new File(localFilename).length();
+						remoteSize = getRemoteSize(channel, remoteFilename);
+						if (size > 0
+								&& size <= remoteSize
+								&& isPartialCopy(channel, remoteFilename,
+										localFilename, size)) {
+							log.info("Resume download of " + remoteFilename
+									+ " after " + size + " bytes.");
+							mode = ChannelSftp.RESUME;
+						}
+					}
+
+					channel.get(remoteFilename, localFilename, monitor, mode);
+					if (resume) {
+						verifySize(remoteFilename, remoteSize, localFilename,
+								new File(localFilename).length());
+					}
+				} catch (SftpException exception) {
+					log.severe(String.format("Problem downloading %s to %s.",
+							remoteFilename, localFilename));
+					throw exception;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Transfer several files to the SFTP drop in parallel, keeping their
+	 * names. See {@link SftpTransferManager} for more options, such as
+	 * splitting large files into ranges.
+	 * 
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 * @param localFilenames
+	 *            The local filenames of the files to be uploaded to the
+	 *            directory of the SFTP action.
+	 * @param monitor
+	 *            An object implementing the SftpProgressMonitor interface,
+	 *            which is notified of the progress of all files together.
+	 * @throws JSchException
+	 *             Thrown if problem connecting to SFTP server.
+	 * @throws SftpException
+	 *             Thrown if problem during SFTP transfer.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the transfers.
+	 */
+	public void putFiles(SftpAction action, List<String> localFilenames,
+			SftpProgressMonitor monitor) throws JSchException, SftpException,
+			InterruptedException {
+
+		log.info("Send " + localFilenames.size() + " files to "
+				+ action.getSftpUsername() + "@" + action.getHost() + ":"
+				+ action.getDirectory());
+
+		new SftpTransferManager(this, action).putFiles(localFilenames, monitor);
+	}
 
+	/**
+	 * Open a mass list archive (see {@link StatusAction#getResultsFilename()})
+	 * of the SFTP drop for reading, without downloading it to a local file
+	 * first. Connects its own SFTP session (or uses the SFTP session pool),
+	 * which is released when the reader is closed.
+	 * 
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 * @param remoteFilename
+	 *            The name of the archive, including the full path.
+	 * @return A reader of the centroids of the archive, which must be closed.
+	 * @throws JSchException
+	 *             Thrown if problem connecting to SFTP server.
+	 * @throws SftpException
+	 *             Thrown if problem opening the archive.
+	 */
+	public MassListReader openMassList(SftpAction action, String remoteFilename)
+			throws JSchException, SftpException {
+
+		log.info("Read " + action.getSftpUsername() + "@" + action.getHost()
+				+ ":" + remoteFilename);
+
+		final SftpSessionPool pool = sftpSessionPool;
+		final ChannelSftp channel = openSftpChannel(pool, action);
 		try {
-			channel.get(remoteFilename, localFilename, monitor);
+			InputStream input = channel.get(remoteFilename);
+			return new MassListReader(new FilterInputStream(input) {
+				private boolean closed = false;
+				private boolean complete = false;
+				private boolean failed = false;
+
+				@Override
+				public int read() throws IOException {
+					try {
+						int b = super.read();
+						complete = b < 0;
+						return b;
+					} catch (IOException exception) {
+						failed = true;
+						throw exception;
+					}
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length)
+						throws IOException {
+					try {
+						int count = super.read(buffer, offset, length);
+						complete = count < 0;
+						return count;
+					} catch (IOException exception) {
+						failed = true;
+						throw exception;
+					}
+				}
+
+				/**
+				 * Release the channel, which is only reused if the archive
+				 * has been read completely (allowing for the padding after
+				 * its last entry).
+				 */
+				@Override
+				public void close() throws IOException {
+					if (closed) {
+						return;
+					}
+
+					closed = true;
+					boolean closeFailed = true;
+					try {
+						if (!failed && !complete) {
+							drain();
+						}
+						super.close();
+						closeFailed = false;
+					} finally {
+						releaseSftpChannel(pool, channel, failed || closeFailed
+								|| !complete);
+					}
+				}
+
+				private void drain() throws IOException {
+					byte[] buffer = new byte[8192];
+					long remaining = MASS_LIST_DRAIN_LIMIT;
+					while (remaining > 0 && !complete) {
+						int count = read(buffer, 0, (int) Math.min(
+								buffer.length, remaining));
+						remaining -= Math.max(count, 0);
+					}
+				}
+			});
+		} catch (SftpException | RuntimeException exception) {
+			log.severe("Problem opening " + remoteFilename);
+			releaseSftpChannel(pool, channel, true);
+			throw exception;
+		}
+	}
+
+	/**
+	 * @return The size of a remote file, or -1 if it does not exist.
+	 */
+	private static long getRemoteSize(ChannelSftp channel, String remoteFilename)
+			throws SftpException {
+		try {
+			return channel.stat(remoteFilename).getSize();
 		} catch (SftpException exception) {
-			log.severe(String.format("Problem downloading %s to %s.",
-					remoteFilename, localFilename));
+			if (exception.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+				return -1;
+			}
 			throw exception;
+		}
+	}
+
+	/**
+	 * Determine whether the first bytes of the remote and local files are the
+	 * same, i.e. whether one is a partial copy of the other, by comparing the
+	 * first and the last {@value #RESUME_CHECK_SIZE} bytes before the given
+	 * length. Comparing the start as well finds a stale copy of a previous
+	 * version of the file, whose last bytes may well be the same.
+	 * 
+	 * @param length
+	 *            The length of the partial copy, which both files have at
+	 *            least.
+	 */
+	private boolean isPartialCopy(ChannelSftp channel, String remoteFilename,
+			String localFilename, long length) throws SftpException {
+
+		int head = (int) Math.min(length, RESUME_CHECK_SIZE);
+		long tail = Math.max(head, length - RESUME_CHECK_SIZE);
+		if (!isSameRange(channel, remoteFilename, localFilename, 0, head)
+				|| !isSameRange(channel, remoteFilename, localFilename, tail,
+						(int) (length - tail))) {
+			log.warning(String.format(
+					"%s and %s differ, so transfer is restarted.",
+					localFilename, remoteFilename));
+			return false;
+		}
+
+		return true;
+	}
+
+	private boolean isSameRange(ChannelSftp channel, String remoteFilename,
+			String localFilename, long start, int length) throws SftpException {
+
+		if (length == 0) {
+			return true;
+		}
+
+		byte[] local = new byte[length];
+		byte[] remote = new byte[length];
+
+		try (RandomAccessFile input = new RandomAccessFile(localFilename, "r")) {
+			input.seek(start);
+			input.readFully(local);
+		} catch (IOException exception) {
+			log.warning("Unable to read " + localFilename + ": "
+					+ exception.getMessage());
+			return false;
+		}
+
+		try (DataInputStream input = new DataInputStream(channel.get(
+				remoteFilename, null, start))) {
+			input.readFully(remote);
+		} catch (IOException exception) {
+			log.warning("Unable to read " + remoteFilename + ": "
+					+ exception.getMessage());
+			return false;
+		}
+
+		return Arrays.equals(local, remote);
+	}
+
+	private static void verifySize(String remoteFilename, long remoteSize,
+			String localFilename, long localSize) throws SftpException {
+		if (remoteSize != localSize) {
+			throw new SftpException(ChannelSftp.SSH_FX_FAILURE, String.format(
+					"Size of %s (%d bytes) differs from %s (%d bytes).",
+					remoteFilename, remoteSize, localFilename, localSize));
+		}
+	}
+
+	/**
+	 * An operation (e.g. a transfer) executed with a connected SFTP channel.
+	 */
+	private interface SftpOperation {
+		public void execute(ChannelSftp channel) throws SftpException;
+	}
+
+	/**
+	 * Utility function to execute an operation with a SFTP channel to the
+	 * server of the given SFTP action. The channel is borrowed from the SFTP
+	 * session pool if one has been set, or else a new session is connected
+	 * for this operation only and disconnected afterwards.
+	 */
+	private void executeSftp(SftpAction action, SftpOperation operation)
+			throws JSchException, SftpException {
+
+		SftpSessionPool pool = sftpSessionPool;
+		ChannelSftp channel = openSftpChannel(pool, action);
+		boolean failed = true;
+		try {
+			operation.execute(channel);
+			failed = false;
 		} finally {
-			disconnectSftpSession();
+			releaseSftpChannel(pool, channel, failed);
+		}
+	}
+
+	/**
+	 * Utility function to obtain a SFTP channel to the server of the given SFTP
+	 * action, which must be released with releaseSftpChannel(). The channel is
+	 * borrowed from the given SFTP session pool, or else (if it is null) a new
+	 * session is connected for this channel only.
+	 */
+	private ChannelSftp openSftpChannel(SftpSessionPool pool,
+			SftpAction action) throws JSchException {
+
+		if (pool != null) {
+			return pool.borrowChannel(action);
+		}
+
+		log.info("Starting SFTP connection to " + action.getHost());
+
+		Session session = openSession(jsch, action.getHost(),
+				action.getSftpUsername(), action.getSftpPassword(),
+				action.getPort(), action.getFingerprints().getHash("RSA-MD5"),
+				timeout);
+
+		try {
+			ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+			channel.connect(timeout);
+			return channel;
+		} catch (JSchException exception) {
+			session.disconnect();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Release a channel obtained with openSftpChannel() and the same pool. A
+	 * channel whose operation failed (or was cancelled) is in an unknown
+	 * state, so it is not returned to the pool for reuse.
+	 */
+	private void releaseSftpChannel(SftpSessionPool pool, ChannelSftp channel,
+			boolean failed) {
+		if (pool != null) {
+			if (failed) {
+				pool.invalidateChannel(channel);
+			} else {
+				pool.returnChannel(channel);
+			}
+			return;
+		}
+
+		channel.disconnect();
+		try {
+			channel.getSession().disconnect();
+		} catch (JSchException exception) {
+			// channel was not connected to a session
 		}
 	}
 
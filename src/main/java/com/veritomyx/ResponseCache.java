@@ -0,0 +1,276 @@
+package com.veritomyx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.veritomyx.actions.Action;
+import com.veritomyx.actions.BaseAction;
+import com.veritomyx.actions.DeleteAction;
+import com.veritomyx.actions.InitAction;
+import com.veritomyx.actions.PiVersionsAction;
+import com.veritomyx.actions.RunAction;
+import com.veritomyx.actions.SftpAction;
+
+/**
+ * Keeps the responses of actions whose results rarely change (by default
+ * {@link PiVersionsAction} and {@link SftpAction}), so that workflows asking
+ * for them again do not make another API call. It is used by
+ * {@link PeakInvestigatorSaaS#executeAndProcess(Action)} (and the
+ * asynchronous calls) when set with
+ * {@link PeakInvestigatorSaaS#withResponseCache(ResponseCache)}.
+ *
+ * <p>
+ * Responses are kept by server, type of action and query (i.e. credentials
+ * and parameters), for the time to live of their type. Once the maximum number of
+ * responses is reached, the least recently used one is evicted. Error
+ * responses are not kept. Actions that modify jobs ({@link InitAction},
+ * {@link RunAction} and {@link DeleteAction}) are never cached.
+ * </p>
+ *
+ * <p>
+ * A cache is safe to share between threads and between PeakInvestigatorSaaS
+ * objects, including objects using different servers (e.g. staging and
+ * production).
+ * </p>
+ */
+public class ResponseCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 100;
+	public static final long DEFAULT_PI_VERSIONS_TTL = 60 * 60 * 1000; // milliseconds
+	public static final long DEFAULT_SFTP_TTL = 15 * 60 * 1000; // milliseconds
+
+	private static final Class<?>[] MUTATING_ACTIONS = { InitAction.class,
+			RunAction.class, DeleteAction.class };
+
+	private final int maxEntries;
+	private final Map<Class<?>, Long> timesToLive = new HashMap<>();
+	private final LinkedHashMap<String, CachedResponse> entries;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public ResponseCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            The maximum number of responses kept.
+	 */
+	public ResponseCache(final int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException(
+					"Maximum number of entries must be positive.");
+		}
+
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f,
+				true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, CachedResponse> eldest) {
+				if (size() > ResponseCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+
+				return false;
+			}
+		};
+
+		timesToLive.put(PiVersionsAction.class, DEFAULT_PI_VERSIONS_TTL);
+		timesToLive.put(SftpAction.class, DEFAULT_SFTP_TTL);
+	}
+
+	/**
+	 * Used to set how long the responses of a type of action are kept using a
+	 * Fluent-style API.
+	 *
+	 * @param type
+	 *            The type of action, e.g. {@link SftpAction}.
+	 * @param timeToLive
+	 *            How long responses are kept, or 0 to not cache the type.
+	 * @param unit
+	 *            The unit of the time to live.
+	 * @return This object after the time to live has been set.
+	 * @throws IllegalArgumentException
+	 *             If the type of action modifies jobs.
+	 */
+	public synchronized ResponseCache withTimeToLive(
+			Class<? extends Action> type, long timeToLive, TimeUnit unit) {
+		if (isMutating(type)) {
+			throw new IllegalArgumentException(type.getSimpleName()
+					+ " can not be cached.");
+		}
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException(
+					"Time to live can not be negative.");
+		}
+
+		if (timeToLive == 0) {
+			timesToLive.remove(type);
+			invalidate(type);
+		} else {
+			timesToLive.put(type, unit.toMillis(timeToLive));
+		}
+
+		return this;
+	}
+
+	/**
+	 * @return Whether responses to the action are cached.
+	 */
+	public synchronized boolean isCacheable(Action action) {
+		return timesToLive.containsKey(action.getClass());
+	}
+
+	/**
+	 * Get the response to a previous call of an equivalent action (i.e. of the
+	 * same type, with the same query) to a server, if it has not expired.
+	 *
+	 * @param server
+	 *            The host name (or address) of the server called.
+	 * @return The response, or null.
+	 */
+	public synchronized String get(String server, Action action) {
+		if (!isCacheable(action)) {
+			return null;
+		}
+
+		String key = getKey(server, action);
+		CachedResponse cached = entries.get(key);
+		if (cached != null && cached.expires - currentTime() <= 0) {
+			entries.remove(key);
+			cached = null;
+		}
+
+		if (cached == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return cached.response;
+	}
+
+	/**
+	 * Keep the response of an action to a server, which must have been
+	 * processed by it. Responses of actions that are not cached, and error
+	 * responses, are ignored.
+	 *
+	 * @param server
+	 *            The host name (or address) of the server called.
+	 */
+	public synchronized void put(String server, Action action, String response) {
+		if (!isCacheable(action)) {
+			return;
+		}
+		if (action instanceof BaseAction && ((BaseAction) action).hasError()) {
+			return;
+		}
+
+		long timeToLive = timesToLive.get(action.getClass());
+		entries.put(getKey(server, action), new CachedResponse(response,
+				currentTime() + timeToLive));
+	}
+
+	/**
+	 * Remove the response of an action to a server (e.g. after the SFTP
+	 * credentials it returned stopped working).
+	 *
+	 * @param server
+	 *            The host name (or address) of the server called.
+	 */
+	public synchronized void invalidate(String server, Action action) {
+		entries.remove(getKey(server, action));
+	}
+
+	/**
+	 * Remove the responses of every action of a type.
+	 */
+	public synchronized void invalidate(Class<? extends Action> type) {
+		String prefix = type.getName() + "\n";
+		Iterator<String> keys = entries.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().startsWith(prefix)) {
+				keys.remove();
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		entries.clear();
+	}
+
+	/**
+	 * @return The number of responses kept, including expired ones that have
+	 *         not been requested since.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of responses removed to stay within the maximum
+	 *         number of entries.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @return The fraction of requests for cached actions that were found, or
+	 *         0 if there has not been any.
+	 */
+	public synchronized double getHitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/**
+	 * @return The current time in milliseconds, which only has to be
+	 *         monotonic.
+	 */
+	long currentTime() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	private static String getKey(String server, Action action) {
+		return action.getClass().getName() + "\n" + server + "\n"
+				+ action.buildQuery();
+	}
+
+	private static boolean isMutating(Class<?> type) {
+		for (Class<?> mutating : MUTATING_ACTIONS) {
+			if (mutating.isAssignableFrom(type)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static class CachedResponse {
+		private final String response;
+		private final long expires;
+
+		CachedResponse(String response, long expires) {
+			this.response = response;
+			this.expires = expires;
+		}
+	}
+}
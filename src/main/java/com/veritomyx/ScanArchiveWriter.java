@@ -0,0 +1,203 @@
+package com.veritomyx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.xeustechnologies.jtar.TarConstants;
+import org.xeustechnologies.jtar.TarEntry;
+import org.xeustechnologies.jtar.TarHeader;
+import org.xeustechnologies.jtar.TarOutputStream;
+
+/**
+ * Used for writing scans into a tar archive (e.g. the file referenced by
+ * {@link com.veritomyx.actions.PrepAction} and
+ * {@link com.veritomyx.actions.RunAction}), with a file per scan in the format
+ * written by {@link ScanFileWriter}. Files are formatted in memory, as the size
+ * of each file is written before its contents, and nothing is written to
+ * disk except the archive.
+ *
+ * <p>
+ * The values needed by {@link com.veritomyx.actions.InitAction} (number of
+ * scans, maximum number of points and mass range) are computed as the scans
+ * are written (see {@link #getStatistics()}). The archive can also be written
+ * while it is being uploaded, for example:
+ * </p>
+ *
+ * <pre>
+ * webService.putFile(sftpAction, new UploadProducer() {
+ * 	public void writeTo(OutputStream output) throws IOException {
+ * 		try (ScanArchiveWriter writer = new ScanArchiveWriter(output)) {
+ * 			for (Scan scan : scans) {
+ * 				writer.writeScan(scan.getName(), scan.getMz(), scan.getIntensity());
+ * 			}
+ * 		}
+ * 	}
+ * }, remoteFilename, monitor);
+ * </pre>
+ */
+public class ScanArchiveWriter implements Closeable {
+
+	private static final int INITIAL_ENTRY_SIZE = 65536;
+	private static final int FORMAT_BUFFER_SIZE = 8192;
+	private static final int FILE_MODE = 0100644; // regular file, rw-r--r--
+
+	private final TarOutputStream tarOutputStream;
+	private final EntryBuffer entry = new EntryBuffer();
+
+	private final ScanStatistics statistics;
+
+	public ScanArchiveWriter(Path path) throws IOException {
+		this(Files.newOutputStream(path));
+	}
+
+	/**
+	 * @param output
+	 *            Receives the archive, and is closed by {@link #close()}.
+	 */
+	public ScanArchiveWriter(OutputStream output) {
+		this(output, new ScanStatistics());
+	}
+
+	/**
+	 * @param output
+	 *            Receives the archive, and is closed by {@link #close()}.
+	 * @param statistics
+	 *            Receives the scans (e.g. shared by several archives).
+	 */
+	public ScanArchiveWriter(OutputStream output, ScanStatistics statistics) {
+		tarOutputStream = new TarOutputStream(output);
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Write a scan as a file of the archive.
+	 *
+	 * @param name
+	 *            The name of the file in the archive (e.g. "scan1.txt").
+	 * @param mz
+	 *            The m/z of each centroid.
+	 * @param intensity
+	 *            The intensity of each centroid.
+	 * @throws IOException
+	 *             If there is a problem writing to the archive
+	 */
+	public void writeScan(String name, double[] mz, double[] intensity)
+			throws IOException {
+		entry.reset();
+		ScanFileWriter writer = new ScanFileWriter(entry, FORMAT_BUFFER_SIZE,
+				statistics);
+		writer.writeScan(mz, intensity);
+		writer.close();
+
+		putEntry(name);
+	}
+
+	/**
+	 * Write a scan as a file of the archive, from the centroids between the
+	 * position and limit of the buffers, which are consumed.
+	 *
+	 * @param name
+	 *            The name of the file in the archive (e.g. "scan1.txt").
+	 * @param mz
+	 *            The m/z of each centroid.
+	 * @param intensity
+	 *            The intensity of each centroid.
+	 * @throws IOException
+	 *             If there is a problem writing to the archive
+	 */
+	public void writeScan(String name, DoubleBuffer mz, DoubleBuffer intensity)
+			throws IOException {
+		entry.reset();
+		ScanFileWriter writer = new ScanFileWriter(entry, FORMAT_BUFFER_SIZE,
+				statistics);
+		writer.writeScan(mz, intensity);
+		writer.close();
+
+		putEntry(name);
+	}
+
+	/**
+	 * @return The statistics of the scans written so far.
+	 */
+	public ScanStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return The number of scans written so far.
+	 */
+	public int getScanCount() {
+		return statistics.getScanCount();
+	}
+
+	/**
+	 * @return The largest number of centroids of a scan written so far.
+	 */
+	public int getMaxPoints() {
+		return statistics.getMaxPoints();
+	}
+
+	/**
+	 * @return The smallest m/z written so far (rounded down), or 0 if none.
+	 */
+	public int getMinMass() {
+		return statistics.getMinMass();
+	}
+
+	/**
+	 * @return The largest m/z written so far (rounded up), or 0 if none.
+	 */
+	public int getMaxMass() {
+		return statistics.getMaxMass();
+	}
+
+	/**
+	 * Finish the archive, and close the stream it is written to.
+	 */
+	@Override
+	public void close() throws IOException {
+		tarOutputStream.close();
+	}
+
+	private void putEntry(String name) throws IOException {
+		tarOutputStream.putNextEntry(new FileEntry(name, entry.size()));
+		entry.writeTo(tarOutputStream);
+	}
+
+	/**
+	 * The entry of a regular file, whose header is built from its name and
+	 * size only. TarEntry(File, String) looks the name up relative to the
+	 * working directory, and makes a directory entry if one exists there.
+	 */
+	private static class FileEntry extends TarEntry {
+		FileEntry(String name, long size) {
+			super(new byte[TarConstants.HEADER_BLOCK]);
+
+			header = new TarHeader();
+			header.name = new StringBuffer(name);
+			header.mode = FILE_MODE;
+			header.linkFlag = TarHeader.LF_NORMAL;
+			header.size = size;
+			header.modTime = System.currentTimeMillis() / 1000;
+		}
+	}
+
+	/**
+	 * Holds the contents of a file until it is added to the archive; it is
+	 * reused for every file, and closing it does nothing.
+	 */
+	private static class EntryBuffer extends ByteArrayOutputStream {
+		EntryBuffer() {
+			super(INITIAL_ENTRY_SIZE);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,434 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.veritomyx.ChecksumFileReader.MissingChecksum;
+
+/**
+ * Reads scans (m/z and intensity pairs) from files with checksum, such as
+ * those written by {@link ScanFileWriter}, into primitive doubles. Lines are
+ * parsed directly from the bytes read, without creating Strings, and the
+ * checksum is computed as done by {@link ChecksumFileReader}. Lines starting
+ * with '#' and blank lines are skipped (but are part of the checksum).
+ *
+ * <p>
+ * Centroids can be read one at a time:
+ * </p>
+ *
+ * <pre>
+ * try (ScanFileReader reader = new ScanFileReader(path)) {
+ * 	while (reader.next()) {
+ * 		process(reader.getMz(), reader.getIntensity());
+ * 	}
+ * 	if (!reader.isChecksumValid()) {
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * or all at once with {@link #readScan()}.
+ * </p>
+ */
+public class ScanFileReader implements AutoCloseable {
+
+	private final static Logger LOGGER = LoggerFactory
+			.getLogger(ScanFileReader.class);
+	private final static int BUFFER_SIZE = 65536;
+	private final static int INITIAL_CAPACITY = 1024;
+	private final static byte[] PREFIX_BYTES = Checksum.PREFIX.getBytes();
+
+	/** The largest significand that is exactly representable as a double. */
+	private final static long MAX_EXACT = 1L << 53;
+	private final static int MAX_EXACT_POWER = 22;
+	private final static double[] POWERS = new double[MAX_EXACT_POWER + 1];
+
+	static {
+		POWERS[0] = 1;
+		for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+			POWERS[i] = POWERS[i - 1] * 10;
+		}
+	}
+
+	private final String name;
+	private final InputStream input;
+	private final Checksum fileChecksum = new Checksum();
+	private String hashFromFile;
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	private boolean endOfInput = false;
+	private boolean skipLF = false;
+
+	private double mz;
+	private double intensity;
+
+	public ScanFileReader(Path path) throws IOException {
+		this(Files.newInputStream(path), path.toString());
+	}
+
+	/**
+	 * Read from a stream (e.g. an entry of a tar archive), which is closed by
+	 * {@link #close()}.
+	 *
+	 * @param input
+	 *            The contents of the file.
+	 * @param name
+	 *            The name of the file, used in messages.
+	 */
+	public ScanFileReader(InputStream input, String name) {
+		this.input = input;
+		this.name = name;
+	}
+
+	/**
+	 * Move to the next centroid, which is then available from
+	 * {@link #getMz()} and {@link #getIntensity()}.
+	 *
+	 * @return False if the end of the file has been reached.
+	 * @throws IOException
+	 *             If there is a problem reading the file, or a line can not
+	 *             be parsed.
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			int end = nextLine();
+			if (end < 0) {
+				return false;
+			}
+
+			int start = position;
+			position = end < limit ? end + 1 : end;
+			if (processLine(start, end)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return The m/z of the current centroid.
+	 */
+	public double getMz() {
+		return mz;
+	}
+
+	/**
+	 * @return The intensity of the current centroid.
+	 */
+	public double getIntensity() {
+		return intensity;
+	}
+
+	/**
+	 * Read the remaining centroids of the file.
+	 *
+	 * @return The centroids, in order.
+	 * @throws IOException
+	 *             If there is a problem reading the file, or a line can not
+	 *             be parsed.
+	 */
+	public Scan readScan() throws IOException {
+		double[] mzs = new double[INITIAL_CAPACITY];
+		double[] intensities = new double[INITIAL_CAPACITY];
+		int size = 0;
+
+		while (next()) {
+			if (size == mzs.length) {
+				mzs = Arrays.copyOf(mzs, 2 * size);
+				intensities = Arrays.copyOf(intensities, 2 * size);
+			}
+			mzs[size] = mz;
+			intensities[size] = intensity;
+			size++;
+		}
+
+		return new Scan(Arrays.copyOf(mzs, size), Arrays.copyOf(intensities,
+				size));
+	}
+
+	/**
+	 * Read to the end of the file (to get the checksum), and close it.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			while (next()) {
+
+			}
+		} finally {
+			input.close();
+		}
+
+		if (fileChecksum.getChecksum().equals(hashFromFile)) {
+			LOGGER.info(name + " checksum OK");
+		} else if (hashFromFile == null) {
+			LOGGER.warn(name + " missing checksum");
+		} else {
+			LOGGER.warn(name + " checksum mismatch");
+		}
+	}
+
+	public boolean hasChecksum() {
+		return hashFromFile != null;
+	}
+
+	/**
+	 * @return Whether the checksum of the lines read so far matches the
+	 *         checksum line, which is known once the end of the file has been
+	 *         reached (e.g. after {@link #readScan()} or {@link #close()}).
+	 * @throws MissingChecksum
+	 *             If the checksum line has not been read.
+	 */
+	public boolean isChecksumValid() throws MissingChecksum {
+		if (!hasChecksum()) {
+			throw new MissingChecksum(name + " does not have a checksum");
+		}
+
+		return fileChecksum.getChecksum().equals(hashFromFile);
+	}
+
+	/**
+	 * Find the end of the line starting at the position, reading more of the
+	 * file as needed. Lines are separated as done by
+	 * {@link java.io.BufferedReader#readLine()}.
+	 *
+	 * @return The end of the line (i.e. the index of its separator), or -1 at
+	 *         the end of the file.
+	 */
+	private int nextLine() throws IOException {
+		int i = position;
+		while (true) {
+			for (; i < limit; i++) {
+				byte b = buffer[i];
+				if (skipLF) {
+					skipLF = false;
+					if (b == '\n') {
+						position = i + 1;
+						continue;
+					}
+				}
+
+				if (b == '\n' || b == '\r') {
+					skipLF = b == '\r';
+					return i;
+				}
+			}
+
+			if (endOfInput) {
+				return position < limit ? limit : -1;
+			}
+
+			i -= position;
+			fill();
+		}
+	}
+
+	/**
+	 * Move the current line to the start of the buffer (growing it if the line
+	 * fills it), and read more of the file after it.
+	 */
+	private void fill() throws IOException {
+		int length = limit - position;
+		if (position == 0 && length == buffer.length) {
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		} else {
+			System.arraycopy(buffer, position, buffer, 0, length);
+		}
+		position = 0;
+		limit = length;
+
+		int count = input.read(buffer, limit, buffer.length - limit);
+		if (count < 0) {
+			endOfInput = true;
+		} else {
+			limit += count;
+		}
+	}
+
+	/**
+	 * Hash a line, and parse it unless it is blank or a comment. The position
+	 * has already been moved past the line, so the buffer is not modified.
+	 *
+	 * @return Whether the line contains a centroid.
+	 */
+	private boolean processLine(int start, int end) throws IOException {
+		if (isChecksumLine(start, end)) {
+			hashFromFile = new String(buffer, start + PREFIX_BYTES.length, end
+					- start - PREFIX_BYTES.length, StandardCharsets.US_ASCII);
+			return false;
+		}
+
+		fileChecksum.append(buffer, start, end - start);
+		if (start < end && buffer[start] == '#') {
+			return false;
+		}
+
+		int mzStart = skipWhitespace(start, end);
+		if (mzStart == end) {
+			return false;
+		}
+
+		int mzEnd = skipValue(mzStart, end);
+		int intensityStart = skipWhitespace(mzEnd, end);
+		int intensityEnd = skipValue(intensityStart, end);
+		if (intensityStart == intensityEnd) {
+			throw unexpectedLine(start, end, null);
+		}
+
+		try {
+			mz = parseDouble(buffer, mzStart, mzEnd);
+			intensity = parseDouble(buffer, intensityStart, intensityEnd);
+		} catch (NumberFormatException e) {
+			throw unexpectedLine(start, end, e);
+		}
+
+		return true;
+	}
+
+	private boolean isChecksumLine(int start, int end) {
+		if (end - start < PREFIX_BYTES.length) {
+			return false;
+		}
+
+		for (int i = 0; i < PREFIX_BYTES.length; i++) {
+			if (buffer[start + i] != PREFIX_BYTES[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int skipWhitespace(int i, int end) {
+		while (i < end && (buffer[i] & 0xff) <= ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private int skipValue(int i, int end) {
+		while (i < end && (buffer[i] & 0xff) > ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private IOException unexpectedLine(int start, int end,
+			NumberFormatException cause) {
+		return new IOException("Unexpected line in " + name + ": "
+				+ new String(buffer, start, end - start), cause);
+	}
+
+	/**
+	 * Parse a decimal number, such as "123.4567", "-1.5e-3" or "16". Numbers
+	 * with at most 15 significant digits and small exponents (i.e. those
+	 * written by {@link ScanFileWriter}) are computed by a single
+	 * multiplication or division of exactly representable doubles, which is
+	 * correctly rounded (Clinger's fast path); others are parsed by
+	 * {@link Double#parseDouble(String)}.
+	 *
+	 * @throws NumberFormatException
+	 *             If the bytes are not a number.
+	 */
+	static double parseDouble(byte[] bytes, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+
+		long significand = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		boolean exact = true;
+
+		for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+			anyDigits = true;
+			long next = 10 * significand + (bytes[i] - '0');
+			exact &= next < MAX_EXACT;
+			significand = exact ? next : significand;
+		}
+
+		if (i < end && bytes[i] == '.') {
+			i++;
+			for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+				anyDigits = true;
+				long next = 10 * significand + (bytes[i] - '0');
+				exact &= next < MAX_EXACT;
+				significand = exact ? next : significand;
+				exponent--;
+			}
+		}
+
+		if (anyDigits && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+				negativeExponent = bytes[i] == '-';
+				i++;
+			}
+
+			int value = 0;
+			int exponentStart = i;
+			for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'
+					&& value < 1000; i++) {
+				value = 10 * value + (bytes[i] - '0');
+			}
+			exact &= i > exponentStart;
+			exponent += negativeExponent ? -value : value;
+		}
+
+		if (!anyDigits || i != end || !exact
+				|| Math.abs(exponent) > MAX_EXACT_POWER) {
+			return Double.parseDouble(new String(bytes, start, end - start,
+					StandardCharsets.US_ASCII));
+		}
+
+		double value = significand;
+		if (exponent < 0) {
+			value /= POWERS[-exponent];
+		} else {
+			value *= POWERS[exponent];
+		}
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * The centroids of a scan, as arrays of m/z and intensity.
+	 */
+	public static class Scan {
+		private final double[] mz;
+		private final double[] intensity;
+
+		public Scan(double[] mz, double[] intensity) {
+			this.mz = mz;
+			this.intensity = intensity;
+		}
+
+		public double[] getMz() {
+			return mz;
+		}
+
+		public double[] getIntensity() {
+			return intensity;
+		}
+
+		/**
+		 * @return The number of centroids.
+		 */
+		public int size() {
+			return mz.length;
+		}
+	}
+}
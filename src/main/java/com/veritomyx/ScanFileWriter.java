@@ -0,0 +1,198 @@
+package com.veritomyx;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Used for writing scans (m/z and intensity pairs) to files with checksum,
+ * in the format written by {@link ChecksumFileWriter}: a line per centroid
+ * with its m/z and intensity separated by a tab, followed by the checksum
+ * line.
+ *
+ * <p>
+ * Values are formatted directly into a reusable byte buffer (see
+ * {@link DoubleFormatter}), which is hashed and written without creating
+ * Strings. Values are written with the fewest decimal places that parse back
+ * to the same double, which is usually what {@link Double#toString(double)}
+ * gives as well.
+ * </p>
+ *
+ * <p>
+ * If given {@link ScanStatistics}, the file is added to them as a scan when
+ * it is closed.
+ * </p>
+ */
+public class ScanFileWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator()
+			.getBytes();
+
+	private final OutputStream output;
+	private final Checksum fileChecksum = new Checksum();
+	private final byte[] line = new byte[2 * DoubleFormatter.MAX_LENGTH + 1];
+
+	private final ScanStatistics statistics;
+	private int points = 0;
+	private double minMz = Double.POSITIVE_INFINITY;
+	private double maxMz = Double.NEGATIVE_INFINITY;
+
+	public ScanFileWriter(Path path) throws IOException {
+		this(path, null);
+	}
+
+	/**
+	 * @param path
+	 *            The file to write.
+	 * @param statistics
+	 *            Receives the scan when the file is closed, or null.
+	 */
+	public ScanFileWriter(Path path, ScanStatistics statistics)
+			throws IOException {
+		this(Files.newOutputStream(path), statistics);
+	}
+
+	/**
+	 * Write to a stream (e.g. a file being uploaded with
+	 * {@link PeakInvestigatorSaaS#putFile(com.veritomyx.actions.SftpAction, UploadProducer, String, com.jcraft.jsch.SftpProgressMonitor)}
+	 * ), which is buffered and closed by {@link #close()}.
+	 */
+	public ScanFileWriter(OutputStream stream) {
+		this(stream, null);
+	}
+
+	/**
+	 * @param stream
+	 *            Receives the file, and is closed by {@link #close()}.
+	 * @param statistics
+	 *            Receives the scan when the file is closed, or null.
+	 */
+	public ScanFileWriter(OutputStream stream, ScanStatistics statistics) {
+		this(stream, BUFFER_SIZE, statistics);
+	}
+
+	/**
+	 * Write to a stream with a buffer of the given size (e.g. a small one for
+	 * a stream in memory).
+	 */
+	ScanFileWriter(OutputStream stream, int bufferSize,
+			ScanStatistics statistics) {
+		output = new BufferedOutputStream(stream, bufferSize);
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Write a single centroid.
+	 *
+	 * @param mz
+	 *            The m/z of the centroid.
+	 * @param intensity
+	 *            The intensity of the centroid.
+	 * @throws IOException
+	 *             If there is a problem writing to the file
+	 */
+	public void writeCentroid(double mz, double intensity) throws IOException {
+		int length = DoubleFormatter.format(mz, line, 0);
+		line[length++] = '\t';
+		length = DoubleFormatter.format(intensity, line, length);
+
+		fileChecksum.append(line, 0, length);
+		output.write(line, 0, length);
+		output.write(LINE_SEPARATOR);
+
+		points++;
+		minMz = Math.min(minMz, mz);
+		maxMz = Math.max(maxMz, mz);
+	}
+
+	/**
+	 * Write the centroids of a scan.
+	 *
+	 * @param mz
+	 *            The m/z of each centroid.
+	 * @param intensity
+	 *            The intensity of each centroid.
+	 * @throws IOException
+	 *             If there is a problem writing to the file
+	 */
+	public void writeScan(double[] mz, double[] intensity) throws IOException {
+		if (mz.length != intensity.length) {
+			throw new IllegalArgumentException(
+					"Number of m/z and intensity values differ.");
+		}
+
+		writeScan(mz, intensity, 0, mz.length);
+	}
+
+	/**
+	 * Write a range of the centroids of a scan.
+	 *
+	 * @param mz
+	 *            The m/z of each centroid.
+	 * @param intensity
+	 *            The intensity of each centroid.
+	 * @param offset
+	 *            The index of the first centroid to write.
+	 * @param length
+	 *            The number of centroids to write.
+	 * @throws IOException
+	 *             If there is a problem writing to the file
+	 */
+	public void writeScan(double[] mz, double[] intensity, int offset,
+			int length) throws IOException {
+		for (int i = offset; i < offset + length; i++) {
+			writeCentroid(mz[i], intensity[i]);
+		}
+	}
+
+	/**
+	 * Write the centroids between the position and limit of the buffers,
+	 * which are consumed.
+	 *
+	 * @param mz
+	 *            The m/z of each centroid.
+	 * @param intensity
+	 *            The intensity of each centroid.
+	 * @throws IOException
+	 *             If there is a problem writing to the file
+	 */
+	public void writeScan(DoubleBuffer mz, DoubleBuffer intensity)
+			throws IOException {
+		if (mz.remaining() != intensity.remaining()) {
+			throw new IllegalArgumentException(
+					"Number of m/z and intensity values differ.");
+		}
+
+		while (mz.hasRemaining()) {
+			writeCentroid(mz.get(), intensity.get());
+		}
+	}
+
+	/**
+	 * @return The checksum of the centroids written so far.
+	 */
+	public String getChecksum() {
+		return fileChecksum.getChecksum();
+	}
+
+	/**
+	 * Write the checksum line, and close the file (even if writing fails). The
+	 * scan is only added to the statistics once it has been written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try (OutputStream output = this.output) {
+			output.write(fileChecksum.getChecksumLine().getBytes());
+			output.write(LINE_SEPARATOR);
+		}
+
+		if (statistics != null) {
+			statistics.addScan(points, minMz, maxMz);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.veritomyx;
+
+import com.veritomyx.actions.InitAction;
+
+/**
+ * Collects the values needed by {@link InitAction} (number of scans, maximum
+ * number of points and mass range) while scans are written, so that the data
+ * does not have to be read again to initialize a job. For example:
+ *
+ * <pre>
+ * ScanStatistics statistics = new ScanStatistics();
+ * for (...) {
+ * 	try (ScanFileWriter writer = new ScanFileWriter(path, statistics)) {
+ * 		writer.writeScan(mz, intensity);
+ * 	}
+ * }
+ * InitAction action = statistics.configure(InitAction.create(user, code, clientKey));
+ * </pre>
+ *
+ * <p>
+ * Each {@link ScanFileWriter} adds its scan when it is closed, so scans can
+ * be written by several threads at once.
+ * </p>
+ */
+public class ScanStatistics {
+
+	private int scanCount = 0;
+	private int maxPoints = 0;
+	private double minMz = Double.POSITIVE_INFINITY;
+	private double maxMz = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Add a scan.
+	 *
+	 * @param points
+	 *            The number of centroids of the scan.
+	 * @param minMz
+	 *            The smallest m/z of the scan (ignored if there are no
+	 *            centroids).
+	 * @param maxMz
+	 *            The largest m/z of the scan (ignored if there are no
+	 *            centroids).
+	 */
+	public synchronized void addScan(int points, double minMz, double maxMz) {
+		scanCount++;
+		maxPoints = Math.max(maxPoints, points);
+		if (points > 0) {
+			this.minMz = Math.min(this.minMz, minMz);
+			this.maxMz = Math.max(this.maxMz, maxMz);
+		}
+	}
+
+	public synchronized int getScanCount() {
+		return scanCount;
+	}
+
+	/**
+	 * @return The largest number of centroids of a scan.
+	 */
+	public synchronized int getMaxPoints() {
+		return maxPoints;
+	}
+
+	/**
+	 * @return The smallest m/z (rounded down), or 0 if there are no
+	 *         centroids.
+	 */
+	public synchronized int getMinMass() {
+		return minMz > maxMz ? 0 : (int) Math.floor(minMz);
+	}
+
+	/**
+	 * @return The largest m/z (rounded up), or 0 if there are no centroids.
+	 */
+	public synchronized int getMaxMass() {
+		return minMz > maxMz ? 0 : (int) Math.ceil(maxMz);
+	}
+
+	/**
+	 * Set the number of scans, maximum number of points and mass range (for
+	 * both the data and the job) of an action, without calibration scans.
+	 *
+	 * @param action
+	 *            The action to configure.
+	 * @return A configured copy of the action.
+	 */
+	public InitAction configure(InitAction action) {
+		return configure(action, 0);
+	}
+
+	/**
+	 * Set the number of scans, maximum number of points and mass range (for
+	 * both the data and the job) of an action.
+	 *
+	 * @param action
+	 *            The action to configure.
+	 * @param calibrationCount
+	 *            The number of calibration scans.
+	 * @return A configured copy of the action.
+	 */
+	public synchronized InitAction configure(InitAction action,
+			int calibrationCount) {
+		int minMass = getMinMass();
+		int maxMass = getMaxMass();
+		return action.withScanCount(scanCount, calibrationCount)
+				.withNumberOfPoints(maxPoints)
+				.withMassRange(minMass, maxMass, minMass, maxMass);
+	}
+}
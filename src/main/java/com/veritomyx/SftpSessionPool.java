@@ -0,0 +1,413 @@
+package com.veritomyx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.veritomyx.actions.SftpAction;
+
+/**
+ * Keeps SSH sessions to SFTP servers open between transfers, so that uploading
+ * and downloading several files does not require a new SSH handshake for each
+ * one.
+ *
+ * <p>
+ * Sessions are keyed by host, port, login and expected fingerprint (as
+ * returned by the SFTP API call), and each session provides up to
+ * {@link #DEFAULT_MAX_CHANNELS_PER_SESSION} SFTP channels by default, which
+ * can be used concurrently. Channels are borrowed with
+ * {@link #borrowChannel(SftpAction)} and must be given back with
+ * {@link #returnChannel(ChannelSftp)}. Channels and sessions that are no
+ * longer connected are discarded, and sessions without borrowed channels are
+ * disconnected once they have been idle for longer than the idle timeout
+ * (checked by a background thread, and whenever channels are borrowed or
+ * returned).
+ * </p>
+ *
+ * <p>
+ * A pool is used by setting it with
+ * {@link PeakInvestigatorSaaS#withSftpSessionPool(SftpSessionPool)}, and
+ * should be closed with {@link #close()} once it is no longer needed.
+ * </p>
+ */
+public class SftpSessionPool {
+
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000; // milliseconds
+	public static final int DEFAULT_MAX_CHANNELS_PER_SESSION = 4;
+	public static final int DEFAULT_TIMEOUT = 10000; // milliseconds
+
+	/** The minimum interval between checks for idle sessions. */
+	static final long MIN_EVICTION_INTERVAL = 1000; // milliseconds
+
+	private final static Logger LOGGER = Logger.getLogger(SftpSessionPool.class
+			.getName());
+
+	private final JSch jsch = new JSch();
+	private final int timeout;
+	private final long idleTimeout;
+	private final int maxChannelsPerSession;
+
+	private final Map<String, List<PooledSession>> sessions = new HashMap<>();
+	private final Map<ChannelSftp, PooledSession> borrowed = new IdentityHashMap<>();
+	private final ScheduledExecutorService evictor;
+	private boolean closed = false;
+
+	public SftpSessionPool() {
+		this(DEFAULT_TIMEOUT, DEFAULT_IDLE_TIMEOUT,
+				DEFAULT_MAX_CHANNELS_PER_SESSION);
+	}
+
+	/**
+	 * @param timeout
+	 *            The timeout in milliseconds when connecting sessions and
+	 *            channels.
+	 * @param idleTimeout
+	 *            The time in milliseconds after which a session without
+	 *            borrowed channels is disconnected. Idle sessions are checked
+	 *            every half of it (but at most once a second).
+	 * @param maxChannelsPerSession
+	 *            The maximum number of SFTP channels opened on one session.
+	 *            Note that SSH servers also limit this number (OpenSSH allows
+	 *            10 by default).
+	 */
+	public SftpSessionPool(int timeout, long idleTimeout,
+			int maxChannelsPerSession) {
+		if (maxChannelsPerSession < 1) {
+			throw new IllegalArgumentException(
+					"At least one channel per session is required.");
+		}
+
+		this.timeout = timeout;
+		this.idleTimeout = idleTimeout;
+		this.maxChannelsPerSession = maxChannelsPerSession;
+
+		JSch.setConfig("StrictHostKeyChecking", "no");
+
+		long interval = Math.max(idleTimeout / 2, MIN_EVICTION_INTERVAL);
+		evictor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "SftpSessionPool");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictIdle();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrow a connected SFTP channel for the server of an SFTP action, opening
+	 * a new channel (and session) if none is available.
+	 *
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 * @return A connected channel, which must be given back with
+	 *         {@link #returnChannel(ChannelSftp)}.
+	 * @throws JSchException
+	 *             A JSchException is thrown if problem connecting to SFTP
+	 *             server.
+	 */
+	public ChannelSftp borrowChannel(SftpAction action) throws JSchException {
+		return borrowChannel(action.getHost(), action.getSftpUsername(),
+				action.getSftpPassword(), action.getPort(), action
+						.getFingerprints().getHash("RSA-MD5"));
+	}
+
+	/**
+	 * Borrow a connected SFTP channel, opening a new channel (and session) if
+	 * none is available.
+	 *
+	 * @param server
+	 *            The host name (or address) of the SFTP server.
+	 * @param username
+	 *            Self-explanatory.
+	 * @param password
+	 *            Self-explanatory.
+	 * @param port
+	 *            Self-explanatory.
+	 * @param fingerprint
+	 *            A MD5 fingerprint used to verify identity of host.
+	 * @return A connected channel, which must be given back with
+	 *         {@link #returnChannel(ChannelSftp)}.
+	 * @throws JSchException
+	 *             A JSchException is thrown if problem connecting to SFTP
+	 *             server.
+	 */
+	public ChannelSftp borrowChannel(String server, String username,
+			String password, int port, String fingerprint) throws JSchException {
+
+		// sessions were verified with the fingerprint they were opened with
+		String key = username + "@" + server + ":" + port + "/" + fingerprint;
+		PooledSession pooledSession = null;
+
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("Pool has been closed.");
+			}
+
+			for (PooledSession candidate : getSessions(key)) {
+				ChannelSftp channel = candidate.pollIdleChannel();
+				if (channel != null) {
+					borrowed.put(channel, candidate);
+					return channel;
+				}
+
+				if (pooledSession == null && candidate.session.isConnected()
+						&& candidate.channels < maxChannelsPerSession) {
+					pooledSession = candidate;
+				}
+			}
+
+			if (pooledSession != null) {
+				// reserve a channel while connecting
+				pooledSession.channels++;
+			}
+		}
+
+		if (pooledSession == null) {
+			LOGGER.info("Starting pooled SFTP connection to " + server);
+			Session session = PeakInvestigatorSaaS.openSession(jsch, server,
+					username, password, port, fingerprint, timeout);
+			pooledSession = new PooledSession(session);
+
+			synchronized (this) {
+				if (closed) {
+					session.disconnect();
+					throw new IllegalStateException("Pool has been closed.");
+				}
+				getSessions(key).add(pooledSession);
+			}
+		}
+
+		ChannelSftp channel;
+		try {
+			channel = (ChannelSftp) pooledSession.session.openChannel("sftp");
+			channel.connect(timeout);
+		} catch (JSchException exception) {
+			synchronized (this) {
+				pooledSession.channels--;
+			}
+			throw exception;
+		}
+
+		synchronized (this) {
+			borrowed.put(channel, pooledSession);
+		}
+
+		evictIdle();
+		return channel;
+	}
+
+	/**
+	 * Give back a channel obtained with {@link #borrowChannel(SftpAction)}.
+	 * The channel is kept open for the next transfer, unless it is no longer
+	 * connected or the pool has been closed.
+	 *
+	 * @param channel
+	 *            A borrowed channel.
+	 */
+	public void returnChannel(ChannelSftp channel) {
+		boolean disconnect;
+		synchronized (this) {
+			PooledSession pooledSession = borrowed.remove(channel);
+			if (pooledSession == null) {
+				disconnect = true;
+			} else if (closed
+					|| !PeakInvestigatorSaaS.isConnectedForSftp(
+							pooledSession.session, channel)) {
+				pooledSession.channels--;
+				disconnect = true;
+			} else {
+				pooledSession.idle.push(channel);
+				pooledSession.lastUsed = System.currentTimeMillis();
+				disconnect = false;
+			}
+		}
+
+		if (disconnect) {
+			channel.disconnect();
+		}
+
+		evictIdle();
+	}
+
+	/**
+	 * Give back a channel obtained with {@link #borrowChannel(SftpAction)}
+	 * that should not be used again (e.g. because of a failed transfer).
+	 *
+	 * @param channel
+	 *            A borrowed channel.
+	 */
+	public void invalidateChannel(ChannelSftp channel) {
+		synchronized (this) {
+			PooledSession pooledSession = borrowed.remove(channel);
+			if (pooledSession != null) {
+				pooledSession.channels--;
+				pooledSession.lastUsed = System.currentTimeMillis();
+			}
+		}
+
+		channel.disconnect();
+	}
+
+	/**
+	 * Disconnect sessions that are no longer connected, or have been idle for
+	 * longer than the idle timeout. This is done automatically in the
+	 * background, and when channels are borrowed or returned.
+	 */
+	public void evictIdle() {
+		List<PooledSession> evicted = new ArrayList<>();
+		long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			Iterator<List<PooledSession>> lists = sessions.values().iterator();
+			while (lists.hasNext()) {
+				List<PooledSession> list = lists.next();
+				Iterator<PooledSession> iterator = list.iterator();
+				while (iterator.hasNext()) {
+					PooledSession pooledSession = iterator.next();
+					pooledSession.removeDisconnectedChannels();
+
+					boolean unused = pooledSession.channels == pooledSession.idle
+							.size();
+					boolean expired = !pooledSession.session.isConnected()
+							|| now - pooledSession.lastUsed >= idleTimeout;
+					if (unused && expired) {
+						iterator.remove();
+						evicted.add(pooledSession);
+					}
+				}
+
+				if (list.isEmpty()) {
+					lists.remove();
+				}
+			}
+		}
+
+		for (PooledSession pooledSession : evicted) {
+			pooledSession.disconnect();
+		}
+	}
+
+	/**
+	 * Disconnect all sessions, and stop checking for idle ones. Channels that
+	 * are currently borrowed are disconnected when they are returned.
+	 */
+	public void close() {
+		evictor.shutdownNow();
+
+		List<PooledSession> evicted = new ArrayList<>();
+		synchronized (this) {
+			closed = true;
+			for (List<PooledSession> list : sessions.values()) {
+				evicted.addAll(list);
+			}
+			sessions.clear();
+		}
+
+		for (PooledSession pooledSession : evicted) {
+			pooledSession.disconnect();
+		}
+	}
+
+	/**
+	 * @return The number of sessions currently held by the pool.
+	 */
+	public synchronized int getSessionCount() {
+		int count = 0;
+		for (List<PooledSession> list : sessions.values()) {
+			count += list.size();
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return The number of channels kept open for the next transfer.
+	 */
+	synchronized int getIdleChannelCount() {
+		int count = 0;
+		for (List<PooledSession> list : sessions.values()) {
+			for (PooledSession pooledSession : list) {
+				count += pooledSession.idle.size();
+			}
+		}
+
+		return count;
+	}
+
+	private List<PooledSession> getSessions(String key) {
+		List<PooledSession> list = sessions.get(key);
+		if (list == null) {
+			list = new ArrayList<>();
+			sessions.put(key, list);
+		}
+
+		return list;
+	}
+
+	/**
+	 * A session with its idle channels. Guarded by the lock of the pool.
+	 */
+	private static class PooledSession {
+		final Session session;
+		final Deque<ChannelSftp> idle = new ArrayDeque<>();
+
+		/** Number of open channels (idle, borrowed or connecting). */
+		int channels = 1;
+		long lastUsed = System.currentTimeMillis();
+
+		PooledSession(Session session) {
+			this.session = session;
+		}
+
+		ChannelSftp pollIdleChannel() {
+			removeDisconnectedChannels();
+			return idle.poll();
+		}
+
+		void removeDisconnectedChannels() {
+			Iterator<ChannelSftp> iterator = idle.iterator();
+			while (iterator.hasNext()) {
+				ChannelSftp channel = iterator.next();
+				if (!PeakInvestigatorSaaS.isConnectedForSftp(session, channel)) {
+					iterator.remove();
+					channels--;
+					channel.disconnect();
+				}
+			}
+		}
+
+		void disconnect() {
+			for (ChannelSftp channel : idle) {
+				channel.disconnect();
+			}
+			idle.clear();
+
+			if (session.isConnected()) {
+				session.disconnect();
+			}
+		}
+	}
+}
@@ -0,0 +1,548 @@
+package com.veritomyx;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import com.veritomyx.actions.SftpAction;
+
+/**
+ * Uploads several files to the SFTP drop of an {@link SftpAction} in parallel,
+ * each over its own SFTP channel.
+ *
+ * <p>
+ * Files larger than the chunk size (if one has been set with
+ * {@link #withChunkSize(long)}) are split into ranges that are written
+ * concurrently at their offset in the remote file, so that a single large scan
+ * archive also benefits from several channels. The remote file is first
+ * extended to its final size, so its size says nothing about which ranges
+ * have been written; instead, once all transfers have completed, the first
+ * and last bytes of every range are read back and compared with the local
+ * file (and the size of files uploaded as a whole is checked).
+ * </p>
+ *
+ * <p>
+ * Channels are borrowed from the SFTP session pool of the
+ * {@link PeakInvestigatorSaaS} object if it has one, or else from a pool that
+ * is used for one call of {@link #putFiles(List, SftpProgressMonitor)} only.
+ * Progress of all transfers is reported to a single
+ * {@link SftpProgressMonitor}: init() is called once with the total number of
+ * bytes, count() as bytes are written by any of the channels (from several
+ * threads, but never concurrently), and end() once all transfers have
+ * completed. As with a single transfer, returning false from count() cancels
+ * the remaining transfers.
+ * </p>
+ */
+public class SftpTransferManager {
+
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final int BUFFER_SIZE = 32768;
+	public static final int BOUNDARY_CHECK_SIZE = 4096; // bytes
+
+	private final static Logger LOGGER = Logger
+			.getLogger(SftpTransferManager.class.getName());
+
+	private final PeakInvestigatorSaaS service;
+	private final SftpAction action;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private long chunkSize = 0;
+
+	/**
+	 * @param service
+	 *            Provides the timeout and SFTP session pool to use.
+	 * @param action
+	 *            An SFTP action that has valid response from PeakInvestigator
+	 *            SaaS.
+	 */
+	public SftpTransferManager(PeakInvestigatorSaaS service, SftpAction action) {
+		this.service = service;
+		this.action = action;
+	}
+
+	/**
+	 * Used to modify the number of concurrent transfers (and channels) using
+	 * a Fluent-style API.
+	 *
+	 * @param parallelism
+	 *            The desired number of concurrent transfers.
+	 * @return This object after the parallelism has been modified.
+	 */
+	public SftpTransferManager withParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"Parallelism must be at least 1.");
+		}
+
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Used to split large files into ranges that are uploaded concurrently
+	 * using a Fluent-style API.
+	 *
+	 * @param chunkSize
+	 *            The size in bytes of the ranges, or 0 to upload every file as
+	 *            a whole (the default).
+	 * @return This object after the chunk size has been modified.
+	 */
+	public SftpTransferManager withChunkSize(long chunkSize) {
+		if (chunkSize < 0) {
+			throw new IllegalArgumentException("Chunk size can not be negative.");
+		}
+
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Upload files to the directory of the SFTP action, keeping their names,
+	 * and wait until all transfers have completed.
+	 *
+	 * @param localFilenames
+	 *            The local filenames of the files to be uploaded.
+	 * @param monitor
+	 *            An object implementing the SftpProgressMonitor interface, or
+	 *            null.
+	 * @throws JSchException
+	 *             Thrown if problem connecting to SFTP server.
+	 * @throws SftpException
+	 *             Thrown if problem during SFTP transfer, including problems
+	 *             reading the local files. If several transfers fail, the
+	 *             first problem is thrown.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting; transfers in flight are
+	 *             interrupted as well.
+	 */
+	public void putFiles(List<String> localFilenames,
+			SftpProgressMonitor monitor) throws JSchException, SftpException,
+			InterruptedException {
+
+		List<Piece> pieces = new ArrayList<>();
+		List<Piece> chunked = new ArrayList<>();
+		long total = 0;
+		for (String localFilename : localFilenames) {
+			File file = new File(localFilename);
+			if (!file.isFile()) {
+				throw new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE,
+						localFilename + " is not a file.");
+			}
+
+			String remoteFilename = action.getDirectory() + "/"
+					+ file.getName();
+			long length = file.length();
+			total += length;
+
+			if (chunkSize == 0 || length <= chunkSize) {
+				pieces.add(new Piece(localFilename, remoteFilename, length, 0,
+						length));
+				continue;
+			}
+
+			for (long offset = 0; offset < length; offset += chunkSize) {
+				Piece piece = new Piece(localFilename, remoteFilename, length,
+						offset, Math.min(chunkSize, length - offset));
+				pieces.add(piece);
+			}
+			chunked.add(pieces.get(pieces.size() - 1));
+		}
+
+		SftpSessionPool pool = service.getSftpSessionPool();
+		boolean ownsPool = pool == null;
+		if (ownsPool) {
+			pool = new SftpSessionPool(service.getTimeout(),
+					SftpSessionPool.DEFAULT_IDLE_TIMEOUT,
+					SftpSessionPool.DEFAULT_MAX_CHANNELS_PER_SESSION);
+		}
+
+		AggregateMonitor aggregate = new AggregateMonitor(monitor);
+		if (monitor != null) {
+			monitor.init(SftpProgressMonitor.PUT, localFilenames.size()
+					+ " files", action.getDirectory(), total);
+		}
+
+		try {
+			// connecting the session first lets the workers share it
+			ChannelSftp first = pool.borrowChannel(action);
+			boolean failed = true;
+			try {
+				for (Piece piece : chunked) {
+					preallocate(first, piece);
+				}
+				failed = false;
+			} finally {
+				release(pool, first, failed);
+			}
+
+			transfer(pool, pieces, aggregate);
+
+			if (!aggregate.isCancelled()) {
+				ChannelSftp channel = pool.borrowChannel(action);
+				failed = true;
+				try {
+					for (Piece piece : pieces) {
+						if (piece.isChunk()) {
+							verifyChunk(channel, piece);
+						} else {
+							verifySize(channel, piece);
+						}
+					}
+					failed = false;
+				} finally {
+					release(pool, channel, failed);
+				}
+			}
+		} finally {
+			if (ownsPool) {
+				pool.close();
+			}
+			if (monitor != null) {
+				monitor.end();
+			}
+		}
+	}
+
+	/**
+	 * Upload the pieces using up to one channel per unit of parallelism, each
+	 * used by its own thread.
+	 */
+	private void transfer(SftpSessionPool pool, List<Piece> pieces,
+			AggregateMonitor monitor) throws JSchException,
+			SftpException, InterruptedException {
+
+		Queue<Piece> queue = new ConcurrentLinkedQueue<>(pieces);
+		int workers = Math.min(parallelism, pieces.size());
+		if (workers == 0) {
+			return;
+		}
+
+		ExecutorService threads = Executors.newFixedThreadPool(workers,
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"SftpTransferManager-"
+										+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		List<Future<Void>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < workers; i++) {
+				futures.add(threads.submit(new Worker(pool, queue, monitor)));
+			}
+
+			Throwable failure = null;
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException exception) {
+					if (failure == null) {
+						failure = exception.getCause();
+					}
+				}
+			}
+
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			} else if (failure instanceof JSchException) {
+				throw (JSchException) failure;
+			} else if (failure instanceof SftpException) {
+				throw (SftpException) failure;
+			} else if (failure != null) {
+				throw new SftpException(ChannelSftp.SSH_FX_FAILURE,
+						failure.toString(), failure);
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	/**
+	 * Extend (or truncate) the remote file to its final size by writing its
+	 * last byte, so that the pieces can be written with
+	 * {@link ChannelSftp#APPEND}, whose offset is relative to the size of the
+	 * remote file (JSch does not allow positioned writes otherwise, as
+	 * {@link ChannelSftp#OVERWRITE} truncates the file).
+	 */
+	private static void preallocate(ChannelSftp channel, Piece piece)
+			throws SftpException {
+
+		byte[] last = new byte[1];
+		try (RandomAccessFile file = new RandomAccessFile(piece.localFilename,
+				"r")) {
+			file.seek(piece.fileLength - 1);
+			file.readFully(last);
+
+			OutputStream output = channel.put(piece.remoteFilename, null,
+					ChannelSftp.OVERWRITE, piece.fileLength - 1);
+			output.write(last);
+			output.close();
+		} catch (IOException exception) {
+			throw new SftpException(ChannelSftp.SSH_FX_FAILURE, String.format(
+					"Problem preparing upload of %s to %s.",
+					piece.localFilename, piece.remoteFilename), exception);
+		}
+
+		if (channel.stat(piece.remoteFilename).getSize() != piece.fileLength) {
+			throw new SftpException(ChannelSftp.SSH_FX_FAILURE,
+					"Unable to extend " + piece.remoteFilename);
+		}
+	}
+
+	/**
+	 * Check that a chunk has been written at its offset by reading back its
+	 * first and last bytes, as the size of a preallocated remote file does not
+	 * show missing ranges.
+	 */
+	static void verifyChunk(ChannelSftp channel, Piece piece)
+			throws SftpException {
+		int head = (int) Math.min(piece.length, BOUNDARY_CHECK_SIZE);
+		long tail = Math.max(head, piece.length - BOUNDARY_CHECK_SIZE);
+		if (!isSameRange(channel, piece, 0, head)
+				|| !isSameRange(channel, piece, tail,
+						(int) (piece.length - tail))) {
+			throw new SftpException(ChannelSftp.SSH_FX_FAILURE, String.format(
+					"Range [%d, %d) of %s differs from %s.", piece.offset,
+					piece.offset + piece.length, piece.remoteFilename,
+					piece.localFilename));
+		}
+	}
+
+	/**
+	 * @return Whether a range of a piece, relative to its offset, is the same
+	 *         in the local and remote files.
+	 */
+	private static boolean isSameRange(ChannelSftp channel, Piece piece,
+			long start, int length) throws SftpException {
+		if (length == 0) {
+			return true;
+		}
+
+		byte[] local = new byte[length];
+		byte[] remote = new byte[length];
+
+		try (RandomAccessFile file = new RandomAccessFile(piece.localFilename,
+				"r")) {
+			file.seek(piece.offset + start);
+			file.readFully(local);
+		} catch (IOException exception) {
+			throw new SftpException(ChannelSftp.SSH_FX_FAILURE,
+					"Unable to read " + piece.localFilename, exception);
+		}
+
+		try (DataInputStream input = new DataInputStream(channel.get(
+				piece.remoteFilename, null, piece.offset + start))) {
+			input.readFully(remote);
+		} catch (EOFException exception) {
+			return false;
+		} catch (IOException exception) {
+			throw new SftpException(ChannelSftp.SSH_FX_FAILURE,
+					"Unable to read " + piece.remoteFilename, exception);
+		}
+
+		return Arrays.equals(local, remote);
+	}
+
+	private static void verifySize(ChannelSftp channel, Piece piece)
+			throws SftpException {
+		long size = channel.stat(piece.remoteFilename).getSize();
+		if (size != piece.fileLength) {
+			throw new SftpException(ChannelSftp.SSH_FX_FAILURE, String.format(
+					"Size of %s is %d bytes instead of %d.",
+					piece.remoteFilename, size, piece.fileLength));
+		}
+	}
+
+	private static void release(SftpSessionPool pool, ChannelSftp channel,
+			boolean failed) {
+		if (failed) {
+			pool.invalidateChannel(channel);
+		} else {
+			pool.returnChannel(channel);
+		}
+	}
+
+	/**
+	 * Write one piece through a channel. The remote file of chunked pieces
+	 * must already have its final size.
+	 */
+	private static void put(ChannelSftp channel, Piece piece,
+			SftpProgressMonitor monitor) throws SftpException, IOException {
+
+		boolean chunked = piece.isChunk();
+		long remaining = piece.length;
+		OutputStream output = chunked ? channel.put(piece.remoteFilename,
+				monitor, ChannelSftp.APPEND, piece.offset - piece.fileLength)
+				: channel.put(piece.remoteFilename, monitor,
+						ChannelSftp.OVERWRITE, 0);
+
+		try (RandomAccessFile file = new RandomAccessFile(piece.localFilename,
+				"r")) {
+			file.seek(piece.offset);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (remaining > 0) {
+				int read = file.read(buffer, 0,
+						(int) Math.min(buffer.length, remaining));
+				if (read < 0) {
+					throw new IOException(piece.localFilename
+							+ " was truncated during upload.");
+				}
+				output.write(buffer, 0, read);
+				remaining -= read;
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Uploads pieces from the queue with a borrowed channel until the queue
+	 * is empty, a transfer fails or the upload is cancelled.
+	 */
+	private class Worker implements Callable<Void> {
+		private final SftpSessionPool pool;
+		private final Queue<Piece> queue;
+		private final AggregateMonitor monitor;
+
+		Worker(SftpSessionPool pool, Queue<Piece> queue,
+				AggregateMonitor monitor) {
+			this.pool = pool;
+			this.queue = queue;
+			this.monitor = monitor;
+		}
+
+		@Override
+		public Void call() throws JSchException, SftpException, IOException {
+			ChannelSftp channel = pool.borrowChannel(action);
+			boolean healthy = false;
+			try {
+				Piece piece;
+				while (!monitor.isStopped() && (piece = queue.poll()) != null) {
+					LOGGER.fine(String.format("Send %s [%d, %d) to %s",
+							piece.localFilename, piece.offset, piece.offset
+									+ piece.length, piece.remoteFilename));
+					try {
+						put(channel, piece, monitor);
+					} catch (SftpException | IOException exception) {
+						if (monitor.isStopped()) {
+							// cancelled, or another transfer has failed
+							return null;
+						}
+
+						LOGGER.severe(String.format(
+								"Problem uploading %s to %s.",
+								piece.localFilename, piece.remoteFilename));
+						monitor.stop();
+						throw exception;
+					}
+				}
+				healthy = true;
+			} finally {
+				release(pool, channel, !healthy);
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * A range of a local file.
+	 */
+	static class Piece {
+		final String localFilename;
+		final String remoteFilename;
+		final long fileLength;
+		final long offset;
+		final long length;
+
+		Piece(String localFilename, String remoteFilename, long fileLength,
+				long offset, long length) {
+			this.localFilename = localFilename;
+			this.remoteFilename = remoteFilename;
+			this.fileLength = fileLength;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * @return Whether the piece is a range of a larger file.
+		 */
+		boolean isChunk() {
+			return length != fileLength;
+		}
+	}
+
+	/**
+	 * Forwards the progress of all transfers to a single monitor. Calls of
+	 * init() and end() by the individual transfers are ignored.
+	 */
+	private static class AggregateMonitor implements SftpProgressMonitor {
+		private final SftpProgressMonitor monitor;
+		private volatile boolean cancelled = false;
+		private volatile boolean stopped = false;
+
+		AggregateMonitor(SftpProgressMonitor monitor) {
+			this.monitor = monitor;
+		}
+
+		@Override
+		public void init(int op, String src, String dest, long max) {
+		}
+
+		@Override
+		public synchronized boolean count(long count) {
+			if (stopped) {
+				return false;
+			}
+
+			if (monitor != null && !monitor.count(count)) {
+				cancelled = true;
+				stopped = true;
+			}
+
+			return !stopped;
+		}
+
+		@Override
+		public void end() {
+		}
+
+		/** Stop the remaining transfers because one has failed. */
+		void stop() {
+			stopped = true;
+		}
+
+		boolean isStopped() {
+			return stopped;
+		}
+
+		boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.veritomyx;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.veritomyx.actions.StatusAction;
+
+/**
+ * Collects STATUS queries for many jobs and executes them together.
+ *
+ * <p>
+ * The PeakInvestigator API accepts a single job per STATUS call, so the
+ * queries are issued concurrently (but at most
+ * {@link #withMaxConcurrency(int)} at a time) using
+ * {@link PeakInvestigatorSaaS#executeActionAsync(com.veritomyx.actions.Action, ActionCallback)}.
+ * Each response is processed by a regular {@link StatusAction}, so
+ * <code>getStatus()</code>, <code>getResultFilePaths()</code>,
+ * <code>getActualCost()</code>, etc. behave as they do for a single job.
+ * </p>
+ *
+ * <p>
+ * For example:
+ * </p>
+ *
+ * <pre>
+ * StatusBatch batch = new StatusBatch(&quot;username&quot;, &quot;password&quot;);
+ * batch.add(&quot;P-504.5148&quot;).add(&quot;P-504.5149&quot;);
+ * StatusBatch.Statuses statuses = batch.execute(webService);
+ * StatusAction.Status status = statuses.get(&quot;P-504.5148&quot;).getStatus();
+ * </pre>
+ */
+public class StatusBatch {
+
+	public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+	private final String user;
+	private final String code;
+	private final Set<String> jobs = new LinkedHashSet<>();
+	private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+	public StatusBatch(String user, String code) {
+		this.user = user;
+		this.code = code;
+	}
+
+	/**
+	 * Used to modify the maximum number of STATUS calls in flight using a
+	 * Fluent-style API.
+	 *
+	 * @param maxConcurrency
+	 *            The desired number of concurrent calls.
+	 * @return This object after the limit has been modified.
+	 */
+	public StatusBatch withMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException(
+					"Concurrency must be at least 1.");
+		}
+
+		this.maxConcurrency = maxConcurrency;
+		return this;
+	}
+
+	public StatusBatch add(String jobID) {
+		jobs.add(jobID);
+		return this;
+	}
+
+	public StatusBatch addAll(Collection<String> jobIDs) {
+		jobs.addAll(jobIDs);
+		return this;
+	}
+
+	public boolean remove(String jobID) {
+		return jobs.remove(jobID);
+	}
+
+	public Set<String> getJobs() {
+		return Collections.unmodifiableSet(jobs);
+	}
+
+	/**
+	 * Execute a STATUS call for every job of the batch, and wait until all of
+	 * them have completed.
+	 *
+	 * @param service
+	 *            Used to execute the calls.
+	 * @return The processed STATUS actions by job, in the order the jobs were
+	 *         added. Jobs whose call failed are not included, but are
+	 *         available from {@link Statuses#getFailures()}.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting; calls in flight still
+	 *             complete.
+	 */
+	public Statuses execute(PeakInvestigatorSaaS service)
+			throws InterruptedException {
+
+		final Map<String, StatusAction> completed = new ConcurrentHashMap<>();
+		final Map<String, Exception> failures = new ConcurrentHashMap<>();
+		final Semaphore permits = new Semaphore(maxConcurrency);
+
+		for (final String jobID : jobs) {
+			permits.acquire();
+			try {
+				submit(service, jobID, completed, failures, permits);
+			} catch (RejectedExecutionException exception) {
+				permits.release();
+				throw exception;
+			}
+		}
+
+		// wait for calls in flight
+		permits.acquire(maxConcurrency);
+		permits.release(maxConcurrency);
+
+		// in the order the jobs were added
+		Map<String, StatusAction> actions = new LinkedHashMap<>();
+		Map<String, Exception> exceptions = new LinkedHashMap<>();
+		for (String jobID : jobs) {
+			if (completed.containsKey(jobID)) {
+				actions.put(jobID, completed.get(jobID));
+			} else if (failures.containsKey(jobID)) {
+				exceptions.put(jobID, failures.get(jobID));
+			}
+		}
+
+		return new Statuses(actions, exceptions);
+	}
+
+	private void submit(PeakInvestigatorSaaS service, final String jobID,
+			final Map<String, StatusAction> completed,
+			final Map<String, Exception> failures, final Semaphore permits) {
+		service.executeActionAsync(new StatusAction(user, code, jobID),
+				new ActionCallback<StatusAction>() {
+					@Override
+					public void onSuccess(StatusAction action) {
+						completed.put(jobID, action);
+						permits.release();
+					}
+
+					@Override
+					public void onFailure(StatusAction action,
+							Exception exception) {
+						failures.put(jobID, exception);
+						permits.release();
+					}
+				});
+	}
+
+	/**
+	 * The results of {@link StatusBatch#execute(PeakInvestigatorSaaS)}, which
+	 * can not be modified.
+	 */
+	public static class Statuses {
+		private final Map<String, StatusAction> actions;
+		private final Map<String, Exception> failures;
+
+		private Statuses(Map<String, StatusAction> actions,
+				Map<String, Exception> failures) {
+			this.actions = Collections.unmodifiableMap(actions);
+			this.failures = Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * @return The processed STATUS action of a job, or null if its call
+		 *         failed or the job was not part of the batch.
+		 */
+		public StatusAction get(String jobID) {
+			return actions.get(jobID);
+		}
+
+		/**
+		 * @return The processed STATUS action by job, in the order the jobs
+		 *         were added.
+		 */
+		public Map<String, StatusAction> getActions() {
+			return actions;
+		}
+
+		/**
+		 * @return The number of jobs whose STATUS call completed.
+		 */
+		public int size() {
+			return actions.size();
+		}
+
+		public StatusAction.Status getStatus(String jobID) {
+			StatusAction action = actions.get(jobID);
+			if (action == null || action.hasError()) {
+				return null;
+			}
+
+			return action.getStatus();
+		}
+
+		/**
+		 * @return The exception (usually an IOException or
+		 *         ResponseFormatException) of each job whose STATUS call
+		 *         failed.
+		 */
+		public Map<String, Exception> getFailures() {
+			return failures;
+		}
+
+		public boolean hasFailures() {
+			return !failures.isEmpty();
+		}
+	}
+}
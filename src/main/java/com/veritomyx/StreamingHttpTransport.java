@@ -0,0 +1,39 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.net.URL;
+
+import com.veritomyx.actions.Action;
+import com.veritomyx.actions.Action.ResponseFormatException;
+import com.veritomyx.actions.StreamingAction;
+
+/**
+ * A {@link HttpTransport} that can pass a response to an action while it is
+ * being received, instead of reading it into a String first. It is used by
+ * {@link PeakInvestigatorSaaS#executeAndProcess(Action)} when available.
+ *
+ * @author Adam Tenderholt
+ */
+public interface StreamingHttpTransport extends HttpTransport {
+
+	/**
+	 * Make a POST request with the query of the given action, encoded directly
+	 * into the request (see
+	 * {@link StreamingAction#encodeQuery(com.veritomyx.actions.QueryEncoder)}
+	 * ), and process the response with the action (see
+	 * {@link StreamingAction#processResponse(java.io.Reader)}).
+	 *
+	 * @param url
+	 *            The URL of the API.
+	 * @param timeout
+	 *            The connect and read timeout in milliseconds.
+	 * @param action
+	 *            Provides the query, and processes the response.
+	 * @throws IOException
+	 *             If an I/O exception occurs during the request.
+	 * @throws ResponseFormatException
+	 *             If the response can not be processed.
+	 */
+	public void post(URL url, int timeout, StreamingAction action)
+			throws IOException, ResponseFormatException;
+}
@@ -0,0 +1,35 @@
+package com.veritomyx;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Produces the contents of a file uploaded with
+ * {@link PeakInvestigatorSaaS#putFile(com.veritomyx.actions.SftpAction, UploadProducer, String, com.jcraft.jsch.SftpProgressMonitor)}
+ * , so that it can be generated while it is being uploaded instead of being
+ * written to a local file first. For example:
+ *
+ * <pre>
+ * webService.putFile(sftpAction, new UploadProducer() {
+ * 	public void writeTo(OutputStream output) throws IOException {
+ * 		ChecksumFileWriter writer = new ChecksumFileWriter(output);
+ * 		writer.writeln(&quot;123.456\t7890.1&quot;);
+ * 		writer.close();
+ * 	}
+ * }, &quot;/files/scan.txt&quot;, monitor);
+ * </pre>
+ */
+public interface UploadProducer {
+
+	/**
+	 * Write the contents of the file. This is called on the thread of the
+	 * upload, and data is sent as it is written, so memory use is bounded.
+	 *
+	 * @param output
+	 *            The remote file. Closing it is allowed, but not required.
+	 * @throws IOException
+	 *             If there is a problem generating or sending the contents,
+	 *             which fails the upload.
+	 */
+	public void writeTo(OutputStream output) throws IOException;
+}
@@ -0,0 +1,207 @@
+package com.veritomyx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import com.veritomyx.actions.Action.ResponseFormatException;
+import com.veritomyx.actions.QueryEncoder;
+import com.veritomyx.actions.StreamingAction;
+
+/**
+ * The default {@link HttpTransport}, which opens a new
+ * {@link HttpURLConnection} for every request.
+ *
+ * @author Adam Tenderholt
+ */
+public class UrlConnectionTransport implements StreamingHttpTransport {
+
+	protected static final String PAGE_ENCODING = "UTF-8";
+
+	/** Larger per-thread buffers are dropped once a query has been sent. */
+	static final int MAX_ENCODER_CAPACITY = 16384; // bytes
+
+	private static final ThreadLocal<QueryEncoder> ENCODERS = new ThreadLocal<QueryEncoder>() {
+		@Override
+		protected QueryEncoder initialValue() {
+			return new QueryEncoder();
+		}
+	};
+
+	@Override
+	public String post(URL url, String query, int timeout) throws IOException {
+		HttpURLConnection connection = buildConnection(url, timeout);
+		return queryConnection(connection, query);
+	}
+
+	@Override
+	public void post(URL url, int timeout, StreamingAction action)
+			throws IOException, ResponseFormatException {
+		HttpURLConnection connection = buildConnection(url, timeout);
+		queryConnection(connection, action);
+	}
+
+	@Override
+	public void close() {
+		// nothing to release
+	}
+
+	/**
+	 * Utility function to build a HTTPS connection with various required
+	 * settings.
+	 *
+	 * @param url
+	 *            The URL of the desired connection.
+	 * @param timeout
+	 *            The connect and read timeout in milliseconds.
+	 * @return A new HttpURLConnection instance
+	 * @throws IOException
+	 *             If an I/O exception is thrown when opening HTTPS connection
+	 */
+	protected HttpURLConnection buildConnection(URL url, int timeout)
+			throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setUseCaches(false);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type",
+				"application/x-www-form-urlencoded");
+		connection.setRequestProperty("Content-Language", "en-US");
+
+		connection.setReadTimeout(timeout);
+		connection.setConnectTimeout(timeout);
+		connection.setDoInput(true);
+		connection.setDoOutput(true);
+
+		return connection;
+	}
+
+	/**
+	 * Utility function to make a POST method against a HttpURLConnection with
+	 * the given query.
+	 *
+	 * @param connection
+	 *            A valid HttpURLConnection (not currently connected).
+	 * @param query
+	 *            The desired query string
+	 * @return The response for the query.
+	 * @throws IOException
+	 *             If an I/O exception occurs from the HTTP connection
+	 */
+	protected String queryConnection(HttpURLConnection connection, String query)
+			throws IOException {
+
+		sendQuery(connection, query);
+
+		// Read the response from the HTTP server
+		StringBuilder builder = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				connection.getInputStream(), PAGE_ENCODING));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			builder.append(line);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Utility function to make a POST method against a HttpURLConnection with
+	 * the query of an action, and process the response with the action as it
+	 * is received. The response is read completely and closed afterwards.
+	 *
+	 * @param connection
+	 *            A valid HttpURLConnection (not currently connected).
+	 * @param action
+	 *            Provides the query, and processes the response.
+	 * @throws IOException
+	 *             If an I/O exception occurs from the HTTP connection
+	 * @throws ResponseFormatException
+	 *             If the response can not be processed.
+	 */
+	protected void queryConnection(HttpURLConnection connection,
+			StreamingAction action) throws IOException,
+			ResponseFormatException {
+
+		sendQuery(connection, action);
+
+		InputStream input = connection.getInputStream();
+		try {
+			action.processResponse(new InputStreamReader(input, PAGE_ENCODING));
+
+			// anything after the response (e.g. a new line)
+			byte[] buffer = new byte[256];
+			while (input.read(buffer) != -1) {
+				// discard
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Send the query as bytes from a per-thread buffer, with its length known
+	 * in advance so that the connection does not buffer it again.
+	 */
+	private static void sendQuery(HttpURLConnection connection, String query)
+			throws IOException {
+		QueryEncoder encoder = ENCODERS.get();
+		try {
+			encoder.addEncoded(query);
+			sendQuery(connection, encoder);
+		} finally {
+			release(encoder);
+		}
+	}
+
+	/**
+	 * Send the query of an action, encoded directly into a per-thread buffer.
+	 */
+	private static void sendQuery(HttpURLConnection connection,
+			StreamingAction action) throws IOException {
+		QueryEncoder encoder = ENCODERS.get();
+		try {
+			action.encodeQuery(encoder);
+			sendQuery(connection, encoder);
+		} finally {
+			release(encoder);
+		}
+	}
+
+	/**
+	 * Clear a per-thread buffer once its query has been sent, so that the
+	 * credentials do not stay in memory, and drop it if it has grown too large.
+	 */
+	static void release(QueryEncoder encoder) {
+		encoder.clear();
+		if (encoder.capacity() > MAX_ENCODER_CAPACITY) {
+			ENCODERS.remove();
+		}
+	}
+
+	/**
+	 * @return The buffer used by the current thread to send queries.
+	 */
+	static QueryEncoder getEncoder() {
+		return ENCODERS.get();
+	}
+
+	private static void sendQuery(HttpURLConnection connection,
+			QueryEncoder encoder) throws IOException {
+		connection.setFixedLengthStreamingMode(encoder.length());
+
+		// Send request
+		OutputStream output = connection.getOutputStream();
+		try {
+			encoder.writeTo(output);
+		} finally {
+			output.close();
+		}
+
+		connection.connect();
+	}
+}
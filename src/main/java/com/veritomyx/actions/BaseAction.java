@@ -1,20 +1,43 @@
 package com.veritomyx.actions;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public abstract class BaseAction implements Action {
+public abstract class BaseAction implements StreamingAction {
 	private static final int API_MAJOR_VERSION = 5;
 	private static final int API_MINOR_VERSION = 1;
 	public static final String API_VERSION = API_MAJOR_VERSION + "." + API_MINOR_VERSION;
 
 	private static final String DATE_FORMAT = "yyyy-MM-dd kk:mm:ss";
 
+	/**
+	 * SimpleDateFormat is expensive to create and not thread-safe, so each
+	 * thread keeps its own.
+	 */
+	private static final ThreadLocal<SimpleDateFormat> DATE_FORMATS = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(DATE_FORMAT);
+		}
+	};
+
+	private static final String[] COMMON_ATTRIBUTES = { "Action", "Error",
+			"Message", "Datetime" };
+	private static final int HTML_PREFIX_LENGTH = 15;
+
 	/** Test Strings */
 	public static final String API_SOURCE = "<html><head>\n"
 			+ "<!--\n"
@@ -28,6 +51,9 @@ public abstract class BaseAction implements Action {
 
 	protected JSONObject responseObject = null;
 
+	/** The dates parsed from the response, in milliseconds since the epoch. */
+	private Map<String, Long> timestamps = null;
+
 	BaseAction(String user, String code) {
 		this(API_VERSION, user, code);
 	}
@@ -39,17 +65,29 @@ public abstract class BaseAction implements Action {
 	}
 
 	public String buildQuery() {
-		StringBuilder builder = new StringBuilder();
+		QueryEncoder encoder = new QueryEncoder();
+		encodeQuery(encoder);
 
-		builder.append("Version=" + versionOfApi + "&");
-		builder.append("User=" + user + "&");
-		builder.append("Code=" + code + "&");
+		return encoder.toString();
+	}
 
-		return builder.toString();
+	/**
+	 * Add the parameters of the query to an encoder, which form-encodes them
+	 * (e.g. a password with '&amp;'). Subclasses add their parameters after
+	 * those of their superclass.
+	 * 
+	 * @param encoder
+	 *            Receives the parameters.
+	 */
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		encoder.add("Version", versionOfApi).add("User", user)
+				.add("Code", code);
 	}
 
 	public void reset() {
 		responseObject = null;
+		timestamps = null;
 	}
 
 	public void processResponse(String response) throws ResponseFormatException {
@@ -64,6 +102,85 @@ public abstract class BaseAction implements Action {
 		} catch (ParseException e) {
 			throw new ResponseFormatException("Problem parsing JSON: " + e.getMessage(), this);
 		}
+
+		bindResponse();
+	}
+
+	/**
+	 * Process a response as it is read (e.g. from a connection), without
+	 * reading it into a String first. Only the attributes used by this action
+	 * (see {@link #getResponseAttributes()}) are kept.
+	 * 
+	 * @param response
+	 *            The response, which is not closed.
+	 * @throws IOException
+	 *             If there is a problem reading the response.
+	 * @throws ResponseFormatException
+	 *             If the response can not be parsed.
+	 */
+	public void processResponse(Reader response) throws IOException,
+			ResponseFormatException {
+		BufferedReader reader = new BufferedReader(response);
+		reader.mark(HTML_PREFIX_LENGTH);
+		char[] prefix = new char[HTML_PREFIX_LENGTH];
+		int length = reader.read(prefix);
+		if (length > 0 && prefix[0] == '<') {
+			throw new ResponseFormatException(
+					"Server response appears to be HTML/XML: "
+							+ new String(prefix, 0, length), this);
+		}
+		reader.reset();
+
+		ResponseHandler handler = new ResponseHandler(getResponseAttributes());
+		try {
+			new JSONParser().parse(reader, handler);
+		} catch (ParseException e) {
+			throw new ResponseFormatException("Problem parsing JSON: " + e.getMessage(), this);
+		}
+
+		if (handler.response == null) {
+			throw new ResponseFormatException(
+					"Problem parsing JSON: response is not an object", this);
+		}
+		responseObject = handler.response;
+		bindResponse();
+	}
+
+	private void bindResponse() throws ResponseFormatException {
+		timestamps = null;
+		if (responseObject.containsKey("Error")) {
+			return;
+		}
+
+		try {
+			bindResponse(responseObject);
+		} catch (IllegalArgumentException e) {
+			throw new ResponseFormatException("Problem in response: "
+					+ e.getMessage(), this, e);
+		}
+	}
+
+	/**
+	 * Bind a response without an error to the typed response of the action
+	 * (e.g. {@link StatusResponse}), so that its values are checked once and
+	 * getters do not have to look them up.
+	 * 
+	 * @param response
+	 *            The parsed response.
+	 * @throws IllegalArgumentException
+	 *             If a value is missing or has the wrong type.
+	 */
+	protected void bindResponse(JSONObject response) {
+	}
+
+	/**
+	 * @return The attributes of the response used by this action (besides
+	 *         Action, Error, Message and Datetime), which are the only ones
+	 *         kept by {@link #processResponse(Reader)}; or null to keep all of
+	 *         them.
+	 */
+	protected String[] getResponseAttributes() {
+		return null;
 	}
 
 	public boolean isReady(String action) throws IllegalStateException {
@@ -99,25 +216,59 @@ public abstract class BaseAction implements Action {
 		return 0;
 	}
 
+	public boolean hasAttribute(String attribute) {
+		return responseObject != null && responseObject.get(attribute) != null;
+	}
+
 	public String getStringAttribute(String attribute) {
 		return (String) responseObject.get(attribute);
 	}
 
 	public int getIntAttribute(String attribute) {
-		return (Integer) responseObject.get(attribute);
+		return ((Number) responseObject.get(attribute)).intValue();
 	}
 
 	public long getLongAttribute(String attribute) {
-		return (Long) responseObject.get(attribute);
+		return ((Number) responseObject.get(attribute)).longValue();
 	}
 
 	public double getDoubleAttribute(String attribute) {
-		return (Double) responseObject.get(attribute);
+		return ((Number) responseObject.get(attribute)).doubleValue();
 	}
 
 	public Date getDateAttribute(String attribute) throws java.text.ParseException {
-		SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
-		return dateFormat.parse(getStringAttribute("Datetime"));
+		return new Date(getTimestampAttribute(attribute));
+	}
+
+	/**
+	 * Get a date (e.g. "Datetime") of the response, which is parsed the first
+	 * time it is requested.
+	 * 
+	 * @param attribute
+	 *            The name of the date.
+	 * @return The date, in milliseconds since the epoch.
+	 * @throws java.text.ParseException
+	 *             If the date is missing, or can not be parsed.
+	 */
+	public long getTimestampAttribute(String attribute)
+			throws java.text.ParseException {
+		Long timestamp = timestamps != null ? timestamps.get(attribute) : null;
+		if (timestamp != null) {
+			return timestamp;
+		}
+
+		String date = getStringAttribute(attribute);
+		if (date == null) {
+			throw new java.text.ParseException(attribute + " is missing", 0);
+		}
+
+		timestamp = DATE_FORMATS.get().parse(date).getTime();
+		if (timestamps == null) {
+			timestamps = new HashMap<>();
+		}
+		timestamps.put(attribute, timestamp);
+
+		return timestamp;
 	}
 
 	public String[] getStringArrayAttribute(String attribute) {
@@ -134,4 +285,134 @@ public abstract class BaseAction implements Action {
 		return retval;
 	}
 
+	/**
+	 * Builds the response object while it is parsed, skipping the values of
+	 * attributes that are not used.
+	 */
+	private static class ResponseHandler implements ContentHandler {
+		private final String[] attributes;
+		private JSONObject response = null;
+
+		/** The objects and arrays being built, within a kept attribute. */
+		private final Deque<Object> containers = new ArrayDeque<>();
+		private final Deque<String> keys = new ArrayDeque<>();
+		private int depth = 0;
+		private boolean skipping = false;
+
+		ResponseHandler(String[] attributes) {
+			this.attributes = attributes;
+		}
+
+		private boolean isKept(String key) {
+			if (attributes == null) {
+				return true;
+			}
+
+			for (String attribute : COMMON_ATTRIBUTES) {
+				if (attribute.equals(key)) {
+					return true;
+				}
+			}
+			for (String attribute : attributes) {
+				if (attribute.equals(key)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void addValue(Object value) {
+			Object parent = containers.peek();
+			if (parent == null) {
+				response.put(keys.pop(), value);
+			} else if (parent instanceof JSONObject) {
+				((JSONObject) parent).put(keys.pop(), value);
+			} else {
+				((JSONArray) parent).add(value);
+			}
+		}
+
+		@Override
+		public void startJSON() {
+		}
+
+		@Override
+		public void endJSON() {
+		}
+
+		@Override
+		public boolean startObject() {
+			depth++;
+			if (depth == 1) {
+				response = new JSONObject();
+			} else if (!skipping) {
+				containers.push(new JSONObject());
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endObject() {
+			depth--;
+			if (depth > 0 && !skipping) {
+				addValue(containers.pop());
+			}
+			return true;
+		}
+
+		@Override
+		public boolean startObjectEntry(String key) {
+			if (depth == 1) {
+				skipping = !isKept(key);
+			}
+			if (!skipping) {
+				keys.push(key);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endObjectEntry() {
+			if (depth == 1) {
+				skipping = false;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean startArray() throws ParseException {
+			if (depth == 0) {
+				throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+			}
+
+			depth++;
+			if (!skipping) {
+				containers.push(new JSONArray());
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endArray() {
+			depth--;
+			if (!skipping) {
+				addValue(containers.pop());
+			}
+			return true;
+		}
+
+		@Override
+		public boolean primitive(Object value) throws ParseException {
+			if (depth == 0) {
+				throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+			}
+
+			if (!skipping) {
+				addValue(value);
+			}
+			return true;
+		}
+	}
 }
@@ -3,10 +3,14 @@ package com.veritomyx.actions;
 import java.text.ParseException;
 import java.util.Date;
 
+import org.json.simple.JSONObject;
+
 public class DeleteAction extends BaseAction {
 	private static final String action = "DELETE";
+	private static final String[] RESPONSE_ATTRIBUTES = { "Job" };
 
 	private String jobID;
+	private JobResponse response = null;
 
 	public DeleteAction(String user, String code, String jobID) {
 		super(user, code);
@@ -14,13 +18,16 @@ public class DeleteAction extends BaseAction {
 		this.jobID = jobID;
 	}
 
-	public String buildQuery() {
-		StringBuilder builder = new StringBuilder(super.buildQuery());
-
-		builder.append("Action=" + action + "&");
-		builder.append("Job=" + jobID);
+	@Override
+	protected String[] getResponseAttributes() {
+		return RESPONSE_ATTRIBUTES;
+	}
 
-		return builder.toString();
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		super.encodeQuery(encoder);
+		encoder.add("Action", action);
+		encoder.add("Job", jobID);
 	}
 
 	private void preCheck() throws IllegalStateException {
@@ -29,9 +36,37 @@ public class DeleteAction extends BaseAction {
 		}
 	}
 
-	public String getJob() {
+	public void reset() {
+		super.reset();
+		response = null;
+	}
+
+	@Override
+	protected void bindResponse(JSONObject object) {
+		response = JobResponse.parse(object);
+	}
+
+	/**
+	 * @return The response, with its values already parsed.
+	 * @throws IllegalStateException
+	 *             If the response has not been set, or is an error.
+	 */
+	public JobResponse getResponse() {
 		preCheck();
-		return getStringAttribute("Job");
+		if (response == null) {
+			throw new IllegalStateException("Response is an error.");
+		}
+
+		return response;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
+	public String getJob() {
+		return getResponse().getJob();
 	}
 
 	public Date getDate() throws ParseException {
@@ -39,6 +74,14 @@ public class DeleteAction extends BaseAction {
 		return getDateAttribute("Datetime");
 	}
 
+	/**
+	 * @return The date of the response, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() throws ParseException {
+		preCheck();
+		return getTimestampAttribute("Datetime");
+	}
+
 	@Override
 	public String getErrorMessage() {
 		preCheck();
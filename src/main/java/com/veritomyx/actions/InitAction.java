@@ -2,13 +2,15 @@ package com.veritomyx.actions;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 public class InitAction extends BaseAction {
 	private static final String action = "INIT";
+	private static final String[] RESPONSE_ATTRIBUTES = {
+			"Job", "ID", "Funds", "EstimatedCost" };
 
 	public final static String EXAMPLE_RESPONSE_1 = "{\"Action\":\"INIT\", \"Job\":\"V-504.1551\", \"ID\":504, \"Funds\":115.01, "
 			+ "\"EstimatedCost\":[{\"Instrument\":\"TOF\", \"RTO\":\"RTO-24\", \"Cost\":27.60}, "
@@ -33,6 +35,7 @@ public class InitAction extends BaseAction {
 	private int calibrationCount;
 	private String clientKey;
 
+	private InitResponse response = null;
 	private HashMap<String, ResponseTimeCosts> estimatedCosts = null;
 
 	private InitAction(String user, String code, int ID, String versionOfPi,
@@ -90,22 +93,26 @@ public class InitAction extends BaseAction {
 				this.calibrationCount, this.clientKey);
 	}
 
-	public String buildQuery() {
-		StringBuilder builder = new StringBuilder(super.buildQuery());
-
-		builder.append("Action=" + action + "&");
-		builder.append("ID=" + ID + "&");
-		builder.append("PI_Version=" + versionOfPi + "&");
-		builder.append("ScanCount=" + scanCount + "&");
-		builder.append("MaxPoints=" + maxPoints + "&");
-		builder.append("MinMass=" + minMass + "&");
-		builder.append("MaxMass=" + maxMass + "&");
-		builder.append("StartMass=" + startMass + "&");
-		builder.append("EndMass=" + endMass + "&");
-		builder.append("CalibrationCount=" + calibrationCount + "&");
-		builder.append("ClientKey=" + clientKey);
+	@Override
+	protected String[] getResponseAttributes() {
+		return RESPONSE_ATTRIBUTES;
+	}
 
-		return builder.toString();
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		super.encodeQuery(encoder);
+
+		encoder.add("Action", action);
+		encoder.add("ID", ID);
+		encoder.add("PI_Version", versionOfPi);
+		encoder.add("ScanCount", scanCount);
+		encoder.add("MaxPoints", maxPoints);
+		encoder.add("MinMass", minMass);
+		encoder.add("MaxMass", maxMass);
+		encoder.add("StartMass", startMass);
+		encoder.add("EndMass", endMass);
+		encoder.add("CalibrationCount", calibrationCount);
+		encoder.add("ClientKey", clientKey);
 	}
 
 	private void preCheck() throws IllegalStateException {
@@ -116,45 +123,75 @@ public class InitAction extends BaseAction {
 
 	public void reset() {
 		super.reset();
+		response = null;
 		estimatedCosts = null;
 	}
 
-	public String getJob() {
+	@Override
+	protected void bindResponse(JSONObject object) {
+		response = InitResponse.parse(object);
+		estimatedCosts = null;
+	}
+
+	/**
+	 * @return The response, with its values already parsed.
+	 * @throws IllegalStateException
+	 *             If the response has not been set, or is an error.
+	 */
+	public InitResponse getResponse() {
 		preCheck();
-		return getStringAttribute("Job");
+		if (response == null) {
+			throw new IllegalStateException("Response is an error.");
+		}
+
+		return response;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
+	public String getJob() {
+		return getResponse().getJob();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public long getId() {
-		preCheck();
-		return getLongAttribute("ID");
+		return getResponse().getId();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public double getFunds() {
-		preCheck();
-		return getDoubleAttribute("Funds");
+		return getResponse().getFunds();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public HashMap<String, ResponseTimeCosts> getEstimatedCosts() {
-		preCheck();
+		InitResponse response = getResponse();
 
 		if (estimatedCosts != null) {
 			return estimatedCosts;
 		}
 
 		estimatedCosts = new HashMap<>();
-		JSONArray RTOs = (JSONArray) responseObject.get("EstimatedCost");
-		for (Object object : RTOs) {
-			JSONObject jsonObject = (JSONObject) object;
-
-			String instrument = (String) jsonObject.get("Instrument");
-			String RTO = (String) jsonObject.get("RTO");
-			Double cost = (Double) jsonObject.get("Cost");
-
-			ResponseTimeCosts costs = estimatedCosts.containsKey(instrument) ? estimatedCosts
-					.get(instrument) : new ResponseTimeCosts();
-			costs.put(RTO, cost);
-
-			estimatedCosts.put(instrument, costs);
+		for (Map.Entry<String, Map<String, Double>> entry : response
+				.getEstimatedCosts().entrySet()) {
+			ResponseTimeCosts costs = new ResponseTimeCosts();
+			costs.putAll(entry.getValue());
+			estimatedCosts.put(entry.getKey(), costs);
 		}
 
 		return estimatedCosts;
@@ -0,0 +1,100 @@
+package com.veritomyx.actions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.json.simple.JSONObject;
+
+/**
+ * The response to {@link InitAction}.
+ */
+public final class InitResponse {
+	private final String job;
+	private final long id;
+	private final double funds;
+	private final Map<String, Map<String, Double>> estimatedCosts;
+
+	/**
+	 * @param estimatedCosts
+	 *            The estimated cost for each type of mass spec (e.g. "TOF")
+	 *            and Response Time Objective (e.g. "RTO-24").
+	 */
+	public InitResponse(String job, long id, double funds,
+			Map<String, Map<String, Double>> estimatedCosts) {
+		this.job = job;
+		this.id = id;
+		this.funds = funds;
+
+		Map<String, Map<String, Double>> costs = new LinkedHashMap<>();
+		for (Map.Entry<String, Map<String, Double>> entry : estimatedCosts
+				.entrySet()) {
+			costs.put(entry.getKey(), Collections
+					.unmodifiableMap(new LinkedHashMap<>(entry.getValue())));
+		}
+		this.estimatedCosts = Collections.unmodifiableMap(costs);
+	}
+
+	static InitResponse parse(JSONObject object) {
+		Map<String, Map<String, Double>> estimatedCosts = new LinkedHashMap<>();
+		for (JSONObject cost : ResponseValues.getObjectArray(object,
+				"EstimatedCost")) {
+			String instrument = ResponseValues.getString(cost, "Instrument");
+			Map<String, Double> costs = estimatedCosts.get(instrument);
+			if (costs == null) {
+				costs = new LinkedHashMap<>();
+				estimatedCosts.put(instrument, costs);
+			}
+			costs.put(ResponseValues.getString(cost, "RTO"),
+					ResponseValues.getDouble(cost, "Cost"));
+		}
+
+		return new InitResponse(ResponseValues.getString(object, "Job"),
+				ResponseValues.getLong(object, "ID"),
+				ResponseValues.getDouble(object, "Funds"), estimatedCosts);
+	}
+
+	public String getJob() {
+		return job;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public double getFunds() {
+		return funds;
+	}
+
+	/**
+	 * @return The estimated cost for each type of mass spec and Response Time
+	 *         Objective.
+	 */
+	public Map<String, Map<String, Double>> getEstimatedCosts() {
+		return estimatedCosts;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof InitResponse)) {
+			return false;
+		}
+
+		InitResponse other = (InitResponse) object;
+		return Objects.equals(job, other.job) && id == other.id
+				&& Double.compare(funds, other.funds) == 0
+				&& estimatedCosts.equals(other.estimatedCosts);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(job, id, funds, estimatedCosts);
+	}
+
+	@Override
+	public String toString() {
+		return "Job: " + job + ", ID: " + id + ", funds: " + funds
+				+ ", estimated costs: " + estimatedCosts;
+	}
+}
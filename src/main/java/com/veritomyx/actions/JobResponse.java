@@ -0,0 +1,41 @@
+package com.veritomyx.actions;
+
+import java.util.Objects;
+
+import org.json.simple.JSONObject;
+
+/**
+ * The response to an action that only returns a job, such as
+ * {@link RunAction} and {@link DeleteAction}.
+ */
+public final class JobResponse {
+	private final String job;
+
+	public JobResponse(String job) {
+		this.job = Objects.requireNonNull(job);
+	}
+
+	static JobResponse parse(JSONObject object) {
+		return new JobResponse(ResponseValues.getString(object, "Job"));
+	}
+
+	public String getJob() {
+		return job;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		return object instanceof JobResponse
+				&& job.equals(((JobResponse) object).job);
+	}
+
+	@Override
+	public int hashCode() {
+		return job.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "Job: " + job;
+	}
+}
@@ -1,18 +1,27 @@
 package com.veritomyx.actions;
 
+import org.json.simple.JSONObject;
+
 public class PiVersionsAction extends BaseAction {
 	private static final String action = "PI_VERSIONS";
+	private static final String[] RESPONSE_ATTRIBUTES = {
+			"Current", "LastUsed", "Versions" };
+
+	private PiVersionsResponse response = null;
 
 	public PiVersionsAction(String user, String code) {
 		super(user, code);
 	}
 
 	@Override
-	public String buildQuery() {
-		StringBuilder builder = new StringBuilder(super.buildQuery());
-		builder.append("Action=" + action);
+	protected String[] getResponseAttributes() {
+		return RESPONSE_ATTRIBUTES;
+	}
 
-		return builder.toString();
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		super.encodeQuery(encoder);
+		encoder.add("Action", action);
 	}
 
 	private void preCheck() throws IllegalStateException {
@@ -21,19 +30,55 @@ public class PiVersionsAction extends BaseAction {
 		}
 	}
 
-	public String getCurrentVersion() {
+	public void reset() {
+		super.reset();
+		response = null;
+	}
+
+	@Override
+	protected void bindResponse(JSONObject object) {
+		response = PiVersionsResponse.parse(object);
+	}
+
+	/**
+	 * @return The response, with its values already parsed.
+	 * @throws IllegalStateException
+	 *             If the response has not been set, or is an error.
+	 */
+	public PiVersionsResponse getResponse() {
 		preCheck();
-		return getStringAttribute("Current");
+		if (response == null) {
+			throw new IllegalStateException("Response is an error.");
+		}
+
+		return response;
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
+	public String getCurrentVersion() {
+		return getResponse().getCurrentVersion();
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public String getLastUsedVersion() {
-		preCheck();
-		return getStringAttribute("LastUsed");
+		return getResponse().getLastUsedVersion();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public String[] getVersions() throws IllegalStateException {
-		preCheck();
-		return getStringArrayAttribute("Versions");
+		return getResponse().getVersions();
 	}
 
 	@Override
@@ -0,0 +1,72 @@
+package com.veritomyx.actions;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.json.simple.JSONObject;
+
+/**
+ * The response to {@link PiVersionsAction}.
+ */
+public final class PiVersionsResponse {
+	private final String currentVersion;
+	private final String lastUsedVersion;
+	private final String[] versions;
+
+	public PiVersionsResponse(String currentVersion, String lastUsedVersion,
+			String[] versions) {
+		this.currentVersion = currentVersion;
+		this.lastUsedVersion = lastUsedVersion;
+		this.versions = versions != null ? versions.clone() : null;
+	}
+
+	static PiVersionsResponse parse(JSONObject object) {
+		return new PiVersionsResponse(
+				ResponseValues.getString(object, "Current"),
+				ResponseValues.getString(object, "LastUsed"),
+				ResponseValues.getStringArray(object, "Versions"));
+	}
+
+	public String getCurrentVersion() {
+		return currentVersion;
+	}
+
+	/**
+	 * @return The version last used, which is empty if no version has been
+	 *         used.
+	 */
+	public String getLastUsedVersion() {
+		return lastUsedVersion;
+	}
+
+	/**
+	 * @return A copy of the available versions, or null if they are missing.
+	 */
+	public String[] getVersions() {
+		return versions != null ? versions.clone() : null;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof PiVersionsResponse)) {
+			return false;
+		}
+
+		PiVersionsResponse other = (PiVersionsResponse) object;
+		return Objects.equals(currentVersion, other.currentVersion)
+				&& Objects.equals(lastUsedVersion, other.lastUsedVersion)
+				&& Arrays.equals(versions, other.versions);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(currentVersion, lastUsedVersion)
+				+ Arrays.hashCode(versions);
+	}
+
+	@Override
+	public String toString() {
+		return "Current: " + currentVersion + ", last used: "
+				+ lastUsedVersion + ", versions: " + Arrays.toString(versions);
+	}
+}
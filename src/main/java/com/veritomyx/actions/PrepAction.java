@@ -1,13 +1,18 @@
 package com.veritomyx.actions;
 
+import org.json.simple.JSONObject;
+
 public class PrepAction extends BaseAction {
 	private final static String action = "PREP";
+	private final static String[] RESPONSE_ATTRIBUTES = {
+			"File", "Status", "PercentComplete", "MSType", "ScanCount" };
 
 	public final static String EXAMPLE_RESPONSE_1 = "{\"Action\":\"PREP\",\"File\":\"WatersQ-TOF.tar\",\"Status\":\"Analyzing\",\"PercentComplete\":\"90%\",\"ScanCount\":0,\"MSType\":\"TBD\"}";
 	public final static String EXAMPLE_RESPONSE_2 = "{\"Action\":\"PREP\",\"File\":\"Bosch_1_1.tar\",\"Status\":\"Ready\",\"PercentComplete\":\"\",\"ScanCount\":3336,\"MSType\":\"Orbitrap\"}";
 
 	private int projectID;
 	private String filename;
+	private PrepResponse response = null;
 	
 	public PrepAction(String user, String code, int projectID, String filename) {
 		super(user, code);
@@ -17,14 +22,17 @@ public class PrepAction extends BaseAction {
 		
 	}
 	
-	public String buildQuery() {
-		StringBuilder builder = new StringBuilder(super.buildQuery());
-		builder.append("Action=" + action + "&");
-		builder.append("ID=" + projectID + "&");
-		builder.append("File=" + filename);
-
-		return builder.toString();
+	@Override
+	protected String[] getResponseAttributes() {
+		return RESPONSE_ATTRIBUTES;
+	}
 
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		super.encodeQuery(encoder);
+		encoder.add("Action", action);
+		encoder.add("ID", projectID);
+		encoder.add("File", filename);
 	}
 
 	private void preCheck() throws IllegalStateException {
@@ -33,29 +41,73 @@ public class PrepAction extends BaseAction {
 		}
 	}
 
-	public String getFilename() {
+	public void reset() {
+		super.reset();
+		response = null;
+	}
+
+	@Override
+	protected void bindResponse(JSONObject object) {
+		response = PrepResponse.parse(object);
+	}
+
+	/**
+	 * @return The response, with its values already parsed.
+	 * @throws IllegalStateException
+	 *             If the response has not been set, or is an error.
+	 */
+	public PrepResponse getResponse() {
 		preCheck();
-		return getStringAttribute("File");
+		if (response == null) {
+			throw new IllegalStateException("Response is an error.");
+		}
+
+		return response;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
+	public String getFilename() {
+		return getResponse().getFilename();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public Status getStatus() {
-		preCheck();
-		return Status.valueOf(getStringAttribute("Status"));
+		return getResponse().getStatus();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public int getScanCount() {
-		preCheck();
-		return (int) getLongAttribute("ScanCount");
+		return getResponse().getScanCount();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public String getPercentComplete() {
-		preCheck();
-		return getStringAttribute("PercentComplete");
+		return getResponse().getPercentComplete();
 	};
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public String getMStype() {
-		preCheck();
-		return getStringAttribute("MSType");
+		return getResponse().getMSType();
 	}
 
 	@Override
@@ -0,0 +1,86 @@
+package com.veritomyx.actions;
+
+import java.util.Objects;
+
+import org.json.simple.JSONObject;
+
+import com.veritomyx.actions.PrepAction.Status;
+
+/**
+ * The response to {@link PrepAction}.
+ */
+public final class PrepResponse {
+	private final String filename;
+	private final Status status;
+	private final String percentComplete;
+	private final String msType;
+	private final int scanCount;
+
+	public PrepResponse(String filename, Status status,
+			String percentComplete, String msType, int scanCount) {
+		this.filename = filename;
+		this.status = Objects.requireNonNull(status);
+		this.percentComplete = percentComplete;
+		this.msType = msType;
+		this.scanCount = scanCount;
+	}
+
+	static PrepResponse parse(JSONObject object) {
+		return new PrepResponse(ResponseValues.getString(object, "File"),
+				ResponseValues.getEnum(object, "Status", Status.class),
+				ResponseValues.getString(object, "PercentComplete"),
+				ResponseValues.getString(object, "MSType"),
+				ResponseValues.getInt(object, "ScanCount"));
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The progress of the analysis (e.g. "90%"), which is empty once
+	 *         it is ready.
+	 */
+	public String getPercentComplete() {
+		return percentComplete;
+	}
+
+	public String getMSType() {
+		return msType;
+	}
+
+	public int getScanCount() {
+		return scanCount;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof PrepResponse)) {
+			return false;
+		}
+
+		PrepResponse other = (PrepResponse) object;
+		return Objects.equals(filename, other.filename)
+				&& status == other.status
+				&& Objects.equals(percentComplete, other.percentComplete)
+				&& Objects.equals(msType, other.msType)
+				&& scanCount == other.scanCount;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(filename, status, percentComplete, msType,
+				scanCount);
+	}
+
+	@Override
+	public String toString() {
+		return "File: " + filename + ", status: " + status + " ("
+				+ percentComplete + "), MS type: " + msType + ", scans: "
+				+ scanCount;
+	}
+}
@@ -0,0 +1,236 @@
+package com.veritomyx.actions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds a form-encoded (application/x-www-form-urlencoded) query as bytes,
+ * as done by {@link java.net.URLEncoder} with UTF-8 but without creating
+ * intermediate Strings. The buffer is kept by {@link #reset()} and
+ * {@link #clear()}, so an encoder can be reused for many queries. For
+ * example:
+ *
+ * <pre>
+ * encoder.reset();
+ * encoder.add(&quot;Action&quot;, &quot;STATUS&quot;).add(&quot;Job&quot;, jobID);
+ * encoder.writeTo(output);
+ * </pre>
+ *
+ * <p>
+ * An encoder is not thread-safe.
+ * </p>
+ */
+public class QueryEncoder {
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+	private byte[] buffer = new byte[INITIAL_CAPACITY];
+	private int length = 0;
+
+	/**
+	 * Add a parameter, separated from the previous one by '&amp;'. A null
+	 * value is written as "null".
+	 *
+	 * @return This object, for adding more parameters.
+	 */
+	public QueryEncoder add(String key, String value) {
+		separate();
+		encode(key);
+		write('=');
+		encode(value != null ? value : "null");
+		return this;
+	}
+
+	/**
+	 * Add a numeric parameter, separated from the previous one by '&amp;'.
+	 *
+	 * @return This object, for adding more parameters.
+	 */
+	public QueryEncoder add(String key, long value) {
+		separate();
+		encode(key);
+		write('=');
+		writeDigits(value);
+		return this;
+	}
+
+	/**
+	 * Add a query that is already encoded (e.g. from
+	 * {@link Action#buildQuery()}) as it is.
+	 *
+	 * @return This object, for adding more parameters.
+	 */
+	public QueryEncoder addEncoded(String query) {
+		for (int i = 0; i < query.length(); i++) {
+			char c = query.charAt(i);
+			if (c < 0x80) {
+				write(c);
+			} else {
+				i = writeUtf8(query, i, false);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return The number of bytes of the query.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return The size of the buffer in bytes, which grows with the longest
+	 *         query.
+	 */
+	public int capacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * Clear the query, keeping the buffer.
+	 */
+	public void reset() {
+		length = 0;
+	}
+
+	/**
+	 * Clear the query and overwrite its bytes (e.g. credentials), keeping the
+	 * buffer.
+	 */
+	public void clear() {
+		Arrays.fill(buffer, 0, length, (byte) 0);
+		length = 0;
+	}
+
+	byte[] getBuffer() {
+		return buffer;
+	}
+
+	public void writeTo(OutputStream output) throws IOException {
+		output.write(buffer, 0, length);
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, length);
+	}
+
+	@Override
+	public String toString() {
+		return new String(buffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private void separate() {
+		if (length > 0 && buffer[length - 1] != '&') {
+			write('&');
+		}
+	}
+
+	private void encode(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9') || c == '.' || c == '-'
+					|| c == '*' || c == '_') {
+				write(c);
+			} else if (c == ' ') {
+				write('+');
+			} else if (c < 0x80) {
+				writeEscaped(c);
+			} else {
+				i = writeUtf8(string, i, true);
+			}
+		}
+	}
+
+	/**
+	 * Write the UTF-8 bytes of the character at an index, which is combined
+	 * with the next one if it is a surrogate pair. Unpaired surrogates are
+	 * written as '?', like {@link String#getBytes(java.nio.charset.Charset)}.
+	 *
+	 * @return The index of the last character written.
+	 */
+	private int writeUtf8(String string, int index, boolean escape) {
+		int codePoint = string.charAt(index);
+		if (Character.isHighSurrogate((char) codePoint)
+				&& index + 1 < string.length()
+				&& Character.isLowSurrogate(string.charAt(index + 1))) {
+			codePoint = Character.toCodePoint((char) codePoint,
+					string.charAt(++index));
+		} else if (Character.isSurrogate((char) codePoint)) {
+			codePoint = '?';
+		}
+
+		if (codePoint < 0x80) {
+			writeByte(codePoint, escape);
+		} else if (codePoint < 0x800) {
+			writeByte(0xc0 | (codePoint >> 6), escape);
+			writeByte(0x80 | (codePoint & 0x3f), escape);
+		} else if (codePoint < 0x10000) {
+			writeByte(0xe0 | (codePoint >> 12), escape);
+			writeByte(0x80 | ((codePoint >> 6) & 0x3f), escape);
+			writeByte(0x80 | (codePoint & 0x3f), escape);
+		} else {
+			writeByte(0xf0 | (codePoint >> 18), escape);
+			writeByte(0x80 | ((codePoint >> 12) & 0x3f), escape);
+			writeByte(0x80 | ((codePoint >> 6) & 0x3f), escape);
+			writeByte(0x80 | (codePoint & 0x3f), escape);
+		}
+
+		return index;
+	}
+
+	private void writeByte(int b, boolean escape) {
+		if (escape) {
+			writeEscaped(b);
+		} else {
+			write(b);
+		}
+	}
+
+	private void writeEscaped(int b) {
+		ensureCapacity(3);
+		buffer[length++] = '%';
+		buffer[length++] = HEX_DIGITS[(b >> 4) & 0xf];
+		buffer[length++] = HEX_DIGITS[b & 0xf];
+	}
+
+	private void writeDigits(long value) {
+		if (value == Long.MIN_VALUE) {
+			addEncoded(Long.toString(value));
+			return;
+		}
+
+		ensureCapacity(20);
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+
+		for (int i = length + digits - 1; i >= length; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		length += digits;
+	}
+
+	private void write(int b) {
+		ensureCapacity(1);
+		buffer[length++] = (byte) b;
+	}
+
+	private void ensureCapacity(int count) {
+		if (length + count > buffer.length) {
+			buffer = Arrays.copyOf(buffer,
+					Math.max(2 * buffer.length, length + count));
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.veritomyx.actions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Reads and checks the values of a parsed response, for binding it to a typed
+ * response. Values of the wrong type (or missing required values) throw
+ * {@link IllegalArgumentException}, which the action reports as a
+ * {@link Action.ResponseFormatException}.
+ */
+final class ResponseValues {
+
+	private ResponseValues() {
+	}
+
+	static boolean has(JSONObject object, String key) {
+		return object.get(key) != null;
+	}
+
+	static String getString(JSONObject object, String key) {
+		return get(object, key, String.class);
+	}
+
+	static long getLong(JSONObject object, String key) {
+		Number value = get(object, key, Number.class);
+		if (value.longValue() != value.doubleValue()) {
+			throw new IllegalArgumentException(key + " is not an integer: "
+					+ value);
+		}
+
+		return value.longValue();
+	}
+
+	static int getInt(JSONObject object, String key) {
+		long value = getLong(object, key);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(key + " is out of range: "
+					+ value);
+		}
+
+		return (int) value;
+	}
+
+	static double getDouble(JSONObject object, String key) {
+		return get(object, key, Number.class).doubleValue();
+	}
+
+	static <T extends Enum<T>> T getEnum(JSONObject object, String key,
+			Class<T> type) {
+		String value = getString(object, key);
+		try {
+			return Enum.valueOf(type, value);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(key + " is unknown: " + value, e);
+		}
+	}
+
+	/**
+	 * @return The strings of an array, or null if it is missing.
+	 */
+	static String[] getStringArray(JSONObject object, String key) {
+		if (!has(object, key)) {
+			return null;
+		}
+
+		JSONArray array = get(object, key, JSONArray.class);
+		String[] strings = new String[array.size()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = element(array, i, key, String.class);
+		}
+
+		return strings;
+	}
+
+	/**
+	 * @return The objects of an array.
+	 */
+	static JSONObject[] getObjectArray(JSONObject object, String key) {
+		JSONArray array = get(object, key, JSONArray.class);
+		JSONObject[] objects = new JSONObject[array.size()];
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = element(array, i, key, JSONObject.class);
+		}
+
+		return objects;
+	}
+
+	/**
+	 * @return An unmodifiable copy of an object of strings, in order, which is
+	 *         empty if the object is missing.
+	 */
+	static Map<String, String> getStringMap(JSONObject object, String key) {
+		if (!has(object, key)) {
+			return Collections.emptyMap();
+		}
+
+		JSONObject values = get(object, key, JSONObject.class);
+		Map<String, String> map = new LinkedHashMap<>();
+		for (Object entry : values.keySet()) {
+			map.put((String) entry, get(values, (String) entry, String.class));
+		}
+
+		return Collections.unmodifiableMap(map);
+	}
+
+	private static <T> T get(JSONObject object, String key, Class<T> type) {
+		Object value = object.get(key);
+		if (value == null) {
+			throw new IllegalArgumentException(key + " is missing");
+		}
+		if (!type.isInstance(value)) {
+			throw new IllegalArgumentException(key + " is not a "
+					+ type.getSimpleName() + ": " + value);
+		}
+
+		return type.cast(value);
+	}
+
+	private static <T> T element(JSONArray array, int index, String key,
+			Class<T> type) {
+		Object value = array.get(index);
+		if (!type.isInstance(value)) {
+			throw new IllegalArgumentException(key + " contains a value that is not a "
+					+ type.getSimpleName() + ": " + value);
+		}
+
+		return type.cast(value);
+	}
+}
@@ -1,7 +1,10 @@
 package com.veritomyx.actions;
 
+import org.json.simple.JSONObject;
+
 public class RunAction extends BaseAction {
 	private final static String action = "RUN";
+	private final static String[] RESPONSE_ATTRIBUTES = { "Job" };
 
 	public final static String EXAMPLE_RESPONSE_1 = "{\"Action\":\"RUN\",\"Job\":\"P-504.1463\"}";
 
@@ -9,6 +12,7 @@ public class RunAction extends BaseAction {
 	private String RTO;
 	private String inputFilename;
 	private String calibrationFilename;
+	private JobResponse response = null;
 
 
 	/**
@@ -37,18 +41,22 @@ public class RunAction extends BaseAction {
 		this.calibrationFilename = calibrationFilename;
 	}
 
-	public String buildQuery() {
-		StringBuilder builder = new StringBuilder(super.buildQuery());
-		builder.append("Action=" + action + "&");
-		builder.append("Job=" + job + "&");
-		builder.append("RTO=" + RTO + "&");
-		builder.append("InputFile=" + inputFilename);
+	@Override
+	protected String[] getResponseAttributes() {
+		return RESPONSE_ATTRIBUTES;
+	}
+
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		super.encodeQuery(encoder);
+		encoder.add("Action", action);
+		encoder.add("Job", job);
+		encoder.add("RTO", RTO);
+		encoder.add("InputFile", inputFilename);
 
 		if (calibrationFilename != null) {
-			builder.append("&CalibrationFile=" + calibrationFilename + "&");
+			encoder.add("CalibrationFile", calibrationFilename);
 		}
-
-		return builder.toString();
 	}
 
 	private void preCheck() throws IllegalStateException {
@@ -57,9 +65,37 @@ public class RunAction extends BaseAction {
 		}
 	}
 
-	public String getJob() {
+	public void reset() {
+		super.reset();
+		response = null;
+	}
+
+	@Override
+	protected void bindResponse(JSONObject object) {
+		response = JobResponse.parse(object);
+	}
+
+	/**
+	 * @return The response, with its values already parsed.
+	 * @throws IllegalStateException
+	 *             If the response has not been set, or is an error.
+	 */
+	public JobResponse getResponse() {
 		preCheck();
-		return getStringAttribute("Job");
+		if (response == null) {
+			throw new IllegalStateException("Response is an error.");
+		}
+
+		return response;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
+	public String getJob() {
+		return getResponse().getJob();
 	}
 
 	@Override
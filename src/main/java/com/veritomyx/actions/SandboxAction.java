@@ -1,6 +1,10 @@
 package com.veritomyx.actions;
 
-public class SandboxAction<T extends Action> implements Action {
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+public class SandboxAction<T extends Action> implements StreamingAction {
 
 	private final T action;
 	private String sandboxOption = null;
@@ -21,14 +25,20 @@ public class SandboxAction<T extends Action> implements Action {
 
 	@Override
 	public String buildQuery() {
-		String query = action.buildQuery();
-		if (sandboxOption != null) {
-			query += "&Sandbox=" + sandboxOption;
+		QueryEncoder encoder = new QueryEncoder();
+		encodeQuery(encoder);
+
+		return encoder.toString();
+	}
+
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		if (action instanceof StreamingAction) {
+			((StreamingAction) action).encodeQuery(encoder);
 		} else {
-			query += "&Sandbox=0";
+			encoder.addEncoded(action.buildQuery());
 		}
-
-		return query;
+		encoder.add("Sandbox", sandboxOption != null ? sandboxOption : "0");
 	}
 
 	@Override
@@ -36,6 +46,27 @@ public class SandboxAction<T extends Action> implements Action {
 		action.processResponse(response);
 	}
 
+	/**
+	 * Process a response as it is read if the wrapped action is a
+	 * {@link StreamingAction}, or else read it into a String first.
+	 */
+	@Override
+	public void processResponse(Reader response) throws IOException,
+			ResponseFormatException {
+		if (action instanceof StreamingAction) {
+			((StreamingAction) action).processResponse(response);
+			return;
+		}
+
+		StringBuilder builder = new StringBuilder();
+		BufferedReader reader = new BufferedReader(response);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			builder.append(line);
+		}
+		action.processResponse(builder.toString());
+	}
+
 	@Override
 	public void reset() {
 		action.reset();
@@ -0,0 +1,105 @@
+package com.veritomyx.actions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.json.simple.JSONObject;
+
+/**
+ * The response to {@link SftpAction}.
+ */
+public final class SftpResponse {
+	private final String host;
+	private final int port;
+	private final String directory;
+	private final String username;
+	private final String password;
+	private final Map<String, String> fingerprints;
+
+	/**
+	 * @param fingerprints
+	 *            The hash of the host key for each signature and algorithm,
+	 *            keyed as "Signature-Algorithm" (e.g. "RSA-MD5").
+	 */
+	public SftpResponse(String host, int port, String directory,
+			String username, String password, Map<String, String> fingerprints) {
+		this.host = host;
+		this.port = port;
+		this.directory = directory;
+		this.username = username;
+		this.password = password;
+		this.fingerprints = Collections
+				.unmodifiableMap(new LinkedHashMap<>(fingerprints));
+	}
+
+	static SftpResponse parse(JSONObject object) {
+		Map<String, String> fingerprints = new LinkedHashMap<>();
+		for (JSONObject fingerprint : ResponseValues.getObjectArray(object,
+				"Fingerprints")) {
+			fingerprints.put(ResponseValues.getString(fingerprint, "Signature")
+					+ "-" + ResponseValues.getString(fingerprint, "Algorithm"),
+					ResponseValues.getString(fingerprint, "Hash"));
+		}
+
+		return new SftpResponse(ResponseValues.getString(object, "Host"),
+				ResponseValues.getInt(object, "Port"),
+				ResponseValues.getString(object, "Directory"),
+				ResponseValues.getString(object, "Login"),
+				ResponseValues.getString(object, "Password"), fingerprints);
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public String getDirectory() {
+		return directory;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public Map<String, String> getFingerprints() {
+		return fingerprints;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof SftpResponse)) {
+			return false;
+		}
+
+		SftpResponse other = (SftpResponse) object;
+		return Objects.equals(host, other.host) && port == other.port
+				&& Objects.equals(directory, other.directory)
+				&& Objects.equals(username, other.username)
+				&& Objects.equals(password, other.password)
+				&& fingerprints.equals(other.fingerprints);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(host, port, directory, username, password,
+				fingerprints);
+	}
+
+	/**
+	 * @return A description of the response, without the password.
+	 */
+	@Override
+	public String toString() {
+		return "Host: " + host + ":" + port + ", directory: " + directory
+				+ ", login: " + username;
+	}
+}
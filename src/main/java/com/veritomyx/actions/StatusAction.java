@@ -8,6 +8,9 @@ import org.json.simple.JSONObject;
 
 public class StatusAction extends BaseAction {
 	private static final String action = "STATUS";
+	private static final String[] RESPONSE_ATTRIBUTES = {
+			"Job", "Status", "ScansInput", "ScansComplete", "ActualCost",
+			"ResultFilePaths" };
 
 	public final static String EXAMPLE_RESPONSE_1 = "{\"Action\":\"STATUS\",\"Job\":\"P-504.5148\",\"Status\":\"Running\",\"Datetime\":\"2016-02-03 18:25:09\"}";
 	public final static String EXAMPLE_RESPONSE_2 = "{\"Action\":\"STATUS\", \"Job\":\"P-504.5148\", \"Status\":\"Done\", \"Datetime\":\"2016-02-03 18:31:05\", \"ScansInput\":3, \"ScansComplete\":3, \"ActualCost\":0.36, \"ResultFiles\":[\"Log\",\"MassList\"], \"ResultFilePaths\":{\"Log\":\"\\/files\\/P-504.5148\\/P-504.5148.log.txt\", \"MassList\":\"\\/files\\/P-504.5148\\/P-504.5148.mass_list.tar\"}}";
@@ -19,6 +22,7 @@ public class StatusAction extends BaseAction {
 	public final static String DELETED_STRING = "Remote job has been deleted.";
 
 	private String jobID;
+	private StatusResponse response = null;
 	private ResultFilePaths resultFilePaths = null;
 
 	public StatusAction(String user, String code, String jobID) {
@@ -27,13 +31,16 @@ public class StatusAction extends BaseAction {
 		this.jobID = jobID;
 	}
 
-	public String buildQuery() {
-		StringBuilder builder = new StringBuilder(super.buildQuery());
-
-		builder.append("Action=" + action + "&");
-		builder.append("Job=" + jobID);
+	@Override
+	protected String[] getResponseAttributes() {
+		return RESPONSE_ATTRIBUTES;
+	}
 
-		return builder.toString();
+	@Override
+	public void encodeQuery(QueryEncoder encoder) {
+		super.encodeQuery(encoder);
+		encoder.add("Action", action);
+		encoder.add("Job", jobID);
 	}
 
 	private void preCheck() throws IllegalStateException {
@@ -42,14 +49,49 @@ public class StatusAction extends BaseAction {
 		}
 	}
 
-	public String getJob() {
+	public void reset() {
+		super.reset();
+		response = null;
+		resultFilePaths = null;
+	}
+
+	@Override
+	protected void bindResponse(JSONObject object) {
+		response = StatusResponse.parse(object);
+		resultFilePaths = new ResultFilePaths();
+		resultFilePaths.putAll(response.getResultFilePaths());
+	}
+
+	/**
+	 * @return The response, with its values already parsed.
+	 * @throws IllegalStateException
+	 *             If the response has not been set, or is an error.
+	 */
+	public StatusResponse getResponse() {
 		preCheck();
-		return getStringAttribute("Job");
+		if (response == null) {
+			throw new IllegalStateException("Response is an error.");
+		}
+
+		return response;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
+	public String getJob() {
+		return getResponse().getJob();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public Status getStatus() {
-		preCheck();
-		return Status.valueOf(getStringAttribute("Status"));
+		return getResponse().getStatus();
 	}
 
 	public Date getDate() throws ParseException {
@@ -57,45 +99,85 @@ public class StatusAction extends BaseAction {
 		return getDateAttribute("Datetime");
 	}
 
-	public int getNumberOfInputScans() {
+	/**
+	 * @return The date of the response, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() throws ParseException {
 		preCheck();
-		return (int) getLongAttribute("ScansInput");
+		return getTimestampAttribute("Datetime");
+	}
+
+	/**
+	 * @return Whether the response includes the number of input and complete
+	 *         scans, which is not the case for every status.
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
+	public boolean hasScanCounts() {
+		return getResponse().hasScanCounts();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), has
+	 *             not been set, or does not include the scan counts.
+	 */
+	public int getNumberOfInputScans() {
+		return getResponse().getNumberOfInputScans();
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), has
+	 *             not been set, or does not include the scan counts.
+	 */
 	public int getNumberOfCompleteScans() {
-		preCheck();
-		return (int) getLongAttribute("ScansComplete");
+		return getResponse().getNumberOfCompleteScans();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), has
+	 *             not been set, or does not include the cost.
+	 */
 	public double getActualCost() {
-		preCheck();
-		return getDoubleAttribute("ActualCost");
+		return getResponse().getActualCost();
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public ResultFilePaths getResultFilePaths() {
-		if (resultFilePaths != null) {
-			return resultFilePaths;
-		}
-
-		preCheck();
-		resultFilePaths = new ResultFilePaths();
-
-		JSONObject jsonObject = (JSONObject) responseObject.get("ResultFilePaths");
-		for (Object key : jsonObject.keySet()) {
-			resultFilePaths.put((String) key, (String) jsonObject.get(key));
-		}
-
+		getResponse();
 		return resultFilePaths;
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public String getLogFilename() {
 		return getResultFilePaths().get("Log");
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public String getResultsFilename() {
 		return getResultFilePaths().get("MassList");
 	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             If the response is an error (see {@link #hasError()}), or
+	 *             has not been set.
+	 */
 	public String getMessage() {
 		switch (getStatus()) {
 		case Preparing:
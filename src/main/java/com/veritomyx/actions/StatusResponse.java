@@ -0,0 +1,147 @@
+package com.veritomyx.actions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.json.simple.JSONObject;
+
+import com.veritomyx.actions.StatusAction.Status;
+
+/**
+ * The response to {@link StatusAction}. The scan counts, cost and result
+ * files are only included for some statuses.
+ */
+public final class StatusResponse {
+	private final String job;
+	private final Status status;
+	private final int scansInput;
+	private final int scansComplete;
+	private final double actualCost;
+	private final Map<String, String> resultFilePaths;
+
+	/**
+	 * @param scansInput
+	 *            The number of input scans, or -1 if it is not known.
+	 * @param scansComplete
+	 *            The number of complete scans, or -1 if it is not known.
+	 * @param actualCost
+	 *            The cost of the job, or NaN if it is not known.
+	 * @param resultFilePaths
+	 *            The path of each result file, which may be empty.
+	 */
+	public StatusResponse(String job, Status status, int scansInput,
+			int scansComplete, double actualCost,
+			Map<String, String> resultFilePaths) {
+		this.job = job;
+		this.status = Objects.requireNonNull(status);
+		this.scansInput = scansInput;
+		this.scansComplete = scansComplete;
+		this.actualCost = actualCost;
+		this.resultFilePaths = Collections
+				.unmodifiableMap(new LinkedHashMap<>(resultFilePaths));
+	}
+
+	static StatusResponse parse(JSONObject object) {
+		boolean hasScanCounts = ResponseValues.has(object, "ScansInput")
+				&& ResponseValues.has(object, "ScansComplete");
+
+		return new StatusResponse(
+				ResponseValues.getString(object, "Job"),
+				ResponseValues.getEnum(object, "Status", Status.class),
+				hasScanCounts ? ResponseValues.getInt(object, "ScansInput") : -1,
+				hasScanCounts ? ResponseValues.getInt(object, "ScansComplete") : -1,
+				ResponseValues.has(object, "ActualCost") ? ResponseValues
+						.getDouble(object, "ActualCost") : Double.NaN,
+				ResponseValues.getStringMap(object, "ResultFilePaths"));
+	}
+
+	public String getJob() {
+		return job;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean hasScanCounts() {
+		return scansInput >= 0 && scansComplete >= 0;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response does not include the scan counts.
+	 */
+	public int getNumberOfInputScans() {
+		checkScanCounts();
+		return scansInput;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response does not include the scan counts.
+	 */
+	public int getNumberOfCompleteScans() {
+		checkScanCounts();
+		return scansComplete;
+	}
+
+	public boolean hasActualCost() {
+		return !Double.isNaN(actualCost);
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the response does not include the cost.
+	 */
+	public double getActualCost() {
+		if (!hasActualCost()) {
+			throw new IllegalStateException("Response does not include the cost.");
+		}
+
+		return actualCost;
+	}
+
+	/**
+	 * @return The path of each result file (e.g. "Log" and "MassList"), which
+	 *         is empty until the job is done.
+	 */
+	public Map<String, String> getResultFilePaths() {
+		return resultFilePaths;
+	}
+
+	private void checkScanCounts() {
+		if (!hasScanCounts()) {
+			throw new IllegalStateException(
+					"Response does not include the scan counts.");
+		}
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof StatusResponse)) {
+			return false;
+		}
+
+		StatusResponse other = (StatusResponse) object;
+		return Objects.equals(job, other.job) && status == other.status
+				&& scansInput == other.scansInput
+				&& scansComplete == other.scansComplete
+				&& Double.compare(actualCost, other.actualCost) == 0
+				&& resultFilePaths.equals(other.resultFilePaths);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(job, status, scansInput, scansComplete,
+				actualCost, resultFilePaths);
+	}
+
+	@Override
+	public String toString() {
+		return "Job: " + job + ", status: " + status + ", scans: "
+				+ scansComplete + "/" + scansInput + ", cost: " + actualCost
+				+ ", result files: " + resultFilePaths;
+	}
+}
@@ -0,0 +1,41 @@
+package com.veritomyx.actions;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * An {@link Action} that can write its query to the connection, and process
+ * its response as it is read, without creating intermediate Strings. It is
+ * used by {@link com.veritomyx.PeakInvestigatorSaaS#executeAndProcess(Action)}
+ * when the transport supports it; other actions are called with their query
+ * and response as Strings.
+ *
+ * <p>
+ * All actions of this package (which extend {@link BaseAction}) implement it.
+ * </p>
+ */
+public interface StreamingAction extends Action {
+
+	/**
+	 * Add the parameters of the query to an encoder, as returned by
+	 * {@link #buildQuery()}.
+	 *
+	 * @param encoder
+	 *            Receives the parameters.
+	 */
+	public void encodeQuery(QueryEncoder encoder);
+
+	/**
+	 * Process a response as it is read, without reading it into a String
+	 * first.
+	 *
+	 * @param response
+	 *            The response, which is not closed.
+	 * @throws IOException
+	 *             If there is a problem reading the response.
+	 * @throws ResponseFormatException
+	 *             If the response can not be parsed.
+	 */
+	public void processResponse(Reader response) throws IOException,
+			ResponseFormatException;
+}
@@ -1,19 +1,28 @@
 package com.veritomyx;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
+import com.veritomyx.Checksum.Checkpoint;
 import com.veritomyx.ChecksumFileReader.MissingChecksum;
 
 public class ChecksumTest {
@@ -74,6 +83,365 @@ public class ChecksumTest {
 
 	}
 
+	@Test
+	public void testEquivalence() throws IOException {
+		for (String filename : new String[] { "scan_goodchksum.txt",
+				"scan_badchksum.txt", "scan_nochksum.txt" }) {
+			Path path = Paths.get(getResourceUrl(filename).getPath());
+
+			ReferenceChecksum reference = new ReferenceChecksum();
+			Checksum fromStrings = new Checksum();
+			Checksum fromBytes = new Checksum();
+			Checksum fromDirectBuffer = new Checksum();
+
+			byte[] contents = Files.readAllBytes(path);
+			ByteBuffer direct = ByteBuffer.allocateDirect(contents.length);
+			direct.put(contents).flip();
+
+			int start = 0;
+			for (int i = 0; i <= contents.length; i++) {
+				if (i < contents.length && contents[i] != '\n') {
+					continue;
+				}
+
+				String line = new String(contents, start, i - start);
+				reference.append(line);
+				fromStrings.append(line);
+				fromBytes.append(contents, start, i - start);
+
+				direct.limit(i).position(start);
+				fromDirectBuffer.append(direct);
+				direct.limit(contents.length);
+
+				assertEquals(reference.getChecksum(), fromStrings.getChecksum());
+				assertEquals(reference.getChecksum(), fromBytes.getChecksum());
+				assertEquals(reference.getChecksum(),
+						fromDirectBuffer.getChecksum());
+				start = i + 1;
+			}
+		}
+	}
+
+	@Test
+	public void testEquivalence_LineSeparators() {
+		String[] lines = { "", "1.0\t2.0", "a\rb", "a\nb", "a\r\nb",
+				"a\n\rb", "a\r\rb", "a\n\nb", "\r", "\r\n\r\n", "trailing\n",
+				"non-ASCII \u00b5m/z \u00e9", "\u00c5\r\u00c5" };
+
+		ReferenceChecksum reference = new ReferenceChecksum();
+		Checksum fromStrings = new Checksum();
+		Checksum fromBytes = new Checksum();
+		Checksum fromBuffer = new Checksum();
+		assertEquals(reference.getChecksum(), fromStrings.getChecksum());
+
+		for (String line : lines) {
+			reference.append(line);
+			fromStrings.append(line);
+			byte[] bytes = ("xx" + line).getBytes();
+			fromBytes.append(bytes, 2, bytes.length - 2);
+			fromBuffer.append(ByteBuffer.wrap(bytes, 2, bytes.length - 2));
+
+			assertEquals(line, reference.getChecksum(),
+					fromStrings.getChecksum());
+			assertEquals(line, reference.getChecksum(), fromBytes.getChecksum());
+			assertEquals(line, reference.getChecksum(),
+					fromBuffer.getChecksum());
+		}
+
+		assertEquals(Checksum.PREFIX + reference.getChecksum(),
+				fromStrings.getChecksumLine());
+	}
+
+	@Test
+	public void testMappedVerification() throws IOException, MissingChecksum {
+		for (String filename : new String[] { "scan_goodchksum.txt",
+				"scan_badchksum.txt" }) {
+			File file = new File(getResourceUrl(filename).getPath());
+			boolean expected = isFileIntactByReader(file);
+			for (long window : new long[] { 1, 7, 64, 1 << 20 }) {
+				assertEquals(filename + " " + window, expected,
+						Checksum.isFileIntact(file, window));
+			}
+		}
+	}
+
+	@Test
+	public void testMappedVerification_LineSeparators() throws IOException,
+			MissingChecksum {
+		String[] separators = { "\n", "\r\n", "\r", "\n\r" };
+		for (String separator : separators) {
+			for (boolean trailingSeparator : new boolean[] { true, false }) {
+				StringBuilder contents = new StringBuilder();
+				Checksum checksum = new Checksum();
+				for (int i = 0; i < 50; i++) {
+					// lines of varying length, including empty lines
+					StringBuilder line = new StringBuilder();
+					for (int j = 0; j < (i * 7) % 23; j++) {
+						line.append((char) ('a' + (i + j) % 26));
+					}
+					contents.append(line).append(separator);
+					checksum.append(line.toString());
+				}
+				contents.append(checksum.getChecksumLine());
+				if (trailingSeparator) {
+					contents.append(separator);
+				}
+
+				File file = folder.newFile();
+				Files.write(file.toPath(), contents.toString().getBytes());
+				boolean expected = isFileIntactByReader(file);
+				for (long window : new long[] { 1, 2, 3, 16, 1 << 20 }) {
+					assertEquals(expected, Checksum.isFileIntact(file, window));
+				}
+				if (!separator.equals("\n\r")) {
+					assertTrue(Checksum.isFileIntact(file));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMappedVerification_NoChecksum() throws IOException,
+			MissingChecksum {
+		thrown.expect(ChecksumFileReader.MissingChecksum.class);
+
+		File file = new File(getResourceUrl("scan_nochksum.txt").getPath());
+		Checksum.isFileIntact(file, 16);
+	}
+
+	@Test
+	public void testPipelinedWriter() throws IOException, MissingChecksum {
+		Path expected = folder.getRoot().toPath().resolve("expected.txt");
+		writeLines(new ChecksumFileWriter(expected));
+
+		for (int capacity : new int[] { 1, 3, 1000,
+				ChecksumFileWriter.DEFAULT_PIPELINE_CAPACITY }) {
+			Path path = folder.getRoot().toPath()
+					.resolve("pipelined" + capacity + ".txt");
+			writeLines(ChecksumFileWriter.createPipelined(path, capacity));
+
+			assertTrue(Arrays.equals(Files.readAllBytes(expected),
+					Files.readAllBytes(path)));
+			assertTrue(Checksum.isFileIntact(path.toFile()));
+		}
+	}
+
+	@Test
+	public void testPipelined_Interrupted() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("interrupted.txt");
+		ChecksumFileWriter writer = ChecksumFileWriter.createPipelined(path, 3);
+		writeLines(writer, 0, 1000);
+
+		Thread.currentThread().interrupt();
+		try {
+			writer.close();
+			fail("Should not reach here.");
+		} catch (InterruptedIOException e) {
+			assertTrue(Thread.interrupted());
+		}
+
+		// the file has been closed without checksum line
+		String contents = new String(Files.readAllBytes(path), "UTF-8");
+		assertFalse(contents.contains(Checksum.PREFIX));
+
+		// and the hashing thread has ended
+		for (int i = 0; i < 100 && isHashing(); i++) {
+			Thread.sleep(10);
+		}
+		assertFalse(isHashing());
+
+		// the writer can not be used anymore
+		try {
+			writer.close();
+			fail("Should not reach here.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("incomplete"));
+		}
+	}
+
+	private static boolean isHashing() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("ChecksumFileWriter-hashing")) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	@Test
+	public void testCheckpoint_Resume() throws IOException, MissingChecksum {
+		Path expected = folder.getRoot().toPath().resolve("expected.txt");
+		writeLines(new ChecksumFileWriter(expected));
+
+		Path path = folder.getRoot().toPath().resolve("resumed.txt");
+		ChecksumFileWriter writer = new ChecksumFileWriter(path);
+		writeLines(writer, 0, 2000);
+		String saved = writer.getCheckpoint().toString();
+
+		// lines written after the checkpoint are lost in a crash
+		writeLines(writer, 2000, 2500);
+		writer.getCheckpoint();
+
+		Checkpoint checkpoint = Checkpoint.parse(saved);
+		assertEquals(2000, checkpoint.getLineCount());
+		writer = ChecksumFileWriter.resume(path, checkpoint);
+		writeLines(writer, 2000, 5000);
+		writer.close();
+
+		assertTrue(Arrays.equals(Files.readAllBytes(expected),
+				Files.readAllBytes(path)));
+		assertTrue(Checksum.isFileIntact(path.toFile()));
+	}
+
+	@Test
+	public void testCheckpoint_Pipelined() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("pipelined.txt");
+		ChecksumFileWriter writer = ChecksumFileWriter.createPipelined(path, 3);
+		writeLines(writer, 0, 1000);
+		Checkpoint checkpoint = writer.getCheckpoint();
+		writer.close();
+
+		Checksum checksum = new Checksum();
+		for (int i = 0; i < 1000; i++) {
+			checksum.append(i + "\t" + i * 0.5);
+		}
+		assertEquals(checksum.getChecksum(), checkpoint.getChecksum());
+		assertEquals(1000, checkpoint.getLineCount());
+
+		Checksum resumed = new Checksum(checkpoint);
+		resumed.append("1000\t500.0");
+		checksum.append("1000\t500.0");
+		assertEquals(checksum.getChecksum(), resumed.getChecksum());
+		assertEquals(1001, resumed.getLineCount());
+	}
+
+	@Test
+	public void testReopen() throws IOException, MissingChecksum {
+		Path expected = folder.getRoot().toPath().resolve("expected.txt");
+		writeLines(new ChecksumFileWriter(expected));
+
+		// the first 600 lines, and an incomplete one
+		String contents = new String(Files.readAllBytes(expected), "UTF-8");
+		int end = 0;
+		for (int i = 0; i < 600; i++) {
+			end = contents.indexOf(System.lineSeparator(), end)
+					+ System.lineSeparator().length();
+		}
+		Path path = folder.getRoot().toPath().resolve("reopened.txt");
+		Files.write(path, (contents.substring(0, end) + "600\t3").getBytes());
+
+		ChecksumFileWriter writer = ChecksumFileWriter.reopen(path);
+		assertEquals(600, writer.getCheckpoint().getLineCount());
+		writeLines(writer, 600, 5000);
+		writer.close();
+
+		assertTrue(Arrays.equals(Files.readAllBytes(expected),
+				Files.readAllBytes(path)));
+
+		thrown.expect(IOException.class);
+		ChecksumFileWriter.reopen(path);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCheckpoint_Invalid() {
+		Checkpoint.parse("not a checksum:1:2");
+	}
+
+	private static void writeLines(ChecksumFileWriter writer, int start,
+			int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			writer.write(Integer.toString(i));
+			writer.write("\t");
+			writer.writeln(Double.toString(i * 0.5));
+		}
+	}
+
+	private static void writeLines(ChecksumFileWriter writer)
+			throws IOException {
+		for (int i = 0; i < 5000; i++) {
+			writer.write(Integer.toString(i));
+			writer.write("\t");
+			writer.writeln(Double.toString(i * 0.5));
+		}
+		writer.close();
+	}
+
+	private static boolean isFileIntactByReader(File file) throws IOException,
+			MissingChecksum {
+		ChecksumFileReader reader = new ChecksumFileReader(file.toPath());
+		while (reader.readLine() != null) {
+
+		}
+		reader.close();
+
+		return reader.isChecksumValid();
+	}
+
+	/**
+	 * The original, String-based implementation of Checksum.
+	 */
+	private static class ReferenceChecksum {
+		private MessageDigest messageDigest;
+		private String checksum;
+
+		ReferenceChecksum() {
+			try {
+				messageDigest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError(e);
+			}
+			messageDigest.update("Hash seed!".getBytes());
+			checksum = toHex(messageDigest.digest());
+		}
+
+		void append(String line) {
+			StringBuffer sb = new StringBuffer();
+			int i = 0;
+			while (i < line.length()) {
+				char c = line.charAt(i);
+				if (c == '\r') {
+					i++;
+					if (i < line.length() && line.charAt(i) == '\n') {
+						i++;
+					}
+					append(sb);
+					sb.setLength(0);
+				} else if (c == '\n') {
+					i++;
+					if (i < line.length() && line.charAt(i) == '\r') {
+						i++;
+					}
+					append(sb);
+					sb.setLength(0);
+				} else {
+					sb.append(c);
+					i++;
+				}
+			}
+			append(sb);
+		}
+
+		private void append(StringBuffer sb) {
+			String tmp = checksum + sb;
+			messageDigest.update(tmp.getBytes());
+			checksum = toHex(messageDigest.digest());
+		}
+
+		String getChecksum() {
+			return checksum;
+		}
+
+		private static String toHex(byte[] buf) {
+			StringBuffer sb = new StringBuffer("");
+			for (int i = 0; i < buf.length; i++) {
+				sb.append(Integer.toString((buf[i] & 0xff) + 0x100, 16)
+						.substring(1));
+			}
+			return sb.toString();
+		}
+	}
+
 	private static URL getResourceUrl(String filename) {
 		URL resourceUrl = ChecksumTest.class
 				.getResource(BASE_TEST_PATH + filename);
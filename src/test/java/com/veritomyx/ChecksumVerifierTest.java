@@ -0,0 +1,102 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.veritomyx.ChecksumVerifier.Report;
+import com.veritomyx.ChecksumVerifier.Result;
+
+public class ChecksumVerifierTest {
+
+	private final static String BASE_TEST_PATH = "/com/veritomyx/ChecksumTestFiles/";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testVerify() throws Exception {
+		Path good = getResourcePath("scan_goodchksum.txt");
+		Path bad = getResourcePath("scan_badchksum.txt");
+		Path none = getResourcePath("scan_nochksum.txt");
+		Path missing = folder.getRoot().toPath().resolve("missing.txt");
+
+		ChecksumVerifier verifier = new ChecksumVerifier();
+		Report report = verifier.verify(Arrays.asList(good, bad, none, missing));
+		verifier.shutdown();
+
+		assertEquals(Arrays.asList(good, bad, none, missing),
+				new ArrayList<>(report.getResults().keySet()));
+		assertEquals(Result.OK, report.get(good));
+		assertEquals(Result.MISMATCH, report.get(bad));
+		assertEquals(Result.MISSING, report.get(none));
+		assertEquals(Result.UNREADABLE, report.get(missing));
+		assertNotNull(report.getException(missing));
+		assertNull(report.getException(good));
+		assertFalse(report.isAllOk());
+
+		// the report can not be modified
+		try {
+			report.getResults().put(good, Result.MISMATCH);
+			fail("Should not reach here.");
+		} catch (UnsupportedOperationException exception) {
+			assertEquals(Result.OK, report.get(good));
+		}
+	}
+
+	@Test
+	public void testVerifyDirectory() throws Exception {
+		Path directory = folder.newFolder("scans").toPath();
+		Files.createDirectories(directory.resolve("more"));
+
+		List<Path> corrupt = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			Path path = directory.resolve((i % 2 == 0 ? "" : "more/")
+					+ String.format("scan%03d.txt", i));
+			ChecksumFileWriter writer = new ChecksumFileWriter(path);
+			for (int j = 0; j < 100; j++) {
+				writer.writeln(j + "\t" + (i * j));
+			}
+			writer.close();
+
+			if (i % 50 == 7) {
+				corrupt(path);
+				corrupt.add(path);
+			}
+		}
+
+		ChecksumVerifier verifier = new ChecksumVerifier(new ForkJoinPool(4));
+		Report report = verifier.verifyDirectory(directory);
+
+		assertEquals(200, report.size());
+		assertEquals(corrupt, report.getPaths(Result.MISMATCH));
+		assertEquals(196, report.getPaths(Result.OK).size());
+
+		for (Path path : corrupt) {
+			Files.delete(path);
+		}
+		assertTrue(verifier.verifyDirectory(directory).isAllOk());
+	}
+
+	private static void corrupt(Path path) throws IOException {
+		byte[] contents = Files.readAllBytes(path);
+		contents[0] = (byte) (contents[0] == '9' ? '8' : '9');
+		Files.write(path, contents);
+	}
+
+	private static Path getResourcePath(String filename) throws Exception {
+		return Paths.get(ChecksumVerifierTest.class.getResource(
+				BASE_TEST_PATH + filename).toURI());
+	}
+}
@@ -0,0 +1,199 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.veritomyx.actions.QueryEncoder;
+import com.veritomyx.actions.StatusAction;
+
+public class HttpTransportTest {
+
+	private HttpServer server;
+	private URL url;
+
+	private final Set<Integer> remotePorts = Collections
+			.synchronizedSet(new HashSet<Integer>());
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger maxActive = new AtomicInteger();
+	private volatile int delay = 0; // milliseconds
+	private volatile String response = null; // instead of the echo
+
+	private static final int TIMEOUT = 5000; // milliseconds
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int current = active.incrementAndGet();
+				synchronized (maxActive) {
+					maxActive.set(Math.max(maxActive.get(), current));
+				}
+
+				try {
+					remotePorts.add(exchange.getRemoteAddress().getPort());
+					String query = readFully(exchange.getRequestBody());
+					Thread.sleep(delay);
+
+					String body = response != null ? response
+							: "{\"Echo\":\"" + query + "\"}";
+					byte[] response = body.getBytes("UTF-8");
+					exchange.sendResponseHeaders(200, response.length);
+					OutputStream output = exchange.getResponseBody();
+					output.write(response);
+					output.close();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort()
+				+ "/api/");
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testUrlConnectionTransport() throws IOException {
+		HttpTransport transport = new UrlConnectionTransport();
+		assertEquals("{\"Echo\":\"Action=STATUS\"}",
+				transport.post(url, "Action=STATUS", TIMEOUT));
+	}
+
+	@Test
+	public void testUrlConnectionTransport_Encoding() throws IOException {
+		HttpTransport transport = new UrlConnectionTransport();
+		String query = new StatusAction("us\u00e9r", "p&ss word", "P-504.5148")
+				.buildQuery();
+		assertEquals("{\"Echo\":\"" + query + "\"}",
+				transport.post(url, query, TIMEOUT));
+
+		// not encoded, so the length is in UTF-8 bytes rather than characters
+		assertEquals("{\"Echo\":\"Name=\u00e9\"}",
+				transport.post(url, "Name=\u00e9", TIMEOUT));
+	}
+
+	@Test
+	public void testKeepAliveTransport_ReusesConnection() throws IOException {
+		HttpTransport transport = new KeepAliveHttpTransport();
+		for (int i = 0; i < 20; i++) {
+			assertEquals("{\"Echo\":\"Job=" + i + "\"}",
+					transport.post(url, "Job=" + i, TIMEOUT));
+		}
+
+		assertEquals(1, remotePorts.size());
+	}
+
+	@Test
+	public void testKeepAliveTransport_HostLimit() throws Exception {
+		final HttpTransport transport = new KeepAliveHttpTransport(10, 5)
+				.withMaxConnectionsForHost("127.0.0.1:"
+						+ server.getAddress().getPort(), 2);
+		delay = 50;
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			futures.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					return transport.post(url, "Action=STATUS", TIMEOUT);
+				}
+			}));
+		}
+
+		for (Future<String> future : futures) {
+			assertEquals("{\"Echo\":\"Action=STATUS\"}", future.get());
+		}
+		executor.shutdown();
+
+		assertTrue(maxActive.get() <= 2);
+		assertTrue(remotePorts.size() <= 2);
+	}
+
+	@Test
+	public void testStreamingTransport() throws Exception {
+		response = StatusAction.EXAMPLE_RESPONSE_2 + "\n";
+
+		StreamingHttpTransport[] transports = { new UrlConnectionTransport(),
+				new KeepAliveHttpTransport() };
+		for (StreamingHttpTransport transport : transports) {
+			remotePorts.clear();
+			for (int i = 0; i < 5; i++) {
+				StatusAction action = new StatusAction("user", "password",
+						"P-504.5148");
+				transport.post(url, TIMEOUT, action);
+
+				assertEquals("P-504.5148", action.getJob());
+				assertEquals(3, action.getNumberOfCompleteScans());
+				assertFalse(action.hasAttribute("ResultFiles"));
+			}
+		}
+
+		// the response is read completely, so the connection is reused
+		assertEquals(1, remotePorts.size());
+	}
+
+	@Test
+	public void testQueryBufferReleased() throws Exception {
+		UrlConnectionTransport transport = new UrlConnectionTransport();
+		transport.post(url, "User=user&Code=password", TIMEOUT);
+		QueryEncoder encoder = UrlConnectionTransport.getEncoder();
+		assertEquals(0, encoder.length());
+
+		// the buffer is kept for the next query, unless it has grown too large
+		transport.post(url, "Action=STATUS", TIMEOUT);
+		assertSame(encoder, UrlConnectionTransport.getEncoder());
+
+		int maxCapacity = UrlConnectionTransport.MAX_ENCODER_CAPACITY;
+		char[] data = new char[2 * maxCapacity];
+		Arrays.fill(data, 'x');
+		transport.post(url, "Data=" + new String(data), TIMEOUT);
+		assertTrue(UrlConnectionTransport.getEncoder().capacity() <= maxCapacity);
+	}
+
+	private static String readFully(InputStream stream) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while ((count = stream.read(buffer)) != -1) {
+			output.write(buffer, 0, count);
+		}
+		stream.close();
+
+		return output.toString("UTF-8");
+	}
+}
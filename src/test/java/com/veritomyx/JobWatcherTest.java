@@ -0,0 +1,171 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.veritomyx.actions.StatusAction;
+import com.veritomyx.actions.StatusAction.Status;
+
+public class JobWatcherTest {
+
+	private final static String PREPARING_RESPONSE = StatusAction.EXAMPLE_RESPONSE_1
+			.replace("Running", "Preparing");
+	private final static String RUNNING_RESPONSE = "{\"Action\":\"STATUS\",\"Job\":\"P-504.5148\",\"Status\":\"Running\",\"Datetime\":\"2016-02-03 18:25:09\",\"ScansInput\":3,\"ScansComplete\":COMPLETE}";
+
+	private PeakInvestigatorSaaS service;
+	private JobWatcher watcher;
+
+	/** Responses of each job, which are returned in order. */
+	private final Map<String, List<String>> responses = new ConcurrentHashMap<>();
+	private final AtomicInteger polls = new AtomicInteger();
+
+	@Before
+	public void setUp() throws Exception {
+		HttpTransport transport = new HttpTransport() {
+			@Override
+			public String post(URL url, String query, int timeout)
+					throws IOException {
+				polls.incrementAndGet();
+				String job = query.substring(query.indexOf("Job=") + 4);
+				List<String> list = responses.get(job);
+				if (list.isEmpty()) {
+					throw new IOException("No more responses for " + job);
+				}
+
+				String response = list.size() > 1 ? list.remove(0) : list
+						.get(0);
+				return response.replace("P-504.5148", job);
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		service = new PeakInvestigatorSaaS("localhost")
+				.withTransport(transport);
+		watcher = new JobWatcher(service, "user", "password").withIntervals(
+				5, 50, TimeUnit.MILLISECONDS);
+	}
+
+	@After
+	public void tearDown() {
+		watcher.shutdown();
+		service.shutdown();
+	}
+
+	@Test
+	public void testTransitions() throws InterruptedException {
+		responses.put("P-504.5148", new ArrayList<>(Arrays.asList(
+				PREPARING_RESPONSE, PREPARING_RESPONSE,
+				RUNNING_RESPONSE.replace("COMPLETE", "0"),
+				RUNNING_RESPONSE.replace("COMPLETE", "1"),
+				RUNNING_RESPONSE.replace("COMPLETE", "2"),
+				StatusAction.EXAMPLE_RESPONSE_2)));
+
+		RecordingListener listener = new RecordingListener(1);
+		watcher.watch("P-504.5148", "RTO-24", listener);
+
+		assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+		assertEquals(Collections.<String> emptyList(), listener.failures);
+		assertEquals(
+				Arrays.asList("null->Preparing", "Preparing->Running",
+						"Running->Done"), listener.transitions);
+		assertEquals(6, polls.get());
+		assertTrue(watcher.getWatchedJobs().isEmpty());
+	}
+
+	@Test
+	public void testManyJobs() throws InterruptedException {
+		int count = 200;
+		RecordingListener listener = new RecordingListener(count);
+		for (int i = 0; i < count; i++) {
+			String job = String.format("P-504.%04d", i);
+			responses.put(job, new ArrayList<>(Arrays.asList(
+					StatusAction.EXAMPLE_RESPONSE_1,
+					StatusAction.EXAMPLE_RESPONSE_3)));
+			watcher.watch(job, "RTO-0", listener);
+		}
+
+		assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+		assertEquals(2 * count, listener.transitions.size());
+		assertEquals(2 * count, polls.get());
+		assertTrue(watcher.getWatchedJobs().isEmpty());
+	}
+
+	@Test
+	public void testFailureAndUnwatch() throws InterruptedException {
+		responses.put("P-504.5148", new ArrayList<String>());
+
+		final CountDownLatch failed = new CountDownLatch(3);
+		watcher.watch("P-504.5148", null, new JobWatcher.Listener() {
+			@Override
+			public void statusChanged(String jobID, Status previous,
+					StatusAction action) {
+				fail("Should not reach here.");
+			}
+
+			@Override
+			public void pollFailed(String jobID, Exception exception) {
+				assertTrue(exception instanceof IOException);
+				if (failed.getCount() == 1) {
+					watcher.unwatch(jobID);
+				}
+				failed.countDown();
+			}
+		});
+
+		assertTrue(failed.await(5, TimeUnit.SECONDS));
+		assertTrue(watcher.getWatchedJobs().isEmpty());
+	}
+
+	@Test
+	public void testParseRTO() {
+		assertEquals(24, JobWatcher.parseRTO("RTO-24"));
+		assertEquals(0, JobWatcher.parseRTO("RTO-0"));
+		assertEquals(-1, JobWatcher.parseRTO(null));
+		assertEquals(-1, JobWatcher.parseRTO("ASAP"));
+	}
+
+	private static class RecordingListener implements JobWatcher.Listener {
+		final List<String> transitions = Collections
+				.synchronizedList(new ArrayList<String>());
+		final List<Exception> failures = Collections
+				.synchronizedList(new ArrayList<Exception>());
+		final CountDownLatch done;
+
+		RecordingListener(int jobs) {
+			done = new CountDownLatch(jobs);
+		}
+
+		@Override
+		public void statusChanged(String jobID, Status previous,
+				StatusAction action) {
+			transitions.add(previous + "->" + action.getStatus());
+			if (action.getStatus() == Status.Done
+					|| action.getStatus() == Status.Deleted) {
+				done.countDown();
+			}
+		}
+
+		@Override
+		public void pollFailed(String jobID, Exception exception) {
+			failures.add(exception);
+		}
+	}
+}
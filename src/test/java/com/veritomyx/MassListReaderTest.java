@@ -0,0 +1,146 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xeustechnologies.jtar.TarEntry;
+import org.xeustechnologies.jtar.TarOutputStream;
+
+import com.veritomyx.actions.SftpAction;
+
+public class MassListReaderTest {
+
+	private final static int SCANS = 3;
+	private final static int CENTROIDS = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReadCentroids() throws Exception {
+		File archive = createMassList(folder.newFile("P-504.5148.mass_list.tar"),
+				false);
+
+		List<MassListReader.Centroid> centroids = new ArrayList<>();
+		try (MassListReader reader = new MassListReader(new FileInputStream(
+				archive))) {
+			MassListReader.Centroid centroid;
+			while ((centroid = reader.readCentroid()) != null) {
+				centroids.add(centroid);
+			}
+			assertNull(reader.readCentroid());
+		}
+
+		assertEquals(SCANS * CENTROIDS, centroids.size());
+		MassListReader.Centroid centroid = centroids.get(CENTROIDS + 2);
+		assertEquals("scan1.txt", centroid.getScan());
+		assertEquals(102.0, centroid.getMz(), 1e-9);
+		assertEquals(1004.0, centroid.getIntensity(), 1e-9);
+	}
+
+	@Test
+	public void testChecksumMismatch() throws Exception {
+		File archive = createMassList(folder.newFile("P-504.5148.mass_list.tar"),
+				true);
+
+		int count = 0;
+		try (MassListReader reader = new MassListReader(new FileInputStream(
+				archive))) {
+			while (reader.readCentroid() != null) {
+				count++;
+			}
+			fail("Should not reach here.");
+		} catch (IOException exception) {
+			assertTrue(exception.getMessage().contains("checksum mismatch"));
+		}
+
+		// the centroids of the second file are returned before it is verified
+		assertEquals(2 * CENTROIDS, count);
+	}
+
+	@Test
+	public void testOpenMassList() throws Exception {
+		SftpTestServer server = new SftpTestServer(folder.newFolder("sftp"),
+				new File(folder.getRoot(), "hostkey.ser"));
+		server.start();
+		try {
+			SftpAction action = server.createSftpAction();
+			createMassList(server.getDirectory().resolve("mass_list.tar")
+					.toFile(), false);
+
+			SftpSessionPool pool = new SftpSessionPool();
+			PeakInvestigatorSaaS service = new PeakInvestigatorSaaS(
+					"localhost").withSftpSessionPool(pool);
+
+			for (int i = 0; i < 2; i++) {
+				int count = 0;
+				try (MassListReader reader = service.openMassList(action,
+						"/files/mass_list.tar")) {
+					while (reader.readCentroid() != null) {
+						count++;
+					}
+				}
+				assertEquals(SCANS * CENTROIDS, count);
+			}
+
+			// the channel has been given back
+			assertEquals(1, server.getLogins());
+			assertEquals(1, pool.getIdleChannelCount());
+
+			// but not when much of the file is left unread
+			Files.write(server.getDirectory().resolve("large.tar"),
+					SftpTestServer.createContents(
+							2 * PeakInvestigatorSaaS.MASS_LIST_DRAIN_LIMIT));
+			service.openMassList(action, "/files/large.tar").close();
+			assertEquals(0, pool.getIdleChannelCount());
+			assertEquals(1, pool.getSessionCount());
+			pool.close();
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Create an archive of scans written with ChecksumFileWriter, each with
+	 * centroids (100 + i, 1000 + 2 * i).
+	 */
+	private File createMassList(File archive, boolean corrupt)
+			throws IOException {
+		try (TarOutputStream output = new TarOutputStream(
+				new FileOutputStream(archive))) {
+			for (int scan = 0; scan < SCANS; scan++) {
+				String name = "scan" + scan + ".txt";
+				Path path = folder.getRoot().toPath().resolve(name);
+				ChecksumFileWriter writer = new ChecksumFileWriter(path);
+				writer.writeln("# m/z\tintensity");
+				for (int i = 0; i < CENTROIDS; i++) {
+					writer.writeln((100.0 + i) + "\t" + (1000.0 + 2 * i));
+				}
+				writer.close();
+
+				if (corrupt && scan == 1) {
+					String contents = new String(Files.readAllBytes(path),
+							"UTF-8");
+					Files.write(path, contents.replace("\t1020.0", "\t1021.0")
+							.getBytes("UTF-8"));
+				}
+
+				output.putNextEntry(new TarEntry(path.toFile(), name));
+				output.write(Files.readAllBytes(path));
+			}
+		}
+
+		return archive;
+	}
+}
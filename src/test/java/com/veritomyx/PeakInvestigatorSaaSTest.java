@@ -5,9 +5,15 @@ import static org.junit.Assume.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.SocketTimeoutException;
+import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -20,9 +26,16 @@ import static org.mockito.Mockito.*;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.SftpProgressMonitor;
+import com.veritomyx.actions.Action;
+import com.veritomyx.actions.Action.ResponseFormatException;
 import com.veritomyx.actions.BaseAction;
+import com.veritomyx.actions.QueryEncoder;
+import com.veritomyx.actions.RunAction;
+import com.veritomyx.actions.SandboxAction;
 import com.veritomyx.actions.SftpAction;
 import com.veritomyx.actions.SftpAction.SftpFingerprints;
+import com.veritomyx.actions.StatusAction;
+import com.veritomyx.actions.StreamingAction;
 
 public class PeakInvestigatorSaaSTest {
 
@@ -97,6 +110,181 @@ public class PeakInvestigatorSaaSTest {
 		fail("Should not reach here.");
 	}
 
+	@Test
+	public void testExecuteActionAsync() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS(
+				"localhost").withTransport(new StubTransport(
+				StatusAction.EXAMPLE_RESPONSE_1));
+
+		final List<StatusAction> completed = new ArrayList<>();
+		Future<StatusAction> future = service.executeActionAsync(
+				new StatusAction("user", "password", "P-504.5148"),
+				new ActionCallback<StatusAction>() {
+					@Override
+					public void onSuccess(StatusAction action) {
+						completed.add(action);
+					}
+
+					@Override
+					public void onFailure(StatusAction action,
+							Exception exception) {
+						fail("Should not reach here.");
+					}
+				});
+
+		StatusAction action = future.get();
+		assertEquals(StatusAction.Status.Running, action.getStatus());
+		assertEquals(1, completed.size());
+		assertSame(action, completed.get(0));
+
+		service.shutdown();
+	}
+
+	@Test
+	public void testExecuteActionAsync_Failure() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS(
+				"localhost").withTransport(new StubTransport(null));
+
+		Future<StatusAction> future = service
+				.executeActionAsync(new StatusAction("user", "password",
+						"P-504.5148"));
+
+		try {
+			future.get();
+			fail("Should not reach here.");
+		} catch (ExecutionException exception) {
+			assertTrue(exception.getCause() instanceof IOException);
+			assertTrue(exception.getCause().getMessage()
+					.startsWith("Unable to connect to https://localhost/api/"));
+		}
+
+		service.shutdown();
+	}
+
+	@Test
+	public void testExecuteAndProcess_Streaming() throws Exception {
+		StubStreamingTransport transport = new StubStreamingTransport(
+				StatusAction.EXAMPLE_RESPONSE_2);
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost")
+				.withTransport(transport);
+
+		StatusAction action = service.executeAndProcess(new StatusAction(
+				"user", "password", "P-504.5148"));
+		assertEquals("P-504.5148", action.getJob());
+		assertEquals(1, transport.streamed);
+		assertEquals(action.buildQuery(), transport.queries.get(0));
+
+		// actions implemented elsewhere may only process Strings
+		PlainAction plain = service.executeAndProcess(new PlainAction());
+		assertEquals(StatusAction.EXAMPLE_RESPONSE_2, plain.response);
+		assertEquals(1, transport.streamed);
+		assertEquals(2, transport.queries.size());
+
+		// unless wrapped, which reads the response for them
+		plain = service.executeAndProcess(new SandboxAction<>(
+				new PlainAction())).getWrappedAction();
+		assertEquals(StatusAction.EXAMPLE_RESPONSE_2, plain.response);
+		assertEquals(2, transport.streamed);
+		assertEquals("Action=PLAIN&Sandbox=0", transport.queries.get(2));
+	}
+
+	@Test
+	public void testResponseCache() throws Exception {
+		StubTransport transport = new StubTransport(
+				SftpAction.EXAMPLE_RESPONSE_1);
+		ResponseCache cache = new ResponseCache();
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost")
+				.withTransport(transport).withResponseCache(cache);
+
+		for (int i = 0; i < 3; i++) {
+			SftpAction action = service.executeAndProcess(new SftpAction(
+					"user", "password", 100));
+			assertEquals("Vt504", action.getSftpUsername());
+		}
+		assertEquals(1, transport.queries.size());
+		assertEquals(2, cache.getHitCount());
+
+		// another project is another call
+		service.executeAndProcess(new SftpAction("user", "password", 101));
+		assertEquals(2, transport.queries.size());
+
+		cache.invalidate(SftpAction.class);
+		service.executeActionAsync(new SftpAction("user", "password", 100))
+				.get();
+		assertEquals(3, transport.queries.size());
+
+		// actions that modify jobs always make the call
+		StubTransport runTransport = new StubTransport(
+				RunAction.EXAMPLE_RESPONSE_1);
+		service = service.withTransport(runTransport);
+		for (int i = 0; i < 2; i++) {
+			service.executeAndProcess(new RunAction("user", "password",
+					"job-123", "RTO-24", "file.tar", null));
+		}
+		assertEquals(2, runTransport.queries.size());
+		assertEquals(2, cache.getHitCount());
+
+		service.shutdown();
+	}
+
+	@Test
+	public void testStatusBatch() throws Exception {
+		HttpTransport transport = new HttpTransport() {
+			@Override
+			public String post(URL url, String query, int timeout)
+					throws IOException {
+				String job = query.substring(query.indexOf("Job=") + 4);
+				if (job.equals("P-504.0000")) {
+					throw new IOException("Connection reset");
+				}
+
+				return StatusAction.EXAMPLE_RESPONSE_2.replace("P-504.5148",
+						job);
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost")
+				.withTransport(transport);
+
+		StatusBatch batch = new StatusBatch("user", "password")
+				.withMaxConcurrency(2);
+		for (int i = 1; i <= 10; i++) {
+			batch.add(String.format("P-504.%04d", i));
+		}
+		batch.add("P-504.0000");
+
+		StatusBatch.Statuses statuses = batch.execute(service);
+		assertEquals(10, statuses.size());
+		for (int i = 1; i <= 10; i++) {
+			String job = String.format("P-504.%04d", i);
+			StatusAction action = statuses.get(job);
+			assertEquals(job, action.getJob());
+			assertEquals(StatusAction.Status.Done, statuses.getStatus(job));
+			assertEquals(0.36, action.getActualCost(), 0);
+			assertEquals("/files/" + job + "/" + job + ".mass_list.tar",
+					action.getResultsFilename());
+		}
+
+		assertTrue(statuses.hasFailures());
+		assertTrue(statuses.getFailures().get("P-504.0000") instanceof IOException);
+		assertNull(statuses.get("P-504.0000"));
+		assertEquals(String.format("P-504.%04d", 1), statuses.getActions()
+				.keySet().iterator().next());
+
+		try {
+			statuses.getActions().clear();
+			fail("Should not reach here.");
+		} catch (UnsupportedOperationException e) {
+			// read-only
+		}
+
+		service.shutdown();
+	}
+
 	@Test
 	public void testInitializeSftpSession_OK() throws JSchException {
 		assumeTrue("Credentials are not specified", isInitialized);
@@ -238,6 +426,78 @@ public class PeakInvestigatorSaaSTest {
 		assertFalse(service.isConnectedForSftp());
 	}
 
+	/**
+	 * Stands in for the PeakInvestigator API by returning a fixed response, or
+	 * failing if the response is null.
+	 */
+	static class StubTransport implements HttpTransport {
+
+		private final String response;
+		final List<String> queries = Collections
+				.synchronizedList(new ArrayList<String>());
+
+		StubTransport(String response) {
+			this.response = response;
+		}
+
+		@Override
+		public String post(URL url, String query, int timeout)
+				throws IOException {
+			queries.add(query);
+			if (response == null) {
+				throw new IOException("Connection refused");
+			}
+
+			return response;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	static class StubStreamingTransport extends StubTransport implements
+			StreamingHttpTransport {
+
+		int streamed = 0;
+
+		StubStreamingTransport(String response) {
+			super(response);
+		}
+
+		@Override
+		public void post(URL url, int timeout, StreamingAction action)
+				throws IOException, ResponseFormatException {
+			streamed++;
+			QueryEncoder encoder = new QueryEncoder();
+			action.encodeQuery(encoder);
+			action.processResponse(new StringReader(post(url,
+					encoder.toString(), timeout)));
+		}
+	}
+
+	/**
+	 * An action that only implements Action, as done outside of this SDK.
+	 */
+	static class PlainAction implements Action {
+		String response = null;
+
+		@Override
+		public String buildQuery() {
+			return "Action=PLAIN";
+		}
+
+		@Override
+		public void processResponse(String response) {
+			this.response = response;
+		}
+
+		@Override
+		public void reset() {
+			response = null;
+		}
+	}
+
 	@SuppressWarnings("unused")
 	private class HeadlessProgressMonitor implements SftpProgressMonitor {
 
@@ -0,0 +1,169 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.veritomyx.actions.BaseAction;
+import com.veritomyx.actions.DeleteAction;
+import com.veritomyx.actions.InitAction;
+import com.veritomyx.actions.PiVersionsAction;
+import com.veritomyx.actions.SftpAction;
+import com.veritomyx.actions.StatusAction;
+
+public class ResponseCacheTest {
+
+	private static final String SERVER = "peakinvestigator.veritomyx.com";
+	private static final String VERSIONS_RESPONSE = "{\"Action\":\"PI_VERSIONS\",\"Current\":\"1.2\",\"LastUsed\":\"\",\"Count\":2,\"Versions\":[\"1.2\",\"1.0.0\"]}";
+
+	/** A cache whose time only moves when told to. */
+	private static class ManualCache extends ResponseCache {
+		long time = 0;
+
+		ManualCache(int maxEntries) {
+			super(maxEntries);
+		}
+
+		@Override
+		long currentTime() {
+			return time;
+		}
+	}
+
+	@Test
+	public void testGetAndPut() throws Exception {
+		ResponseCache cache = new ResponseCache();
+		PiVersionsAction action = new PiVersionsAction("user", "password");
+
+		assertNull(cache.get(SERVER, action));
+		action.processResponse(VERSIONS_RESPONSE);
+		cache.put(SERVER, action, VERSIONS_RESPONSE);
+
+		// an equivalent action finds the response
+		assertEquals(VERSIONS_RESPONSE,
+				cache.get(SERVER, new PiVersionsAction("user", "password")));
+		assertNull(cache.get(SERVER, new PiVersionsAction("other", "password")));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1.0 / 3, cache.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void testServers() throws Exception {
+		ResponseCache cache = new ResponseCache();
+		SftpAction action = new SftpAction("user", "password", 504);
+		action.processResponse(SftpAction.EXAMPLE_RESPONSE_1);
+		cache.put(SERVER, action, SftpAction.EXAMPLE_RESPONSE_1);
+
+		// the same credentials may be valid on another server
+		assertNull(cache.get("staging.veritomyx.com", action));
+		assertNotNull(cache.get(SERVER, action));
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		ManualCache cache = new ManualCache(10);
+		cache.withTimeToLive(PiVersionsAction.class, 1, TimeUnit.MINUTES);
+
+		PiVersionsAction action = new PiVersionsAction("user", "password");
+		action.processResponse(VERSIONS_RESPONSE);
+		cache.put(SERVER, action, VERSIONS_RESPONSE);
+
+		cache.time = 59999;
+		assertNotNull(cache.get(SERVER, action));
+		cache.time = 60000;
+		assertNull(cache.get(SERVER, action));
+		assertEquals(0, cache.size());
+
+		// a time to live of 0 stops caching the type
+		cache.put(SERVER, action, VERSIONS_RESPONSE);
+		cache.withTimeToLive(PiVersionsAction.class, 0, TimeUnit.MINUTES);
+		assertFalse(cache.isCacheable(action));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsed() throws Exception {
+		ResponseCache cache = new ResponseCache(2);
+		SftpAction[] actions = new SftpAction[3];
+		for (int i = 0; i < actions.length; i++) {
+			actions[i] = new SftpAction("user", "password", i);
+			actions[i].processResponse(SftpAction.EXAMPLE_RESPONSE_1);
+		}
+
+		cache.put(SERVER, actions[0], SftpAction.EXAMPLE_RESPONSE_1);
+		cache.put(SERVER, actions[1], SftpAction.EXAMPLE_RESPONSE_1);
+		assertNotNull(cache.get(SERVER, actions[0])); // 1 is now the eldest
+		cache.put(SERVER, actions[2], SftpAction.EXAMPLE_RESPONSE_1);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertNotNull(cache.get(SERVER, actions[0]));
+		assertNull(cache.get(SERVER, actions[1]));
+		assertNotNull(cache.get(SERVER, actions[2]));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		ResponseCache cache = new ResponseCache();
+		PiVersionsAction versions = new PiVersionsAction("user", "password");
+		versions.processResponse(VERSIONS_RESPONSE);
+		cache.put(SERVER, versions, VERSIONS_RESPONSE);
+
+		SftpAction[] actions = new SftpAction[3];
+		for (int i = 0; i < actions.length; i++) {
+			actions[i] = new SftpAction("user", "password", i);
+			actions[i].processResponse(SftpAction.EXAMPLE_RESPONSE_1);
+			cache.put(SERVER, actions[i], SftpAction.EXAMPLE_RESPONSE_1);
+		}
+
+		cache.invalidate(SERVER, actions[0]);
+		assertNull(cache.get(SERVER, actions[0]));
+		assertNotNull(cache.get(SERVER, actions[1]));
+
+		cache.invalidate(SftpAction.class);
+		assertNull(cache.get(SERVER, actions[1]));
+		assertNotNull(cache.get(SERVER, versions));
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testNotCached() throws Exception {
+		ResponseCache cache = new ResponseCache();
+
+		// errors
+		PiVersionsAction action = new PiVersionsAction("user", "password");
+		String error = BaseAction.ERROR_CREDENTIALS.replace("ACTION",
+				"PI_VERSIONS");
+		action.processResponse(error);
+		cache.put(SERVER, action, error);
+		assertEquals(0, cache.size());
+
+		// other actions
+		StatusAction status = new StatusAction("user", "password", "job");
+		status.processResponse(StatusAction.EXAMPLE_RESPONSE_1);
+		cache.put(SERVER, status, StatusAction.EXAMPLE_RESPONSE_1);
+		assertNull(cache.get(SERVER, status));
+		assertEquals(0, cache.getMissCount());
+
+		cache.withTimeToLive(StatusAction.class, 5, TimeUnit.SECONDS);
+		assertTrue(cache.isCacheable(status));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMutatingActions_Init() {
+		new ResponseCache().withTimeToLive(InitAction.class, 1,
+				TimeUnit.MINUTES);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMutatingActions_Delete() {
+		new ResponseCache().withTimeToLive(DeleteAction.class, 1,
+				TimeUnit.MINUTES);
+	}
+}
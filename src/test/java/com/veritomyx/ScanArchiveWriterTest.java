@@ -0,0 +1,112 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.DoubleBuffer;
+
+import org.junit.Test;
+import org.xeustechnologies.jtar.TarEntry;
+import org.xeustechnologies.jtar.TarHeader;
+import org.xeustechnologies.jtar.TarInputStream;
+
+public class ScanArchiveWriterTest {
+
+	private final static int SCANS = 5;
+
+	@Test
+	public void testWriteScans() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ScanArchiveWriter writer = new ScanArchiveWriter(output);
+		for (int i = 0; i < SCANS; i++) {
+			double[] mz = new double[100 * (i + 1)];
+			double[] intensity = new double[mz.length];
+			for (int j = 0; j < mz.length; j++) {
+				mz[j] = 100.5 + i + j * 0.5;
+				intensity[j] = j * j;
+			}
+
+			if (i % 2 == 0) {
+				writer.writeScan("scan" + i + ".txt", mz, intensity);
+			} else {
+				writer.writeScan("scan" + i + ".txt", DoubleBuffer.wrap(mz),
+						DoubleBuffer.wrap(intensity));
+			}
+		}
+		writer.close();
+
+		assertEquals(SCANS, writer.getScanCount());
+		assertEquals(100 * SCANS, writer.getMaxPoints());
+		assertEquals(100, writer.getMinMass());
+		assertEquals(354, writer.getMaxMass());
+
+		// every file of the archive is a valid scan
+		TarInputStream input = new TarInputStream(new ByteArrayInputStream(
+				output.toByteArray()));
+		for (int i = 0; i < SCANS; i++) {
+			TarEntry entry = input.getNextEntry();
+			assertEquals("scan" + i + ".txt", entry.getName());
+
+			ScanFileReader reader = new ScanFileReader(input, entry.getName());
+			ScanFileReader.Scan scan = reader.readScan();
+			assertEquals(100 * (i + 1), scan.size());
+			assertEquals(100.5 + i, scan.getMz()[0], 0);
+			assertTrue(reader.isChecksumValid());
+		}
+		assertNull(input.getNextEntry());
+		input.close();
+
+		// and can be read as a mass list
+		int count = 0;
+		try (MassListReader reader = new MassListReader(
+				new ByteArrayInputStream(output.toByteArray()))) {
+			while (reader.readCentroid() != null) {
+				count++;
+			}
+		}
+		assertEquals(100 * SCANS * (SCANS + 1) / 2, count);
+	}
+
+	@Test
+	public void testEntryNamedLikeDirectory() throws Exception {
+		// entries are not looked up in the working directory
+		File directory = new File("scan-directory.txt");
+		assertTrue(directory.mkdir());
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (ScanArchiveWriter writer = new ScanArchiveWriter(output)) {
+				writer.writeScan(directory.getName(), new double[] { 100.5 },
+						new double[] { 1 });
+			}
+
+			TarInputStream input = new TarInputStream(new ByteArrayInputStream(
+					output.toByteArray()));
+			TarEntry entry = input.getNextEntry();
+			assertEquals("scan-directory.txt", entry.getName());
+			assertFalse(entry.isDirectory());
+			assertEquals(TarHeader.LF_NORMAL, entry.getHeader().linkFlag);
+			assertEquals(0100644, entry.getHeader().mode);
+			assertTrue(entry.getSize() > 0);
+
+			ScanFileReader reader = new ScanFileReader(input, entry.getName());
+			assertEquals(1, reader.readScan().size());
+			assertTrue(reader.isChecksumValid());
+			input.close();
+		} finally {
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		ScanArchiveWriter writer = new ScanArchiveWriter(
+				new ByteArrayOutputStream());
+		writer.close();
+
+		assertEquals(0, writer.getScanCount());
+		assertEquals(0, writer.getMinMass());
+		assertEquals(0, writer.getMaxMass());
+	}
+}
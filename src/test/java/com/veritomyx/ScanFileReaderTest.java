@@ -0,0 +1,172 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.veritomyx.ChecksumFileReader.MissingChecksum;
+import com.veritomyx.ScanFileReader.Scan;
+
+public class ScanFileReaderTest {
+
+	private final static String BASE_TEST_PATH = "/com/veritomyx/ChecksumTestFiles/";
+
+	@Test
+	public void testReadScan() throws Exception {
+		ScanFileReader reader = new ScanFileReader(
+				getResourcePath("scan_goodchksum.txt"));
+		Scan scan = reader.readScan();
+		reader.close();
+
+		assertEquals(5, scan.size());
+		for (int i = 0; i < scan.size(); i++) {
+			assertEquals(i, scan.getMz()[i], 0);
+			assertEquals(i * i, scan.getIntensity()[i], 0);
+		}
+		assertTrue(reader.isChecksumValid());
+	}
+
+	@Test
+	public void testBadChecksum() throws Exception {
+		ScanFileReader reader = new ScanFileReader(
+				getResourcePath("scan_badchksum.txt"));
+		reader.close();
+		assertFalse(reader.isChecksumValid());
+	}
+
+	@Test(expected = MissingChecksum.class)
+	public void testNoChecksum() throws Exception {
+		ScanFileReader reader = new ScanFileReader(
+				getResourcePath("scan_nochksum.txt"));
+		reader.close();
+		reader.isChecksumValid();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Random random = new Random(2);
+		double[] mz = new double[20000];
+		double[] intensity = new double[mz.length];
+		for (int i = 0; i < mz.length; i++) {
+			mz[i] = 100 + random.nextDouble() * 1900;
+			intensity[i] = i % 100 == 0 ? Double.longBitsToDouble(random
+					.nextLong()) : Math.round(random.nextDouble() * 1e6) / 100.0;
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ScanFileWriter writer = new ScanFileWriter(output);
+		writer.writeScan(mz, intensity);
+		writer.close();
+
+		// a stream returning few bytes at a time, to split lines between reads
+		InputStream input = new FilterInputStream(new ByteArrayInputStream(
+				output.toByteArray())) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 7));
+			}
+		};
+
+		ScanFileReader reader = new ScanFileReader(input, "scan");
+		for (int i = 0; i < 10; i++) {
+			assertTrue(reader.next());
+			assertEquals(mz[i], reader.getMz(), 0);
+			assertEquals(intensity[i], reader.getIntensity(), 0);
+		}
+		Scan scan = reader.readScan();
+		reader.close();
+
+		assertEquals(mz.length - 10, scan.size());
+		for (int i = 0; i < scan.size(); i++) {
+			assertEquals(Double.doubleToLongBits(mz[i + 10]),
+					Double.doubleToLongBits(scan.getMz()[i]));
+			assertEquals(Double.doubleToLongBits(intensity[i + 10]),
+					Double.doubleToLongBits(scan.getIntensity()[i]));
+		}
+		assertTrue(reader.isChecksumValid());
+	}
+
+	@Test
+	public void testLineSeparators() throws Exception {
+		String[] separators = { "\n", "\r\n", "\r" };
+		for (String separator : separators) {
+			StringBuilder contents = new StringBuilder();
+			Checksum checksum = new Checksum();
+			String[] lines = { "# comment", "1.5\t2", "", "  3  4e2  extra",
+					"-0.25 1E-3" };
+			for (String line : lines) {
+				contents.append(line).append(separator);
+				checksum.append(line);
+			}
+			contents.append(checksum.getChecksumLine()).append(separator);
+
+			ScanFileReader reader = new ScanFileReader(
+					new ByteArrayInputStream(contents.toString().getBytes()),
+					"scan");
+			Scan scan = reader.readScan();
+			reader.close();
+
+			assertArrayEquals(new double[] { 1.5, 3, -0.25 }, scan.getMz(), 0);
+			assertArrayEquals(new double[] { 2, 400, 0.001 },
+					scan.getIntensity(), 0);
+			assertTrue(separator, reader.isChecksumValid());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnexpectedLine() throws Exception {
+		ScanFileReader reader = new ScanFileReader(new ByteArrayInputStream(
+				"1.0\tabc\n".getBytes()), "scan");
+		reader.next();
+	}
+
+	@Test
+	public void testParseDouble() {
+		String[] values = { "0", "-0.0", "+1", "123.4567", "1e22", "1e23",
+				"9007199254740993", "0.1", "1.7976931348623157E308",
+				"4.9E-324", "2.2250738585072014E-308", "NaN", "-Infinity",
+				"12345678901234567890.5", "0.000000000000000000000001", "5.",
+				".5", "1e-22", "3.0d" };
+		for (String value : values) {
+			assertParse(value);
+		}
+
+		Random random = new Random(3);
+		for (int i = 0; i < 100000; i++) {
+			assertParse(Double.toString(random.nextDouble() * 2000));
+			assertParse(Double.toString(Double.longBitsToDouble(random
+					.nextLong())));
+			assertParse(random.nextInt(1000000) + "." + random.nextInt(100000)
+					+ "e" + (random.nextInt(60) - 30));
+		}
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseDouble_Invalid() {
+		parse("1.2.3");
+	}
+
+	private static void assertParse(String value) {
+		assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+				Double.doubleToLongBits(parse(value)));
+	}
+
+	private static double parse(String value) {
+		byte[] bytes = ("x" + value + "x").getBytes();
+		return ScanFileReader.parseDouble(bytes, 1, bytes.length - 1);
+	}
+
+	private static Path getResourcePath(String filename) throws Exception {
+		return Paths.get(ScanFileReaderTest.class.getResource(
+				BASE_TEST_PATH + filename).toURI());
+	}
+}
@@ -0,0 +1,181 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.veritomyx.actions.InitAction;
+
+public class ScanFileWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDoubleFormatter_RoundTrip() {
+		Random random = new Random(1);
+		byte[] buffer = new byte[DoubleFormatter.MAX_LENGTH];
+
+		double[] special = { 0.0, -0.0, 1.0, -1.0, 0.1, 0.001, 0.000999,
+				9999999.999, 1e7, 1e-300, 1e300, Double.MIN_VALUE,
+				Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, 123.4567, 1.0 / 3 };
+		for (double value : special) {
+			assertRoundTrip(value, buffer);
+		}
+
+		for (int i = 0; i < 100000; i++) {
+			assertRoundTrip(random.nextDouble() * 2000, buffer);
+			assertRoundTrip(Math.round(random.nextDouble() * 1e8) / 1e4,
+					buffer);
+			assertRoundTrip(-random.nextDouble() * 1e6, buffer);
+			assertRoundTrip(Double.longBitsToDouble(random.nextLong()),
+					buffer);
+		}
+	}
+
+	@Test
+	public void testDoubleFormatter_Shortest() {
+		byte[] buffer = new byte[DoubleFormatter.MAX_LENGTH];
+		assertEquals("0.0", format(0.0, buffer));
+		assertEquals("-0.0", format(-0.0, buffer));
+		assertEquals("16.0", format(16.0, buffer));
+		assertEquals("123.4567", format(123.4567, buffer));
+		assertEquals("-0.001", format(-0.001, buffer));
+		assertEquals("1.0E7", format(1e7, buffer));
+		assertEquals("NaN", format(Double.NaN, buffer));
+	}
+
+	@Test
+	public void testWriteScan() throws Exception {
+		double[] mz = new double[1000];
+		double[] intensity = new double[1000];
+		for (int i = 0; i < mz.length; i++) {
+			mz[i] = 100 + i * 0.25;
+			intensity[i] = i * i;
+		}
+
+		File expected = folder.newFile("expected.txt");
+		ChecksumFileWriter reference = new ChecksumFileWriter(expected.toPath());
+		for (int i = 0; i < mz.length; i++) {
+			reference.writeln(mz[i] + "\t" + intensity[i]);
+		}
+		reference.close();
+
+		File actual = folder.newFile("actual.txt");
+		ScanFileWriter writer = new ScanFileWriter(actual.toPath());
+		writer.writeScan(mz, intensity, 0, 10);
+		writer.writeScan(Arrays.copyOfRange(mz, 10, mz.length),
+				Arrays.copyOfRange(intensity, 10, intensity.length));
+		writer.close();
+
+		assertArrayEquals(Files.readAllBytes(expected.toPath()),
+				Files.readAllBytes(actual.toPath()));
+		assertTrue(Checksum.isFileIntact(actual));
+	}
+
+	@Test
+	public void testWriteScan_DoubleBuffer() throws Exception {
+		DoubleBuffer mz = DoubleBuffer.allocate(100);
+		DoubleBuffer intensity = DoubleBuffer.allocate(100);
+		for (int i = 0; i < 100; i++) {
+			mz.put(Math.PI * i);
+			intensity.put(Math.E * i);
+		}
+		mz.flip();
+		intensity.flip();
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ScanFileWriter writer = new ScanFileWriter(output);
+		writer.writeScan(mz, intensity);
+		String checksum = writer.getChecksum();
+		writer.close();
+
+		assertFalse(mz.hasRemaining());
+		File file = folder.newFile("scan.txt");
+		Files.write(file.toPath(), output.toByteArray());
+		assertTrue(Checksum.isFileIntact(file));
+		assertTrue(new String(output.toByteArray()).contains(checksum));
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		ScanStatistics statistics = new ScanStatistics();
+		for (int i = 0; i < 3; i++) {
+			ScanFileWriter writer = new ScanFileWriter(folder.newFile(
+					"scan" + i + ".txt").toPath(), statistics);
+			for (int j = 0; j < 10 * (i + 1); j++) {
+				writer.writeCentroid(150.25 + 10 * i + j, j);
+			}
+			writer.close();
+		}
+		new ScanFileWriter(new ByteArrayOutputStream(), statistics).close();
+
+		assertEquals(4, statistics.getScanCount());
+		assertEquals(30, statistics.getMaxPoints());
+		assertEquals(150, statistics.getMinMass());
+		assertEquals(200, statistics.getMaxMass());
+
+		InitAction action = statistics.configure(
+				InitAction.create("user", "password", "SDK_test"), 1);
+		assertTrue(action.buildQuery().contains(
+				"ScanCount=4&MaxPoints=30&MinMass=150&MaxMass=200"
+						+ "&StartMass=150&EndMass=200&CalibrationCount=1&"));
+	}
+
+	@Test
+	public void testClose_Failure() throws Exception {
+		final boolean[] closed = { false };
+		OutputStream stream = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Disk full");
+			}
+
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+
+		ScanStatistics statistics = new ScanStatistics();
+		ScanFileWriter writer = new ScanFileWriter(stream, 1, statistics);
+		try {
+			writer.close();
+			fail("Should not reach here.");
+		} catch (IOException exception) {
+			assertEquals("Disk full", exception.getMessage());
+		}
+
+		assertTrue(closed[0]);
+		assertEquals(0, statistics.getScanCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWriteScan_LengthMismatch() throws Exception {
+		ScanFileWriter writer = new ScanFileWriter(new ByteArrayOutputStream());
+		writer.writeScan(new double[2], new double[3]);
+	}
+
+	private static void assertRoundTrip(double value, byte[] buffer) {
+		String string = format(value, buffer);
+		assertEquals(string, Double.doubleToLongBits(value),
+				Double.doubleToLongBits(Double.parseDouble(string)));
+	}
+
+	private static String format(double value, byte[] buffer) {
+		int length = DoubleFormatter.format(value, buffer, 0);
+		return new String(buffer, 0, length);
+	}
+}
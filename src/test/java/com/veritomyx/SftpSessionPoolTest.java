@@ -0,0 +1,219 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import com.veritomyx.actions.SftpAction;
+
+public class SftpSessionPoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SftpTestServer server;
+	private SftpAction action;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new SftpTestServer(folder.newFolder("sftp"), new File(
+				folder.getRoot(), "hostkey.ser"));
+		server.start();
+		action = server.createSftpAction();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void testPutAndGetFiles_OneSession() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool();
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost")
+				.withSftpSessionPool(pool);
+
+		File scans = folder.newFile("scans.tar");
+		Files.write(scans.toPath(), SftpTestServer.createContents(100000));
+		File calibration = folder.newFile("calibration.tar");
+		Files.write(calibration.toPath(), SftpTestServer.createContents(5000));
+
+		service.putFile(action, scans.getPath(), "/files/scans.tar", null);
+		service.putFile(action, calibration.getPath(),
+				"/files/calibration.tar", null);
+
+		File log = new File(folder.getRoot(), "log.txt");
+		File massList = new File(folder.getRoot(), "mass_list.tar");
+		service.getFile(action, "/files/calibration.tar", log.getPath(), null);
+		service.getFile(action, "/files/scans.tar", massList.getPath(), null);
+
+		assertTrue(SftpTestServer.sameContents(scans.toPath(), server
+				.getDirectory().resolve("scans.tar")));
+		assertTrue(SftpTestServer.sameContents(scans.toPath(),
+				massList.toPath()));
+		assertTrue(SftpTestServer.sameContents(calibration.toPath(),
+				log.toPath()));
+
+		assertEquals(1, server.getLogins());
+		assertEquals(1, pool.getSessionCount());
+
+		pool.close();
+		assertEquals(0, pool.getSessionCount());
+	}
+
+	@Test
+	public void testPutFiles_WithoutPool() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+
+		File scans = folder.newFile("scans.tar");
+		Files.write(scans.toPath(), SftpTestServer.createContents(1000));
+
+		service.putFile(action, scans.getPath(), "/files/scans1.tar", null);
+		service.putFile(action, scans.getPath(), "/files/scans2.tar", null);
+
+		assertEquals(2, server.getLogins());
+		assertFalse(service.isConnectedForSftp());
+	}
+
+	@Test
+	public void testFailedTransfer() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool();
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost")
+				.withSftpSessionPool(pool);
+
+		File log = new File(folder.getRoot(), "log.txt");
+		try {
+			service.getFile(action, "/files/missing.txt", log.getPath(), null);
+			fail("Should not reach here.");
+		} catch (SftpException exception) {
+			assertEquals(ChannelSftp.SSH_FX_NO_SUCH_FILE, exception.id);
+		}
+
+		// the channel is closed rather than reused, but the session is kept
+		assertEquals(0, pool.getIdleChannelCount());
+		assertEquals(1, pool.getSessionCount());
+
+		File scans = folder.newFile("scans.tar");
+		Files.write(scans.toPath(), SftpTestServer.createContents(1000));
+		service.putFile(action, scans.getPath(), "/files/scans.tar", null);
+		assertEquals(1, pool.getIdleChannelCount());
+		assertEquals(1, server.getLogins());
+
+		pool.close();
+	}
+
+	@Test
+	public void testChannelsPerSession() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool(5000, 60000, 2);
+
+		ChannelSftp first = pool.borrowChannel(action);
+		ChannelSftp second = pool.borrowChannel(action);
+		ChannelSftp third = pool.borrowChannel(action);
+		assertNotSame(first, second);
+		assertSame(first.getSession(), second.getSession());
+		assertNotSame(first.getSession(), third.getSession());
+		assertEquals(2, pool.getSessionCount());
+
+		pool.returnChannel(first);
+		assertSame(first, pool.borrowChannel(action));
+
+		pool.returnChannel(first);
+		pool.returnChannel(second);
+		pool.returnChannel(third);
+		pool.close();
+		assertFalse(first.isConnected());
+		assertFalse(third.getSession().isConnected());
+	}
+
+	@Test
+	public void testHealthCheck() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool();
+
+		ChannelSftp channel = pool.borrowChannel(action);
+		pool.returnChannel(channel);
+
+		// a channel that has been dropped is not handed out again
+		channel.disconnect();
+		ChannelSftp replacement = pool.borrowChannel(action);
+		assertNotSame(channel, replacement);
+		assertTrue(replacement.isConnected());
+		assertEquals(1, server.getLogins());
+
+		// neither is a session that has been dropped
+		replacement.getSession().disconnect();
+		pool.returnChannel(replacement);
+		assertEquals(0, pool.getSessionCount());
+
+		ChannelSftp reconnected = pool.borrowChannel(action);
+		assertTrue(reconnected.isConnected());
+		assertEquals(2, server.getLogins());
+
+		pool.returnChannel(reconnected);
+		pool.close();
+	}
+
+	@Test
+	public void testIdleEviction() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool(5000, 0, 4);
+
+		ChannelSftp channel = pool.borrowChannel(action);
+		assertEquals(1, pool.getSessionCount());
+
+		pool.returnChannel(channel);
+		assertEquals(0, pool.getSessionCount());
+		assertFalse(channel.getSession().isConnected());
+	}
+
+	@Test
+	public void testIdleEviction_Background() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool(5000, 100, 4);
+
+		ChannelSftp channel = pool.borrowChannel(action);
+		pool.returnChannel(channel);
+		assertEquals(1, pool.getSessionCount());
+
+		// evicted without using the pool again (and disconnected after it is
+		// removed from the pool)
+		long deadline = System.currentTimeMillis() + 5
+				* SftpSessionPool.MIN_EVICTION_INTERVAL;
+		while (channel.getSession().isConnected()
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, pool.getSessionCount());
+		assertFalse(channel.getSession().isConnected());
+
+		pool.close();
+	}
+
+	@Test
+	public void testFingerprintChanged() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool();
+
+		ChannelSftp channel = pool.borrowChannel(action);
+		pool.returnChannel(channel);
+
+		// a session is not reused for a different expected fingerprint
+		try {
+			pool.borrowChannel(action.getHost(), action.getSftpUsername(),
+					action.getSftpPassword(), action.getPort(),
+					"00:00:00:00:00:00:00:00:00:00:00:00:00:00:00:00");
+			fail("Should not reach here.");
+		} catch (JSchException exception) {
+			// expected
+		}
+		assertEquals(1, pool.getIdleChannelCount());
+
+		pool.close();
+	}
+}
@@ -0,0 +1,133 @@
+package com.veritomyx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.veritomyx.actions.Action.ResponseFormatException;
+import com.veritomyx.actions.SftpAction;
+
+/**
+ * An in-process SFTP server that stands in for the SFTP drop of
+ * PeakInvestigator. Files are stored in the given root directory, which is
+ * seen as "/" by clients.
+ */
+class SftpTestServer {
+
+	static final String USERNAME = "Vt504";
+	static final String PASSWORD = "0UtnWMvzoi2jF4BQ";
+	static final String DIRECTORY = "/files";
+
+	private final SshServer server;
+	private final Path root;
+	private final AtomicInteger logins = new AtomicInteger();
+	private String fingerprint = null;
+
+	SftpTestServer(File root, File hostKey) throws IOException {
+		this.root = root.toPath();
+		Files.createDirectories(this.root.resolve(DIRECTORY.substring(1)));
+
+		SimpleGeneratorHostKeyProvider keyProvider = new SimpleGeneratorHostKeyProvider(
+				hostKey);
+		keyProvider.setAlgorithm("RSA");
+
+		server = SshServer.setUpDefaultServer();
+		server.setHost("127.0.0.1");
+		server.setPort(0);
+		server.setKeyPairProvider(keyProvider);
+		server.setFileSystemFactory(new VirtualFileSystemFactory(this.root));
+		server.setSubsystemFactories(Collections
+				.<NamedFactory<Command>> singletonList(new SftpSubsystemFactory()));
+		server.setPasswordAuthenticator(new PasswordAuthenticator() {
+			@Override
+			public boolean authenticate(String username, String password,
+					ServerSession session) {
+				boolean valid = USERNAME.equals(username)
+						&& PASSWORD.equals(password);
+				if (valid) {
+					logins.incrementAndGet();
+				}
+				return valid;
+			}
+		});
+	}
+
+	void start() throws IOException, JSchException {
+		server.start();
+
+		// determine the fingerprint the same way PeakInvestigatorSaaS does
+		JSch jsch = new JSch();
+		Session session = jsch.getSession(USERNAME, "127.0.0.1", getPort());
+		session.setPassword(PASSWORD);
+		session.setConfig("StrictHostKeyChecking", "no");
+		session.connect(5000);
+		fingerprint = session.getHostKey().getFingerPrint(jsch);
+		session.disconnect();
+		logins.set(0);
+	}
+
+	void stop() throws IOException {
+		server.stop(true);
+	}
+
+	int getPort() {
+		return server.getPort();
+	}
+
+	/**
+	 * @return The number of successful logins (i.e. SSH sessions) since the
+	 *         server was started.
+	 */
+	int getLogins() {
+		return logins.get();
+	}
+
+	Path getDirectory() {
+		return root.resolve(DIRECTORY.substring(1));
+	}
+
+	/**
+	 * @return An SftpAction with a response pointing at this server.
+	 */
+	SftpAction createSftpAction() throws ResponseFormatException {
+		String response = SftpAction.EXAMPLE_RESPONSE_1
+				.replace("peakinvestigator.veritomyx.com", "127.0.0.1")
+				.replace("22022", Integer.toString(getPort()))
+				.replace("d2:be:b8:2e:3c:be:84:e4:a3:0a:c8:42:5c:6b:39:4e",
+						fingerprint);
+
+		SftpAction action = new SftpAction("user", "password", 504);
+		action.processResponse(response);
+		return action;
+	}
+
+	static byte[] createContents(int size) {
+		byte[] contents = new byte[size];
+		for (int i = 0; i < size; i++) {
+			contents[i] = (byte) (i * 31 + i / 7);
+		}
+
+		return contents;
+	}
+
+	static boolean sameContents(Path first, Path second) throws IOException {
+		return Arrays.equals(Files.readAllBytes(first),
+				Files.readAllBytes(second));
+	}
+}
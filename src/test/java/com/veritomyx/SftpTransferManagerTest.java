@@ -0,0 +1,217 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import com.veritomyx.actions.SftpAction;
+
+public class SftpTransferManagerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SftpTestServer server;
+	private SftpAction action;
+	private PeakInvestigatorSaaS service;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new SftpTestServer(folder.newFolder("sftp"), new File(
+				folder.getRoot(), "hostkey.ser"));
+		server.start();
+		action = server.createSftpAction();
+		service = new PeakInvestigatorSaaS("localhost");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void testPutFiles() throws Exception {
+		List<String> filenames = new ArrayList<>();
+		long total = 0;
+		for (int i = 0; i < 6; i++) {
+			File file = createFile("scans" + i + ".tar", 20000 + 1000 * i);
+			filenames.add(file.getPath());
+			total += file.length();
+		}
+
+		RecordingMonitor monitor = new RecordingMonitor();
+		service.putFiles(action, filenames, monitor);
+
+		for (String filename : filenames) {
+			File file = new File(filename);
+			assertTrue(SftpTestServer.sameContents(file.toPath(), server
+					.getDirectory().resolve(file.getName())));
+		}
+
+		assertEquals(1, monitor.inits);
+		assertEquals(total, monitor.max);
+		assertEquals(total, monitor.count);
+		assertEquals(1, monitor.ends);
+
+		// the channels of one session are used
+		assertEquals(1, server.getLogins());
+	}
+
+	@Test
+	public void testPutFiles_Chunked() throws Exception {
+		File large = createFile("scans.tar", 1000003);
+		File small = createFile("calibration.tar", 5000);
+
+		// a larger remote file is truncated
+		Files.write(server.getDirectory().resolve("scans.tar"),
+				SftpTestServer.createContents(2000000));
+
+		RecordingMonitor monitor = new RecordingMonitor();
+		new SftpTransferManager(service, action).withParallelism(3)
+				.withChunkSize(100000)
+				.putFiles(Arrays.asList(large.getPath(), small.getPath()),
+						monitor);
+
+		assertTrue(SftpTestServer.sameContents(large.toPath(), server
+				.getDirectory().resolve("scans.tar")));
+		assertTrue(SftpTestServer.sameContents(small.toPath(), server
+				.getDirectory().resolve("calibration.tar")));
+		assertEquals(large.length() + small.length(), monitor.count);
+		assertEquals(1, monitor.ends);
+	}
+
+	@Test
+	public void testPutFiles_WithPool() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool();
+		File first = createFile("scans1.tar", 300000);
+		File second = createFile("scans2.tar", 3000);
+
+		new SftpTransferManager(service.withSftpSessionPool(pool), action)
+				.withChunkSize(65536).putFiles(
+						Arrays.asList(first.getPath(), second.getPath()), null);
+
+		assertTrue(SftpTestServer.sameContents(first.toPath(), server
+				.getDirectory().resolve("scans1.tar")));
+		assertTrue(SftpTestServer.sameContents(second.toPath(), server
+				.getDirectory().resolve("scans2.tar")));
+
+		// sessions are kept by the pool
+		assertEquals(1, pool.getSessionCount());
+		pool.close();
+	}
+
+	@Test
+	public void testPutFiles_Cancelled() throws Exception {
+		File file = createFile("scans.tar", 1000000);
+
+		RecordingMonitor monitor = new RecordingMonitor() {
+			@Override
+			public synchronized boolean count(long count) {
+				super.count(count);
+				return this.count < 100000;
+			}
+		};
+		new SftpTransferManager(service, action).withChunkSize(50000)
+				.putFiles(Arrays.asList(file.getPath()), monitor);
+
+		assertTrue(monitor.count < file.length());
+		assertEquals(1, monitor.ends);
+	}
+
+	@Test
+	public void testVerifyChunk() throws Exception {
+		File file = createFile("scans.tar", 30000);
+		List<SftpTransferManager.Piece> pieces = new ArrayList<>();
+		for (int offset = 0; offset < 30000; offset += 10000) {
+			pieces.add(new SftpTransferManager.Piece(file.getPath(),
+					"/files/scans.tar", 30000, offset, 10000));
+		}
+
+		// a preallocated remote file whose last range has not been written
+		byte[] contents = Files.readAllBytes(file.toPath());
+		Arrays.fill(contents, 20000, 30000, (byte) 0);
+		Files.write(server.getDirectory().resolve("scans.tar"), contents);
+
+		SftpSessionPool pool = new SftpSessionPool();
+		ChannelSftp channel = pool.borrowChannel(action);
+		try {
+			SftpTransferManager.verifyChunk(channel, pieces.get(0));
+			SftpTransferManager.verifyChunk(channel, pieces.get(1));
+			try {
+				SftpTransferManager.verifyChunk(channel, pieces.get(2));
+				fail("Should not reach here.");
+			} catch (SftpException exception) {
+				assertTrue(exception.getMessage().contains("[20000, 30000)"));
+			}
+
+			// nor is a remote file that is too short
+			Files.write(server.getDirectory().resolve("scans.tar"),
+					Arrays.copyOf(contents, 25000));
+			try {
+				SftpTransferManager.verifyChunk(channel, pieces.get(2));
+				fail("Should not reach here.");
+			} catch (SftpException exception) {
+				assertTrue(exception.getMessage().contains("[20000, 30000)"));
+			}
+
+			Files.copy(file.toPath(), server.getDirectory().resolve(
+					"scans.tar"), StandardCopyOption.REPLACE_EXISTING);
+			SftpTransferManager.verifyChunk(channel, pieces.get(2));
+		} finally {
+			pool.returnChannel(channel);
+			pool.close();
+		}
+	}
+
+	@Test(expected = SftpException.class)
+	public void testPutFiles_Missing() throws Exception {
+		service.putFiles(action,
+				Arrays.asList(new File(folder.getRoot(), "missing.tar")
+						.getPath()), null);
+	}
+
+	private File createFile(String name, int size) throws Exception {
+		File file = folder.newFile(name);
+		Files.write(file.toPath(), SftpTestServer.createContents(size));
+		return file;
+	}
+
+	private static class RecordingMonitor implements SftpProgressMonitor {
+		int inits = 0;
+		int ends = 0;
+		long max = 0;
+		long count = 0;
+
+		@Override
+		public synchronized void init(int op, String src, String dest, long max) {
+			assertEquals(SftpProgressMonitor.PUT, op);
+			inits++;
+			this.max = max;
+		}
+
+		@Override
+		public synchronized boolean count(long count) {
+			this.count += count;
+			return true;
+		}
+
+		@Override
+		public synchronized void end() {
+			ends++;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package com.veritomyx;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import com.veritomyx.actions.SftpAction;
+
+/**
+ * Transfers files concurrently with a single PeakInvestigatorSaaS instance.
+ */
+public class SftpTransferTest {
+
+	private final static int THREADS = 8;
+	private final static int TRANSFERS_PER_THREAD = 5;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SftpTestServer server;
+	private SftpAction action;
+	private ExecutorService threads;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new SftpTestServer(folder.newFolder("sftp"), new File(
+				folder.getRoot(), "hostkey.ser"));
+		server.start();
+		action = server.createSftpAction();
+		threads = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		threads.shutdownNow();
+		server.stop();
+	}
+
+	@Test
+	public void testConcurrentTransfers_WithoutPool() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+		transferConcurrently(service);
+
+		assertEquals(THREADS * TRANSFERS_PER_THREAD * 2, server.getLogins());
+		assertFalse(service.isConnectedForSftp());
+	}
+
+	@Test
+	public void testConcurrentTransfers_WithPool() throws Exception {
+		SftpSessionPool pool = new SftpSessionPool();
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost")
+				.withSftpSessionPool(pool);
+		transferConcurrently(service);
+
+		// sessions are only connected for concurrent transfers
+		assertTrue(server.getLogins() <= THREADS);
+		assertTrue(pool.getSessionCount() <= server.getLogins());
+
+		pool.close();
+		assertEquals(0, pool.getSessionCount());
+	}
+
+	@Test
+	public void testWithModifiesService() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+		SftpSessionPool pool = new SftpSessionPool();
+
+		assertSame(service, service.withTimeout(1000));
+		assertEquals(1000, service.getTimeout());
+
+		// the returned object does not need to be used
+		service.withSftpSessionPool(pool);
+		File file = folder.newFile("scans.tar");
+		Files.write(file.toPath(), SftpTestServer.createContents(1000));
+		service.putFile(action, file.getPath(), "/files/scans1.tar", null);
+		service.putFile(action, file.getPath(), "/files/scans2.tar", null);
+		assertEquals(1, server.getLogins());
+		assertEquals(1, pool.getSessionCount());
+
+		pool.close();
+	}
+
+	@Test
+	public void testPutFile_Resume() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+		byte[] contents = SftpTestServer.createContents(500000);
+		File local = folder.newFile("scans.tar");
+		Files.write(local.toPath(), contents);
+
+		// nothing to resume
+		service.putFile(action, local.getPath(), "/files/scans.tar", null, true);
+		assertTrue(SftpTestServer.sameContents(local.toPath(), server
+				.getDirectory().resolve("scans.tar")));
+
+		// partial upload
+		Files.write(server.getDirectory().resolve("scans.tar"),
+				Arrays.copyOf(contents, 200000));
+		RecordingMonitor monitor = new RecordingMonitor();
+		service.putFile(action, local.getPath(), "/files/scans.tar", monitor,
+				true);
+		assertTrue(SftpTestServer.sameContents(local.toPath(), server
+				.getDirectory().resolve("scans.tar")));
+		assertEquals(Arrays.asList(200000L), monitor.counts.subList(0, 1));
+
+		// partial upload of other contents is replaced
+		byte[] other = Arrays.copyOf(contents, 200000);
+		other[199999]++;
+		Files.write(server.getDirectory().resolve("scans.tar"), other);
+		service.putFile(action, local.getPath(), "/files/scans.tar", null, true);
+		assertTrue(SftpTestServer.sameContents(local.toPath(), server
+				.getDirectory().resolve("scans.tar")));
+
+		// as is a stale copy whose end matches
+		other = Arrays.copyOf(contents, 200000);
+		other[0]++;
+		Files.write(server.getDirectory().resolve("scans.tar"), other);
+		service.putFile(action, local.getPath(), "/files/scans.tar", null, true);
+		assertTrue(SftpTestServer.sameContents(local.toPath(), server
+				.getDirectory().resolve("scans.tar")));
+
+		// as is a larger file
+		Files.write(server.getDirectory().resolve("scans.tar"),
+				SftpTestServer.createContents(600000));
+		service.putFile(action, local.getPath(), "/files/scans.tar", null, true);
+		assertTrue(SftpTestServer.sameContents(local.toPath(), server
+				.getDirectory().resolve("scans.tar")));
+	}
+
+	@Test
+	public void testGetFile_Resume() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+		byte[] contents = SftpTestServer.createContents(500000);
+		Files.write(server.getDirectory().resolve("mass_list.tar"), contents);
+		File local = new File(folder.getRoot(), "mass_list.tar");
+
+		// nothing to resume
+		service.getFile(action, "/files/mass_list.tar", local.getPath(), null,
+				true);
+		assertArrayEquals(contents, Files.readAllBytes(local.toPath()));
+
+		// partial download
+		Files.write(local.toPath(), Arrays.copyOf(contents, 300000));
+		RecordingMonitor monitor = new RecordingMonitor();
+		service.getFile(action, "/files/mass_list.tar", local.getPath(),
+				monitor, true);
+		assertArrayEquals(contents, Files.readAllBytes(local.toPath()));
+		// JSch reports the bytes already present first
+		assertEquals(Arrays.asList(300000L), monitor.counts.subList(0, 1));
+		assertEquals(500000, monitor.total);
+
+		// partial download of other contents is replaced
+		byte[] other = Arrays.copyOf(contents, 300000);
+		other[250000]++;
+		Files.write(local.toPath(), other);
+		service.getFile(action, "/files/mass_list.tar", local.getPath(), null,
+				true);
+		assertArrayEquals(contents, Files.readAllBytes(local.toPath()));
+
+		other = Arrays.copyOf(contents, 300000);
+		other[10]++;
+		Files.write(local.toPath(), other);
+		service.getFile(action, "/files/mass_list.tar", local.getPath(), null,
+				true);
+		assertArrayEquals(contents, Files.readAllBytes(local.toPath()));
+	}
+
+	@Test
+	public void testPutFile_InputStream() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+		byte[] contents = SftpTestServer.createContents(300000);
+
+		RecordingMonitor monitor = new RecordingMonitor();
+		service.putFile(action, new ByteArrayInputStream(contents),
+				"/files/scans.tar", monitor);
+
+		assertArrayEquals(contents, Files.readAllBytes(server.getDirectory()
+				.resolve("scans.tar")));
+		assertEquals(contents.length, monitor.total);
+	}
+
+	@Test
+	public void testPutFile_Producer() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+
+		// the same scan is written locally, and generated during the upload
+		Path local = folder.getRoot().toPath().resolve("scan.txt");
+		writeScan(new ChecksumFileWriter(local));
+
+		RecordingMonitor monitor = new RecordingMonitor();
+		service.putFile(action, new UploadProducer() {
+			@Override
+			public void writeTo(OutputStream output) throws IOException {
+				writeScan(new ChecksumFileWriter(output));
+			}
+		}, "/files/scan.txt", monitor);
+
+		Path remote = server.getDirectory().resolve("scan.txt");
+		assertTrue(SftpTestServer.sameContents(local, remote));
+		assertTrue(Checksum.isFileIntact(remote.toFile()));
+		assertEquals(Files.size(local), monitor.total);
+	}
+
+	@Test
+	public void testPutFile_ProducerFails() throws Exception {
+		PeakInvestigatorSaaS service = new PeakInvestigatorSaaS("localhost");
+
+		try {
+			service.putFile(action, new UploadProducer() {
+				@Override
+				public void writeTo(OutputStream output) throws IOException {
+					output.write(SftpTestServer.createContents(100000));
+					throw new IOException("Scan is not available.");
+				}
+			}, "/files/scan.txt", null);
+			fail("Should not reach here.");
+		} catch (SftpException exception) {
+			assertTrue(exception.getCause() instanceof IOException);
+		}
+	}
+
+	private static void writeScan(ChecksumFileWriter writer)
+			throws IOException {
+		for (int i = 0; i < 20000; i++) {
+			writer.writeln(String.format("%.5f\t%.1f", 100 + i * 0.01,
+					1000.0 * (i % 97)));
+		}
+		writer.close();
+	}
+
+	/**
+	 * Every thread uploads files of a different size and downloads them
+	 * again, and the contents are compared afterwards.
+	 */
+	private void transferConcurrently(final PeakInvestigatorSaaS service)
+			throws Exception {
+
+		List<Future<Void>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			futures.add(threads.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+						String name = "scans_" + thread + "_" + i + ".tar";
+						File local = folder.newFile(name);
+						Files.write(local.toPath(), SftpTestServer
+								.createContents(10000 + 997 * thread + 13 * i));
+
+						File downloaded = new File(folder.getRoot(), "mass_list_"
+								+ thread + "_" + i + ".tar");
+						service.putFile(action, local.getPath(), "/files/"
+								+ name, null);
+						service.getFile(action, "/files/" + name,
+								downloaded.getPath(), null);
+
+						assertTrue(SftpTestServer.sameContents(local.toPath(),
+								server.getDirectory().resolve(name)));
+						assertTrue(SftpTestServer.sameContents(local.toPath(),
+								downloaded.toPath()));
+					}
+
+					return null;
+				}
+			}));
+		}
+
+		for (Future<Void> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+	}
+
+	private static class RecordingMonitor implements SftpProgressMonitor {
+		final List<Long> counts = new ArrayList<>();
+		long total = 0;
+
+		@Override
+		public void init(int op, String src, String dest, long max) {
+		}
+
+		@Override
+		public boolean count(long count) {
+			counts.add(count);
+			total += count;
+			return true;
+		}
+
+		@Override
+		public void end() {
+		}
+	}
+}
@@ -2,9 +2,14 @@ package com.veritomyx.actions;
 
 import static org.junit.Assert.*;
 
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.text.ParseException;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -238,6 +243,32 @@ public class ActionsTest {
 		assertEquals("P-504.1463", temp.getJob());
 	}
 
+	@Test
+	public void test_RunAction_QueryCalibration() {
+		BaseAction action = new RunAction("user", "password", "job-123",
+				"RTO-24", "file.tar", "calibration.tar");
+		assertEquals(
+				"Version="
+						+ BaseAction.API_VERSION
+						+ "&User=user&Code=password&Action=RUN&Job=job-123&RTO=RTO-24&InputFile=file.tar&CalibrationFile=calibration.tar",
+				action.buildQuery());
+	}
+
+	@Test
+	public void test_Query_Encoding() {
+		BaseAction action = new StatusAction("user@example.com", "p&ss=w%rd",
+				"P-504.5148");
+		assertEquals("Version=" + BaseAction.API_VERSION
+				+ "&User=user%40example.com&Code=p%26ss%3Dw%25rd"
+				+ "&Action=STATUS&Job=P-504.5148", action.buildQuery());
+
+		SandboxAction<StatusAction> sandbox = new SandboxAction<>(
+				new StatusAction("user", "pass word", "job"), "a&b");
+		assertEquals("Version=" + BaseAction.API_VERSION
+				+ "&User=user&Code=pass+word&Action=STATUS&Job=job"
+				+ "&Sandbox=a%26b", sandbox.buildQuery());
+	}
+
 	@Test
 	public void test_RunAction_Error() throws ResponseFormatException {
 		BaseAction action = new RunAction("user", "password", "job-123",
@@ -335,4 +366,269 @@ public class ActionsTest {
 				action.getErrorMessage());
 	}
 
+	@Test
+	public void test_DateAttributes() throws Exception {
+		StatusAction action = new StatusAction("user", "password", "job-123");
+		action.processResponse("{\"Action\":\"STATUS\",\"Job\":\"P-504.5148\",\"Status\":\"Done\",\"Datetime\":\"2016-02-03 18:31:05\",\"Submitted\":\"2016-02-03 18:25:09\"}");
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(2016, 1, 3, 18, 31, 5);
+		calendar.set(Calendar.MILLISECOND, 0);
+		assertEquals(calendar.getTimeInMillis(), action.getTimestamp());
+		assertEquals(calendar.getTime(), action.getDate());
+		assertEquals(action.getTimestamp(), action.getTimestamp());
+
+		// the attribute is not ignored
+		calendar.set(2016, 1, 3, 18, 25, 9);
+		assertEquals(calendar.getTime(), action.getDateAttribute("Submitted"));
+
+		try {
+			action.getDateAttribute("Missing");
+			fail();
+		} catch (ParseException e) {
+			// expected
+		}
+
+		// a new response is parsed again
+		action.processResponse(StatusAction.EXAMPLE_RESPONSE_3);
+		calendar.set(2016, 1, 3, 18, 36, 5);
+		assertEquals(calendar.getTimeInMillis(), action.getTimestamp());
+	}
+
+	@Test
+	public void test_DateAttributes_Threads() throws Exception {
+		final Calendar calendar = Calendar.getInstance();
+		calendar.set(2016, 1, 3, 18, 25, 9);
+		calendar.set(Calendar.MILLISECOND, 0);
+
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 500; j++) {
+							StatusAction action = new StatusAction("user",
+									"password", "job-123");
+							action.processResponse(StatusAction.EXAMPLE_RESPONSE_1);
+							if (action.getTimestamp() != calendar
+									.getTimeInMillis()) {
+								failures.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void test_TypedResponses() throws ResponseFormatException {
+		StatusAction status = new StatusAction("user", "password", "job-123");
+		status.processResponse(StatusAction.EXAMPLE_RESPONSE_2);
+
+		StatusResponse response = status.getResponse();
+		assertEquals("P-504.5148", response.getJob());
+		assertEquals(StatusAction.Status.Done, response.getStatus());
+		assertEquals(3, response.getNumberOfInputScans());
+		assertEquals(0.36, response.getActualCost(), 0);
+		assertEquals("/files/P-504.5148/P-504.5148.log.txt", response
+				.getResultFilePaths().get("Log"));
+		try {
+			response.getResultFilePaths().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// immutable
+		}
+
+		// the same response gives an equal value
+		StatusAction other = new StatusAction("user", "password", "job-123");
+		other.processResponse(StatusAction.EXAMPLE_RESPONSE_2);
+		assertEquals(response, other.getResponse());
+		assertEquals(response.hashCode(), other.getResponse().hashCode());
+
+		// optional values
+		status.reset();
+		status.processResponse(StatusAction.EXAMPLE_RESPONSE_1);
+		assertFalse(status.hasScanCounts());
+		assertFalse(status.getResponse().hasActualCost());
+		assertTrue(status.getResultFilePaths().isEmpty());
+		try {
+			status.getNumberOfInputScans();
+			fail();
+		} catch (IllegalStateException e) {
+			// not included
+		}
+
+		// costs may be integers
+		InitAction init = InitAction.create("user", "password", "key");
+		init.processResponse(InitAction.EXAMPLE_RESPONSE_1.replace("27.60",
+				"27"));
+		assertEquals(27, init.getResponse().getEstimatedCosts().get("TOF")
+				.get("RTO-24"), 0);
+		assertEquals(27, init.getEstimatedCosts().get("TOF").getCost("RTO-24"),
+				0);
+		assertEquals(504, init.getIntAttribute("ID"));
+
+		SftpAction sftp = new SftpAction("user", "password", 100);
+		sftp.processResponse(SftpAction.EXAMPLE_RESPONSE_1);
+		assertEquals(22022, sftp.getResponse().getPort());
+		assertEquals(6, sftp.getResponse().getFingerprints().size());
+	}
+
+	@Test
+	public void test_TypedResponses_Error() throws ResponseFormatException {
+		StatusAction action = new StatusAction("user", "password", "job-123");
+		action.processResponse(BaseAction.ERROR_CREDENTIALS.replace("ACTION",
+				"STATUS"));
+		try {
+			action.getResponse();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(3, action.getErrorCode());
+		}
+
+		// as do the getters, rather than returning null
+		try {
+			action.getJob();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Response is an error.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void test_TypedResponses_Invalid() {
+		String[] responses = {
+				StatusAction.EXAMPLE_RESPONSE_1.replace("Running", "Paused"),
+				StatusAction.EXAMPLE_RESPONSE_2.replace("\"ScansInput\":3",
+						"\"ScansInput\":\"3\""),
+				StatusAction.EXAMPLE_RESPONSE_1.replace("\"Job\":\"P-504.5148\",",
+						"") };
+		for (String response : responses) {
+			StatusAction action = new StatusAction("user", "password", "job");
+			try {
+				action.processResponse(response);
+				fail(response);
+			} catch (ResponseFormatException e) {
+				assertSame(action, e.getAction());
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+		}
+
+		SftpAction action = new SftpAction("user", "password", 100);
+		try {
+			action.processResponse(SftpAction.EXAMPLE_RESPONSE_1.replace(
+					"22022", "22022.5"));
+			fail();
+		} catch (ResponseFormatException e) {
+			assertTrue(e.getMessage().contains("Port"));
+		}
+	}
+
+	@Test
+	public void test_ProcessResponse_Reader() throws Exception {
+		assertSameResponse(new PiVersionsAction("user", "password"),
+				new PiVersionsAction("user", "password"), VERSIONS_RESPONSE_1);
+		for (String response : new String[] { InitAction.EXAMPLE_RESPONSE_1,
+				InitAction.EXAMPLE_RESPONSE_2 }) {
+			assertSameResponse(InitAction.create("user", "password", "key"),
+					InitAction.create("user", "password", "key"), response);
+		}
+		assertSameResponse(new SftpAction("user", "password", 100),
+				new SftpAction("user", "password", 100),
+				SftpAction.EXAMPLE_RESPONSE_1);
+		for (String response : new String[] { PrepAction.EXAMPLE_RESPONSE_1,
+				PrepAction.EXAMPLE_RESPONSE_2 }) {
+			assertSameResponse(new PrepAction("user", "password", 100,
+					"file.tar"), new PrepAction("user", "password", 100,
+					"file.tar"), response);
+		}
+		assertSameResponse(new RunAction("user", "password", "job-123",
+				"RTO-24", "file.tar", null), new RunAction("user", "password",
+				"job-123", "RTO-24", "file.tar", null),
+				RunAction.EXAMPLE_RESPONSE_1);
+		for (String response : new String[] { StatusAction.EXAMPLE_RESPONSE_1,
+				StatusAction.EXAMPLE_RESPONSE_2,
+				StatusAction.EXAMPLE_RESPONSE_3,
+				BaseAction.ERROR_CREDENTIALS.replace("ACTION", "STATUS") }) {
+			assertSameResponse(new StatusAction("user", "password", "job-123"),
+					new StatusAction("user", "password", "job-123"), response);
+		}
+		assertSameResponse(new DeleteAction("user", "password", "job-123"),
+				new DeleteAction("user", "password", "job-123"),
+				DELETE_RESPONSE_1);
+	}
+
+	@Test
+	public void test_ProcessResponse_ReaderSkipsUnusedAttributes()
+			throws Exception {
+		StatusAction action = new StatusAction("user", "password", "job-123");
+		action.processResponse(new StringReader(StatusAction.EXAMPLE_RESPONSE_2));
+
+		assertFalse(action.hasAttribute("ResultFiles"));
+		assertEquals("/files/P-504.5148/P-504.5148.mass_list.tar", action
+				.getResultFilePaths().get("MassList"));
+	}
+
+	@Test
+	public void test_ProcessResponse_ReaderInvalid() throws Exception {
+		String[] responses = { BaseAction.API_SOURCE, "[1, 2]", "\"Action\"",
+				"{\"Action\":" };
+		for (String response : responses) {
+			StatusAction action = new StatusAction("user", "password", "job");
+			try {
+				action.processResponse(new StringReader(response));
+				fail(response);
+			} catch (ResponseFormatException e) {
+				assertSame(action, e.getAction());
+			}
+		}
+	}
+
+	/**
+	 * Process a response as a String and as a Reader, and compare the results
+	 * of every getter.
+	 */
+	private static void assertSameResponse(BaseAction fromString,
+			BaseAction fromReader, String response) throws Exception {
+		fromString.processResponse(response);
+		fromReader.processResponse(new StringReader(response));
+
+		for (Method method : fromString.getClass().getMethods()) {
+			String name = method.getName();
+			if (method.getParameterTypes().length > 0
+					|| !(name.startsWith("get") || name.startsWith("has") || name
+							.startsWith("is"))
+					|| method.getDeclaringClass() == Object.class) {
+				continue;
+			}
+
+			Object expected = invoke(method, fromString);
+			Object actual = invoke(method, fromReader);
+			assertTrue(name + ": " + expected + " != " + actual,
+					Objects.deepEquals(expected, actual));
+		}
+	}
+
+	/**
+	 * @return The result of a getter, or the class of its exception.
+	 */
+	private static Object invoke(Method method, Object object)
+			throws IllegalAccessException {
+		try {
+			return method.invoke(object);
+		} catch (InvocationTargetException e) {
+			return e.getCause().getClass();
+		}
+	}
 }
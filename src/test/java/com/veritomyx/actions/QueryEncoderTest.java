@@ -0,0 +1,90 @@
+package com.veritomyx.actions;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+
+import org.junit.Test;
+
+public class QueryEncoderTest {
+
+	@Test
+	public void testAdd() throws Exception {
+		QueryEncoder encoder = new QueryEncoder();
+		encoder.add("Version", "5.1").add("ID", 100).add("Count", -42)
+				.add("Empty", "").add("Missing", null);
+
+		assertEquals("Version=5.1&ID=100&Count=-42&Empty=&Missing=null",
+				encoder.toString());
+		assertEquals(encoder.toString().length(), encoder.length());
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		encoder.writeTo(output);
+		assertArrayEquals(encoder.toByteArray(), output.toByteArray());
+	}
+
+	@Test
+	public void testAdd_Numbers() {
+		long[] values = { 0, 7, 10, 123456789, -1, Long.MAX_VALUE,
+				Long.MIN_VALUE };
+		QueryEncoder encoder = new QueryEncoder();
+		for (long value : values) {
+			encoder.reset();
+			encoder.add("N", value);
+			assertEquals("N=" + value, encoder.toString());
+		}
+	}
+
+	@Test
+	public void testAdd_Encoding() throws Exception {
+		String[] values = { "SDK_test", "p&ss=word", "with space", "a+b",
+				"50%", "~user/file.tar", "caf\u00e9", "\u65e5\u672c",
+				"\ud83d\ude00", "\ud83d", "x\ude00y", "\u0000\u007f" };
+
+		QueryEncoder encoder = new QueryEncoder();
+		for (String value : values) {
+			encoder.reset();
+			encoder.add("Key", value);
+			assertEquals(value, "Key=" + URLEncoder.encode(value, "UTF-8"),
+					encoder.toString());
+		}
+	}
+
+	@Test
+	public void testAddEncoded() {
+		QueryEncoder encoder = new QueryEncoder();
+		encoder.addEncoded("Version=5.1&Name=\u00e9&").add("Sandbox", 0);
+
+		assertEquals("Version=5.1&Name=\u00e9&Sandbox=0", encoder.toString());
+		assertEquals(encoder.toString().length() + 1, encoder.length());
+	}
+
+	@Test
+	public void testReuse() {
+		QueryEncoder encoder = new QueryEncoder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			encoder.add("Job", "P-" + i);
+			expected.append(i == 0 ? "" : "&").append("Job=P-").append(i);
+		}
+		assertEquals(expected.toString(), encoder.toString());
+
+		encoder.reset();
+		assertEquals(0, encoder.length());
+		assertEquals("Job=P-1", encoder.add("Job", "P-1").toString());
+	}
+
+	@Test
+	public void testClear() {
+		QueryEncoder encoder = new QueryEncoder();
+		encoder.add("User", "user").add("Code", "password");
+		int capacity = encoder.capacity();
+
+		encoder.clear();
+		assertEquals(0, encoder.length());
+		assertEquals(capacity, encoder.capacity());
+		assertArrayEquals(new byte[capacity], encoder.getBuffer());
+		assertEquals("Job=P-1", encoder.add("Job", "P-1").toString());
+	}
+}